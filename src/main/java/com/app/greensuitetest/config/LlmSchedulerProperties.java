@@ -0,0 +1,38 @@
+package com.app.greensuitetest.config;
+
+import com.app.greensuitetest.constants.SubscriptionTier;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Limits for the scheduler in front of the chat model. {@code max-concurrent} should match what the Ollama
+ * server runs in parallel ({@code OLLAMA_NUM_PARALLEL}); anything above that only queues inside Ollama where
+ * nobody can see or bound it. Tiers share the free slots in proportion to their weights.
+ */
+@Component
+@ConfigurationProperties(prefix = "app.llm.scheduler")
+@Getter
+@Setter
+public class LlmSchedulerProperties {
+    private int maxConcurrent = 2;
+    private Duration maxQueueWait = Duration.ofSeconds(20);
+    private int queueCapacity = 50;
+    private int companyMaxConcurrent = 1;
+    private int companyMaxQueued = 10;
+    // Seed for the running average of how long a request holds its slot, used before any request completed
+    private Duration expectedRequestTime = Duration.ofSeconds(10);
+    private Map<SubscriptionTier, Integer> weights = new EnumMap<>(Map.of(
+            SubscriptionTier.FREE, 1,
+            SubscriptionTier.PREMIUM, 3,
+            SubscriptionTier.ENTERPRISE, 6));
+
+    public int weight(SubscriptionTier tier) {
+        return Math.max(weights.getOrDefault(tier, 1), 1);
+    }
+}
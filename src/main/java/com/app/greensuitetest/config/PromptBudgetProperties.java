@@ -0,0 +1,31 @@
+package com.app.greensuitetest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token budgets for the chat prompt. The whole prompt plus the reserved response must fit the model's
+ * context window ({@code num-ctx}); otherwise Ollama silently drops the start of the prompt, which is
+ * where the system instructions are. Documents, history and the user message each have a ceiling, and
+ * history also gives way to whatever the system prompt and user message leave.
+ */
+@Component
+@ConfigurationProperties(prefix = "app.prompt.budget")
+@Getter
+@Setter
+public class PromptBudgetProperties {
+    private int contextWindow = 12_288;
+    private int responseReserve = 3_200;
+    private int documents = 3_000;
+    private int history = 3_000;
+    private int user = 1_000;
+
+    /**
+     * Tokens available to the prompt itself.
+     */
+    public int promptTokens() {
+        return contextWindow - responseReserve;
+    }
+}
@@ -53,7 +53,7 @@ public class RateLimitingConfig {
     public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(ProxyManager<byte[]> proxyManager) {
         FilterRegistrationBean<RateLimitFilter> registrationBean = new FilterRegistrationBean<>();
         registrationBean.setFilter(new RateLimitFilter(proxyManager));
-        registrationBean.addUrlPatterns("/api/ai/chat");
+        registrationBean.addUrlPatterns("/api/ai/chat", "/api/ai/chat/stream");
         registrationBean.setOrder(1);
         return registrationBean;
     }
@@ -0,0 +1,52 @@
+package com.app.greensuitetest.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Map-like facade over a bounded Caffeine cache. Reads go through the cache API rather than the
+ * {@code asMap()} view so they show up in the hit/miss statistics.
+ */
+public final class StateCache<K, V> {
+
+    private final Cache<K, V> cache;
+
+    StateCache(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    public V get(K key) {
+        return cache.getIfPresent(key);
+    }
+
+    public V getOrDefault(K key, V defaultValue) {
+        V value = cache.getIfPresent(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        return cache.get(key, mappingFunction);
+    }
+
+    public void put(K key, V value) {
+        cache.put(key, value);
+    }
+
+    public void remove(K key) {
+        cache.invalidate(key);
+    }
+
+    public void removeIf(Predicate<? super K> keyFilter) {
+        cache.asMap().keySet().removeIf(keyFilter);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+}
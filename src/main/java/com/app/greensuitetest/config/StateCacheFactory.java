@@ -0,0 +1,47 @@
+package com.app.greensuitetest.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Creates the size- and idle-time-bounded caches that hold per-conversation and per-user state.
+ * Caffeine's W-TinyLFU eviction keeps the heap flat however many conversation ids pass through;
+ * each cache is published as {@code cache.gets}, {@code cache.evictions} and {@code cache.size}
+ * metrics tagged with its name.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StateCacheFactory {
+
+    private final StateCacheProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public <K, V> StateCache<K, V> create(String name) {
+        long maximumSize = properties.maximumSize(name);
+        Duration expireAfterWrite = properties.expireAfterWrite(name);
+        Duration expiry = expireAfterWrite != null ? expireAfterWrite : properties.expireAfterAccess(name);
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(maximumSize);
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite);
+        } else {
+            builder.expireAfterAccess(expiry);
+        }
+        Cache<K, V> cache = builder
+                .recordStats()
+                .<K, V>evictionListener((key, value, cause) ->
+                        log.debug("Evicted '{}' from state cache '{}' ({})", key, name, cause))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name, "store", "state");
+        log.info("State cache '{}' bounded to {} entries, expiring after {} {}", name, maximumSize, expiry,
+                expireAfterWrite != null ? "since write" : "idle");
+        return new StateCache<>(cache);
+    }
+}
@@ -0,0 +1,48 @@
+package com.app.greensuitetest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits for the in-memory conversation and personality state. Every cache gets the defaults unless
+ * it has an entry under {@code app.state-cache.caches.<name>}. A cache with {@code expire-after-write}
+ * set (e.g. a near-cache in front of Redis) expires by age instead of idle time.
+ */
+@Component
+@ConfigurationProperties(prefix = "app.state-cache")
+@Getter
+@Setter
+public class StateCacheProperties {
+    private long maximumSize = 10_000;
+    private Duration expireAfterAccess = Duration.ofHours(2);
+    private Map<String, Spec> caches = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Spec {
+        private Long maximumSize;
+        private Duration expireAfterAccess;
+        private Duration expireAfterWrite;
+    }
+
+    public long maximumSize(String name) {
+        Spec spec = caches.get(name);
+        return spec != null && spec.getMaximumSize() != null ? spec.getMaximumSize() : maximumSize;
+    }
+
+    public Duration expireAfterAccess(String name) {
+        Spec spec = caches.get(name);
+        return spec != null && spec.getExpireAfterAccess() != null ? spec.getExpireAfterAccess() : expireAfterAccess;
+    }
+
+    public Duration expireAfterWrite(String name) {
+        Spec spec = caches.get(name);
+        return spec != null ? spec.getExpireAfterWrite() : null;
+    }
+}
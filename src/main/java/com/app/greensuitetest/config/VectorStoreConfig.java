@@ -1,5 +1,7 @@
 package com.app.greensuitetest.config;
 
+import com.app.greensuitetest.service.vector.LocalHnswVectorStore;
+import com.app.greensuitetest.service.vector.VectorQuantizer;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import io.micrometer.observation.ObservationRegistry;
@@ -11,10 +13,14 @@ import org.springframework.ai.ollama.management.ModelManagementOptions;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.mongodb.atlas.MongoDBAtlasVectorStore;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.core.MongoTemplate;
 
+import java.nio.file.Path;
+import java.util.List;
+
 @Configuration
 public class VectorStoreConfig {
 
@@ -30,12 +36,37 @@ public class VectorStoreConfig {
     @Value("${spring.ai.vectorstore.mongodb.index-name:vector_index}")
     private String indexName;
 
+    // Fields declared as filter fields on the Atlas vector index, so filters run inside $vectorSearch
+    @Value("${spring.ai.vectorstore.mongodb.metadata-fields-to-filter:company_id}")
+    private List<String> metadataFieldsToFilter;
+
     @Value("${spring.ai.ollama.base-url:http://localhost:11434}")
     private String ollamaBaseUrl;
 
     @Value("${spring.ai.ollama.embedding.options.model:mxbai-embed-large}")
     private String embeddingModel;
 
+    @Value("${app.vectorstore.local.directory:data/vector-index}")
+    private String localIndexDirectory;
+
+    @Value("${app.vectorstore.local.partition-key:company_id}")
+    private String localIndexPartitionKey;
+
+    @Value("${app.vectorstore.local.m:16}")
+    private int localIndexM;
+
+    @Value("${app.vectorstore.local.ef-construction:200}")
+    private int localIndexEfConstruction;
+
+    @Value("${app.vectorstore.local.ef-search:64}")
+    private int localIndexEfSearch;
+
+    @Value("${app.vectorstore.local.quantization:none}")
+    private String localIndexQuantization;
+
+    @Value("${app.vectorstore.local.rescore-factor:4}")
+    private int localIndexRescoreFactor;
+
     @Bean(name = "atlasMongoClient")
     public MongoClient atlasMongoClient() {
         return MongoClients.create(mongoAtlasUri);
@@ -47,15 +78,25 @@ public class VectorStoreConfig {
     }
 
     @Bean(name = "vectorStore")
+    @ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "atlas", matchIfMissing = true)
     public VectorStore vectorStore() {
         return MongoDBAtlasVectorStore.builder(atlasMongoTemplate(), embeddingModel())
                 .collectionName(collectionName)
                 .vectorIndexName(indexName)
                 .numCandidates(200)
+                .metadataFieldsToFilter(metadataFieldsToFilter)
                 .initializeSchema(true)
                 .build();
     }
 
+    @Bean(name = "vectorStore")
+    @ConditionalOnProperty(name = "app.vectorstore.type", havingValue = "local")
+    public VectorStore localVectorStore() {
+        return new LocalHnswVectorStore(embeddingModel(), Path.of(localIndexDirectory), localIndexPartitionKey,
+                localIndexM, localIndexEfConstruction, localIndexEfSearch,
+                VectorQuantizer.Mode.from(localIndexQuantization), localIndexRescoreFactor);
+    }
+
     @Bean(name = "embeddingModel")
     public OllamaEmbeddingModel embeddingModel() {
         try {
@@ -0,0 +1,8 @@
+package com.app.greensuitetest.constants;
+
+public enum KnowledgeDocumentStatus {
+    QUEUED,
+    PROCESSING,
+    COMPLETED,
+    FAILED
+}
@@ -1,19 +1,23 @@
 package com.app.greensuitetest.controller;
 
 import com.app.greensuitetest.dto.ApiResponse;
+import com.app.greensuitetest.exception.LlmCapacityExceededException;
 import com.app.greensuitetest.service.AIChatService;
 import com.app.greensuitetest.service.ConversationUtilService;
 import com.app.greensuitetest.service.RinPersonalityService;
 import com.app.greensuitetest.service.ContextBuilderService;
 import com.app.greensuitetest.service.PerformanceMonitoringService;
+import com.app.greensuitetest.service.llm.ResumableChatStreams;
 import com.app.greensuitetest.util.SecurityUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -35,6 +39,7 @@ public class AIChatController {
     private final RinPersonalityService rinPersonalityService;
     private final ContextBuilderService contextBuilderService;
     private final PerformanceMonitoringService performanceMonitoringService;
+    private final ResumableChatStreams resumableChatStreams;
     private final SecurityUtil securityUtil;
     
     private final Random personalityRandom = new Random();
@@ -111,6 +116,10 @@ public class AIChatController {
 
             return aiChatService.processStreamingChat(message, effectiveConversationId, effectiveUserId, sessionId)
                 .onErrorResume(error -> {
+                    // Raised before the first chunk, so GlobalExceptionHandler still turns it into a 429
+                    if (error instanceof LlmCapacityExceededException) {
+                        return Flux.error(error);
+                    }
                     // Handle client disconnection gracefully
                     if (isClientDisconnectionError(error)) {
                         log.info("Client disconnected during streaming for conversation: {}", effectiveConversationId);
@@ -121,18 +130,47 @@ public class AIChatController {
                     log.error("Error in Rin's streaming chat for conversation: {}", effectiveConversationId, error);
                     return Flux.just(rinPersonalityService.getRinErrorResponseForException(error));
                 });
+        } catch (LlmCapacityExceededException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in Rin's streaming chat for conversation: {}", conversationId, e);
             return Flux.just(rinPersonalityService.getRinErrorResponseForException(e));
         }
     }
 
+    /**
+     * Streaming chat over Server-Sent Events. Tokens arrive batched into "token" frames followed by a "done"
+     * frame, or by an "error" frame with a reason and retry-after when the generation failed; each frame has an id. After a dropped connection, send the same request with the last id seen as
+     * Last-Event-ID to receive the rest of the same answer instead of generating (and paying for) a new one.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, String>>> streamChatEvents(
+            @RequestParam String message,
+            @RequestParam(required = false) String conversationId,
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String sessionId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+
+        String effectiveUserId = getEffectiveUserId(userId);
+        String effectiveConversationId = conversationUtilService.generateUniqueConversationId(conversationId, effectiveUserId, sessionId);
+
+        // Streams are owned by the conversation they were started for
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            return resumableChatStreams.resume(effectiveConversationId, lastEventId.trim());
+        }
+
+        log.debug("Rin SSE response for conversation: {} with message: {} for user: {}", effectiveConversationId, message, effectiveUserId);
+        return resumableChatStreams.start(effectiveConversationId,
+                aiChatService.processStreamingChat(message, effectiveConversationId, effectiveUserId, sessionId));
+    }
+
     /**
      * Synchronous chat endpoint with Rin personality
      * Returns clean text content in ApiResponse format (no raw message objects)
+     * Completes asynchronously: the servlet thread is released while the model generates
      */
     @PostMapping("/chat/sync")
-    public ApiResponse chatSync(
+    public Mono<ApiResponse> chatSync(
             @RequestParam String message,
             @RequestParam(required = false) String conversationId,
             @RequestParam(required = false) String userId,
@@ -149,9 +187,11 @@ public class AIChatController {
 
             // AIChatService handles content cleaning internally via extractContent() method
             return aiChatService.processSyncChat(message, effectiveConversationId, effectiveUserId, sessionId);
+        } catch (LlmCapacityExceededException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error in Rin's sync chat for conversation: {}", conversationId, e);
-            return ApiResponse.error("Rin encountered an error: " + rinPersonalityService.getRinErrorResponseForException(e));
+            return Mono.just(ApiResponse.error("Rin encountered an error: " + rinPersonalityService.getRinErrorResponseForException(e)));
         }
     }
 
@@ -0,0 +1,68 @@
+package com.app.greensuitetest.controller;
+
+import com.app.greensuitetest.service.DocumentIngestionService;
+import com.app.greensuitetest.service.VectorStoreStatisticsService;
+import com.app.greensuitetest.service.vector.LocalHnswVectorStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/documents")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+public class DocumentAdminController {
+    // Every recall query runs a brute-force scan under the index's read lock, which holds up ingestion
+    private static final int MAX_RECALL_QUERIES = 200;
+    private static final int MAX_RECALL_K = 100;
+
+    private final VectorStore vectorStore;
+    private final DocumentIngestionService documentIngestionService;
+    private final VectorStoreStatisticsService vectorStoreStatisticsService;
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getVectorStoreStatistics() {
+        return ResponseEntity.ok(vectorStoreStatisticsService.getStatistics());
+    }
+
+    @GetMapping("/ingestion")
+    public ResponseEntity<Map<String, Object>> getIngestionProgress() {
+        return ResponseEntity.ok(documentIngestionService.getIngestionStats());
+    }
+
+    @PostMapping("/ingestion/reingest")
+    public ResponseEntity<?> reingestDocuments(@RequestParam(defaultValue = "false") boolean force) {
+        if (force) {
+            documentIngestionService.forceReingestDocumentsAsync();
+        } else {
+            documentIngestionService.reconcileDocumentsAsync();
+        }
+        return ResponseEntity.accepted().body(Map.of("status", force ? "Full re-ingestion started" : "Reconcile started"));
+    }
+
+    @GetMapping("/vector-index")
+    public ResponseEntity<?> getVectorIndexStats() {
+        if (!(vectorStore instanceof LocalHnswVectorStore localStore)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Local vector index is not enabled (app.vectorstore.type=local)"));
+        }
+        return ResponseEntity.ok(localStore.getIndexStats());
+    }
+
+    @GetMapping("/vector-index/recall")
+    public ResponseEntity<?> benchmarkVectorIndexRecall(
+            @RequestParam(defaultValue = "100") int queries,
+            @RequestParam(defaultValue = "10") int k) {
+        if (!(vectorStore instanceof LocalHnswVectorStore localStore)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Local vector index is not enabled (app.vectorstore.type=local)"));
+        }
+        if (queries <= 0 || k <= 0 || k > MAX_RECALL_K) {
+            return ResponseEntity.badRequest().body(Map.of("error",
+                    "queries must be positive and k between 1 and " + MAX_RECALL_K));
+        }
+        return ResponseEntity.ok(localStore.benchmarkRecall(Math.min(queries, MAX_RECALL_QUERIES), k));
+    }
+}
@@ -0,0 +1,46 @@
+package com.app.greensuitetest.controller;
+
+import com.app.greensuitetest.dto.ApiResponse;
+import com.app.greensuitetest.model.KnowledgeDocument;
+import com.app.greensuitetest.service.KnowledgeBaseService;
+import com.app.greensuitetest.util.SecurityUtil;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/knowledge-base/documents")
+@RequiredArgsConstructor
+public class KnowledgeBaseController {
+    private final KnowledgeBaseService knowledgeBaseService;
+    private final SecurityUtil securityUtil;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('OWNER') or hasRole('MANAGER')")
+    public ResponseEntity<ApiResponse> uploadDocument(@RequestParam("file") MultipartFile file) {
+        KnowledgeDocument document = knowledgeBaseService.upload(file, securityUtil.getCurrentUser());
+        return ResponseEntity.accepted().body(ApiResponse.success("Document queued for ingestion", document));
+    }
+
+    @GetMapping
+    public ResponseEntity<List<KnowledgeDocument>> listDocuments() {
+        return ResponseEntity.ok(knowledgeBaseService.listDocuments(securityUtil.getCurrentUserCompanyId()));
+    }
+
+    @GetMapping("/{documentId}")
+    public ResponseEntity<KnowledgeDocument> getDocument(@PathVariable String documentId) {
+        return ResponseEntity.ok(knowledgeBaseService.getDocument(securityUtil.getCurrentUserCompanyId(), documentId));
+    }
+
+    @DeleteMapping("/{documentId}")
+    @PreAuthorize("hasRole('OWNER') or hasRole('MANAGER')")
+    public ResponseEntity<ApiResponse> deleteDocument(@PathVariable String documentId) {
+        knowledgeBaseService.deleteDocument(securityUtil.getCurrentUserCompanyId(), documentId);
+        return ResponseEntity.ok(ApiResponse.success("Document removed from knowledge base"));
+    }
+}
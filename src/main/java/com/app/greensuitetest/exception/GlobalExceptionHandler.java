@@ -5,6 +5,7 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -47,6 +48,19 @@ public class GlobalExceptionHandler {
                 .body(ApiResponse.error(message, errors));
     }
 
+    @ExceptionHandler(LlmCapacityExceededException.class)
+    public ResponseEntity<ApiResponse> handleLlmCapacityExceeded(LlmCapacityExceededException ex) {
+        log.warn("Chat model at capacity: {}", ex.getMessage());
+
+        Map<String, Object> responseDetails = new HashMap<>(ex.getDetails());
+        responseDetails.put("error", ex.getClass().getSimpleName());
+        responseDetails.put("message", ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ApiResponse.error(ex.getMessage(), responseDetails));
+    }
+
     @ExceptionHandler(BaseException.class)
     public ResponseEntity<ApiResponse> handleCustomExceptions(BaseException ex) {
         HttpStatus status = HttpStatus.INTERNAL_SERVER_ERROR;
@@ -0,0 +1,28 @@
+package com.app.greensuitetest.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The chat model is saturated and the request would wait longer than the queue-wait budget.
+ * Mapped to 429 with a {@code Retry-After} header.
+ */
+@Getter
+public class LlmCapacityExceededException extends BaseException {
+    private final Duration retryAfter;
+
+    public LlmCapacityExceededException(String message, Duration retryAfter) {
+        super(message, Map.of("retryAfterSeconds", retryAfterSeconds(retryAfter)));
+        this.retryAfter = retryAfter;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds(retryAfter);
+    }
+
+    private static long retryAfterSeconds(Duration retryAfter) {
+        return Math.max((retryAfter.toMillis() + 999) / 1000, 1);
+    }
+}
@@ -0,0 +1,35 @@
+package com.app.greensuitetest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running summary of the older part of one conversation. Prompts carry this plus the messages it does not
+ * cover yet instead of the whole history, so their size stays flat as the conversation ages.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "conversation_summaries")
+public class ConversationSummary {
+
+    @Id
+    private String conversationId;
+
+    private String summary;
+
+    // Messages folded into the summary so far, across every summarisation pass
+    private int summarizedMessages;
+
+    // Identifies the newest summarised message, so the next pass starts right after it
+    private int lastMessageHash;
+
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,46 @@
+package com.app.greensuitetest.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What was ingested for one source file: its content hash, the pipeline version that produced the
+ * chunks, and the deterministic vector ids of those chunks. Re-ingestion compares against this to
+ * embed only new or changed chunks and delete the ones that disappeared.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "ingestion_manifests")
+public class IngestionManifest {
+
+    @Id
+    private String source;
+
+    private String fileHash;
+    private int pipelineVersion;
+    private long fileSize;
+
+    @Builder.Default
+    private List<String> chunkIds = new ArrayList<>();
+
+    private int chunkCount;
+
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    private LocalDateTime updatedAt;
+
+    public boolean isUpToDate(String hash, int version) {
+        return version == pipelineVersion && hash != null && hash.equals(fileHash);
+    }
+}
@@ -0,0 +1,56 @@
+package com.app.greensuitetest.model;
+
+import com.app.greensuitetest.constants.KnowledgeDocumentStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A policy or report a company uploaded to its own knowledge base, and the ingestion job that
+ * turns it into company-scoped chunks.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "knowledge_documents")
+@CompoundIndex(name = "company_created_idx", def = "{'companyId': 1, 'createdAt': -1}")
+public class KnowledgeDocument {
+
+    @Id
+    private String id;
+
+    private String companyId;
+    private String uploadedBy;
+    private String filename;
+    private String contentType;
+    private long fileSize;
+    private String fileHash;
+
+    @JsonIgnore
+    private String storagePath;
+
+    private KnowledgeDocumentStatus status;
+    private int chunkCount;
+
+    @JsonIgnore
+    @Builder.Default
+    private List<String> chunkIds = new ArrayList<>();
+
+    private String error;
+
+    @Builder.Default
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,9 @@
+package com.app.greensuitetest.repository;
+
+import com.app.greensuitetest.model.ConversationSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ConversationSummaryRepository extends MongoRepository<ConversationSummary, String> {
+}
@@ -0,0 +1,22 @@
+package com.app.greensuitetest.repository;
+
+import com.app.greensuitetest.constants.KnowledgeDocumentStatus;
+import com.app.greensuitetest.model.KnowledgeDocument;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface KnowledgeDocumentRepository extends MongoRepository<KnowledgeDocument, String> {
+    List<KnowledgeDocument> findByCompanyIdOrderByCreatedAtDesc(String companyId);
+
+    Optional<KnowledgeDocument> findByIdAndCompanyId(String id, String companyId);
+
+    Optional<KnowledgeDocument> findFirstByCompanyIdAndFileHashAndStatusIn(String companyId, String fileHash,
+                                                                          Collection<KnowledgeDocumentStatus> statuses);
+
+    List<KnowledgeDocument> findByStatusIn(Collection<KnowledgeDocumentStatus> statuses);
+}
@@ -2,31 +2,41 @@ package com.app.greensuitetest.service;
 
 import com.app.greensuitetest.dto.ApiResponse;
 import com.app.greensuitetest.exception.InsufficientCreditsException;
+import com.app.greensuitetest.exception.LlmCapacityExceededException;
+import com.app.greensuitetest.service.conversation.ConversationSnapshot;
+import com.app.greensuitetest.service.conversation.ConversationSummaryService;
+import com.app.greensuitetest.service.llm.ChatGenerationCoalescer;
+import com.app.greensuitetest.service.llm.LlmRequestScheduler;
+import com.app.greensuitetest.util.SecurityUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.model.StreamingChatModel;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.stream.Collectors;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.net.ConnectException;
 import java.util.concurrent.TimeoutException;
 import org.springframework.http.HttpStatus;
@@ -39,130 +49,184 @@ import org.springframework.web.context.request.async.AsyncRequestNotUsableExcept
 @RequiredArgsConstructor
 public class AIChatService {
 
+    private static final String NO_DOCUMENT_CONTEXT = "No relevant context found.";
+
     private final StreamingChatModel streamingChatModel;
-    private final VectorStore vectorStore;
+    private final HybridRetrievalService hybridRetrievalService;
     private final ChatMemory chatMemory;
     private final ConversationContextService conversationContextService;
     private final DocumentContextService documentContextService;
     private final RinPersonalityService rinPersonalityService;
     private final ContextBuilderService contextBuilderService;
+    private final ConversationSummaryService conversationSummaryService;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final ChatGenerationCoalescer chatGenerationCoalescer;
     private final AICreditService aiCreditService; // Add credit service
+    private final SecurityUtil securityUtil;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Process streaming chat with Rin's personality and credit deduction
      */
     public Flux<String> processStreamingChat(String message, String conversationId, String userId, String sessionId) {
-        try {
-            // Check and deduct credits BEFORE processing
-            final AtomicReference<Boolean> creditsDeducted = new AtomicReference<>(false);
-            if (userId != null) {
-                if (!aiCreditService.hasCreditsForChat(userId)) {
-                    return Flux.just(rinPersonalityService.getRinInsufficientCreditsMessage());
-                }
-                // Deduct credits upfront for streaming as well
-                aiCreditService.deductChatCredits(userId, conversationId, "Streaming chat");
-                creditsDeducted.set(true);
-                log.info("Deducted 2 AI credits from user {} for streaming chat", userId);
-            }
+        // Turned away before credits are taken, so a saturated model costs the caller nothing
+        String companyId = currentCompanyId();
+        LlmRequestScheduler.Ticket ticket = llmRequestScheduler.admit(companyId);
+        AtomicBoolean creditsDeducted = new AtomicBoolean();
 
-            // Update relationship dynamics
-            rinPersonalityService.updateRelationshipDynamics(conversationId, userId, message);
-
-            // Build enhanced context with personality awareness
-            Map<String, Object> enhancedContext = contextBuilderService.buildEnhancedContextWithPersonality(
-                conversationId, userId, sessionId, message);
-
-            return processWithRinKazukiPersonalityStream(message, conversationId, enhancedContext, userId)
+        return assembleTurn(message, conversationId, userId, sessionId, companyId, "Streaming chat", creditsDeducted)
+                .flatMapMany(turn -> processWithRinKazukiPersonalityStream(message, turn, userId, ticket))
                 .onErrorResume(error -> {
-                    log.error("Error in Rin's streaming chat for conversation: {}", conversationId, error);
-                    
+                    if (error instanceof InsufficientCreditsException e) {
+                        log.warn("Insufficient credits for user {}: {}", userId, e.getMessage());
+                        return Flux.just(rinPersonalityService.getRinInsufficientCreditsMessage(e));
+                    }
+
                     // Refund credits if chat failed after deduction
-                    if (userId != null && creditsDeducted.get()) {
-                        try {
-                            aiCreditService.refundCredits(userId, 2, "Streaming chat failed");
-                            log.info("Refunded 2 credits to user {} due to streaming failure", userId);
-                        } catch (Exception refundError) {
-                            log.error("Failed to refund credits to user {}: {}", userId, refundError.getMessage());
-                        }
+                    if (creditsDeducted.get()) {
+                        refundChatCredits(userId, conversationId,
+                                error instanceof LlmCapacityExceededException ? "Chat model busy" : "Streaming chat failed");
                     }
-                    
+                    if (error instanceof LlmCapacityExceededException) {
+                        // Nothing has been streamed yet, so the caller can still answer 429 with Retry-After
+                        return Flux.error(error);
+                    }
+                    log.error("Error in Rin's streaming chat for conversation: {}", conversationId, error);
+
                     // Return fallback response
-                    String fallbackResponse = getFallbackResponse(error);
-                    return Flux.just(fallbackResponse);
-                });
-        } catch (InsufficientCreditsException e) {
-            log.warn("Insufficient credits for user {}: {}", userId, e.getMessage());
-            return Flux.just(rinPersonalityService.getRinInsufficientCreditsMessage(e));
-        } catch (Exception e) {
-            log.error("Error in Rin's streaming chat for conversation: {}", conversationId, e);
-            return Flux.just(getFallbackResponse(e));
-        }
+                    return Flux.just(getFallbackResponse(error));
+                })
+                // A turn that never reached the queue (no credits, failure, joined another generation) frees its place
+                .doFinally(signal -> llmRequestScheduler.cancel(ticket));
     }
 
     /**
-     * Process synchronous chat with Rin's personality and credit deduction
+     * Process synchronous chat with Rin's personality and credit deduction. The request thread only runs the
+     * admission check; the returned Mono completes the response once the generation is done.
      */
-    public ApiResponse processSyncChat(String message, String conversationId, String userId, String sessionId) {
-        try {
-            // Check and deduct credits BEFORE processing
-            int remainingCredits = 0;
-            if (userId != null) {
-                if (!aiCreditService.hasCreditsForChat(userId)) {
-                    return createInsufficientCreditsResponse(userId);
-                }
-                remainingCredits = aiCreditService.deductChatCredits(userId, conversationId, "Sync chat");
-            }
+    public Mono<ApiResponse> processSyncChat(String message, String conversationId, String userId, String sessionId) {
+        String companyId = currentCompanyId();
+        LlmRequestScheduler.Ticket ticket = llmRequestScheduler.admit(companyId);
+        AtomicBoolean creditsDeducted = new AtomicBoolean();
+
+        return assembleTurn(message, conversationId, userId, sessionId, companyId, "Sync chat", creditsDeducted)
+                .flatMap(turn -> processWithRinKazukiPersonality(message, turn, userId, ticket)
+                        // The personality and credit lookups below block, so they run off the model's I/O threads
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(response -> {
+                            Map<String, Object> responseData = Map.of(
+                                "response", response,
+                                "conversationId", conversationId,
+                                "personality_state", rinPersonalityService.getRinPersonalityState(conversationId, userId),
+                                "timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                                "contextUsed", turn.enhancedContext().keySet()
+                            );
+
+                            // Add credit info if user is authenticated
+                            if (userId != null) {
+                                Map<String, Object> creditInfo = Map.of(
+                                    "creditsUsed", 2,
+                                    "remainingCredits", turn.remainingCredits(),
+                                    "isLowOnCredits", aiCreditService.isLowOnCredits(userId)
+                                );
+
+                                // Combine response data with credit info
+                                Map<String, Object> combinedData = new java.util.HashMap<>(responseData);
+                                combinedData.put("creditInfo", creditInfo);
+                                responseData = combinedData;
+                            }
+
+                            return ApiResponse.success("Rin's response", responseData);
+                        }))
+                .onErrorResume(error -> {
+                    if (error instanceof InsufficientCreditsException e) {
+                        log.warn("Insufficient credits for user {}: {}", userId, e.getMessage());
+                        return Mono.just(createInsufficientCreditsResponse(userId, e));
+                    }
+                    if (creditsDeducted.get()) {
+                        refundChatCredits(userId, conversationId,
+                                error instanceof LlmCapacityExceededException ? "Chat model busy" : "Chat processing failed");
+                    }
+                    if (error instanceof LlmCapacityExceededException) {
+                        // The response is not committed yet, so this still becomes a 429
+                        return Mono.error(error);
+                    }
+                    log.error("Error in Rin's sync chat for conversation: {}", conversationId, error);
+                    return Mono.just(ApiResponse.error("Rin encountered an error: " + getFallbackResponse(error)));
+                })
+                .doFinally(signal -> llmRequestScheduler.cancel(ticket));
+    }
+
+    /**
+     * Everything a turn needs before its prompt is built, gathered as a small dependency graph instead of one
+     * step after another:
+     * <pre>
+     * credits -> relationship update ---+
+     *                                   +--> enhanced context --+
+     * chat memory snapshot -------------+                       +--> turn inputs
+     * retrieval (embedding + search) -> document context -------+
+     * </pre>
+     * Retrieval depends on the message alone, so it overlaps with the credit and history round-trips and the
+     * turn waits for the slowest branch instead of the sum. The relationship update waits for the credits, so a
+     * turn turned away for credits leaves no trace.
+     */
+    private Mono<TurnInputs> assembleTurn(String message, String conversationId, String userId, String sessionId,
+                                          String companyId, String creditReason, AtomicBoolean creditsDeducted) {
+        Mono<Integer> credits = Mono.fromCallable(() -> {
+                    int remainingCredits = 0;
+                    // Check and deduct credits BEFORE processing
+                    if (userId != null) {
+                        if (!aiCreditService.hasCreditsForChat(userId)) {
+                            throw new InsufficientCreditsException("Insufficient AI credits for chat");
+                        }
+                        remainingCredits = aiCreditService.deductChatCredits(userId, conversationId, creditReason);
+                        creditsDeducted.set(true);
+                        log.info("Deducted 2 AI credits from user {} for {}", userId, creditReason);
+                    }
 
-            rinPersonalityService.updateRelationshipDynamics(conversationId, userId, message);
-            Map<String, Object> enhancedContext = contextBuilderService.buildEnhancedContextWithPersonality(
-                conversationId, userId, sessionId, message);
-            
-            String response = processWithRinKazukiPersonality(message, conversationId, enhancedContext, userId).block();
+                    // Update relationship dynamics
+                    rinPersonalityService.updateRelationshipDynamics(conversationId, userId, message);
+                    return remainingCredits;
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .cache();
 
-            // Update conversation context after successful response
-            conversationContextService.updateContextAfterInteraction(conversationId, message, response);
+        // History is read once per turn and shared by context building, prompt building and the save
+        Mono<ConversationSnapshot> snapshot = Mono.fromCallable(() -> conversationContextService.loadSnapshot(conversationId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .cache();
 
-            Map<String, Object> responseData = Map.of(
-                "response", response != null ? response : "I'm having a bit of trouble thinking of a proper response...",
-                "conversationId", conversationId,
-                "personality_state", rinPersonalityService.getRinPersonalityState(conversationId, userId),
-                "timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                "contextUsed", enhancedContext.keySet()
-            );
+        // Build enhanced context with personality awareness
+        Mono<Map<String, Object>> enhancedContext = Mono.zip(credits, snapshot)
+                .map(ready -> contextBuilderService.buildEnhancedContextWithPersonality(ready.getT2(), userId, sessionId, message));
 
-            // Add credit info if user is authenticated
-            if (userId != null) {
-                Map<String, Object> creditInfo = Map.of(
-                    "creditsUsed", 2,
-                    "remainingCredits", remainingCredits,
-                    "isLowOnCredits", aiCreditService.isLowOnCredits(userId)
-                );
-                
-                // Combine response data with credit info
-                Map<String, Object> combinedData = new java.util.HashMap<>(responseData);
-                combinedData.put("creditInfo", creditInfo);
-                responseData = combinedData;
-            }
+        Mono<String> documentContext = Mono.fromCallable(() -> {
+                    // Only perform vector search for actual environmental questions, not meta queries
+                    if (conversationContextService.isMetaQuery(message)) {
+                        log.debug("Skipping vector search for meta query: conversation history or name query");
+                        return NO_DOCUMENT_CONTEXT;
+                    }
+                    // Multi-stage context retrieval with semantic filtering
+                    List<Document> documents = performEnhancedVectorSearchWithSemanticFiltering(message, companyId);
+                    return documentContextService.buildIntelligentContext(documents, message);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(error -> {
+                    // Answering without documents beats failing a turn whose credits are already taken
+                    log.warn("Could not build document context: {}", error.getMessage());
+                    return Mono.just(NO_DOCUMENT_CONTEXT);
+                });
 
-            return ApiResponse.success("Rin's response", responseData);
-            
-        } catch (InsufficientCreditsException e) {
-            log.warn("Insufficient credits for user {}: {}", userId, e.getMessage());
-            return createInsufficientCreditsResponse(userId, e);
-        } catch (Exception e) {
-            log.error("Error in Rin's sync chat for conversation: {}", conversationId, e);
-            
-            // Refund credits if chat failed after deduction
-            if (userId != null) {
-                try {
-                    aiCreditService.refundCredits(userId, 2, "Chat processing failed", conversationId);
-                    log.info("Refunded 2 credits to user {} due to chat failure", userId);
-                } catch (Exception refundError) {
-                    log.error("Failed to refund credits to user {}: {}", userId, refundError.getMessage());
-                }
-            }
-            
-            return ApiResponse.error("Rin encountered an error: " + getFallbackResponse(e));
+        return Mono.zip(snapshot, enhancedContext, documentContext, credits)
+                .map(parts -> new TurnInputs(parts.getT1(), parts.getT2(), parts.getT3(), parts.getT4()));
+    }
+
+    private void refundChatCredits(String userId, String conversationId, String reason) {
+        try {
+            aiCreditService.refundCredits(userId, 2, reason, conversationId);
+            log.info("Refunded 2 credits to user {}: {}", userId, reason);
+        } catch (Exception refundError) {
+            log.error("Failed to refund credits to user {}: {}", userId, refundError.getMessage());
         }
     }
 
@@ -171,11 +235,11 @@ public class AIChatService {
      */
     public ApiResponse getChatHistory(String conversationId, String userId, String sessionId) {
         try {
-            List<Message> history = chatMemory.get(conversationId);
-            int historySize = history.size();
+            ConversationSnapshot snapshot = conversationContextService.loadSnapshot(conversationId);
+            int historySize = snapshot.size();
 
             Map<String, Object> enhancedContext = conversationContextService.buildComprehensiveContext(
-                    conversationId, userId, sessionId, "");
+                    snapshot, userId, sessionId, "");
 
             Map<String, Object> responseData = Map.of(
                 "conversationId", conversationId,
@@ -204,8 +268,10 @@ public class AIChatService {
 
     public ApiResponse clearChatHistory(String conversationId, String userId, String sessionId) {
         try {
-            chatMemory.clear(conversationId);
+            // Pending writes are dropped first so a queued exchange cannot bring the history back
             conversationContextService.clearContextCache(conversationId);
+            chatMemory.clear(conversationId);
+            conversationSummaryService.clearSummary(conversationId);
             rinPersonalityService.clearRelationshipData(conversationId);
 
             Map<String, Object> responseData = Map.of(
@@ -229,62 +295,52 @@ public class AIChatService {
         }
     }
 
-    private Flux<String> processWithRinKazukiPersonalityStream(String message, String conversationId, Map<String, Object> enhancedContext, String userId) {
-        return Mono.fromCallable(() -> {
-                    // Check if this is a conversation history query - if so, skip vector search
-                    boolean isConversationHistoryQuery = Boolean.TRUE.equals(enhancedContext.get("user_asking_about_conversation_history"));
-        boolean isNameQuery = Boolean.TRUE.equals(enhancedContext.get("user_asking_about_name")) || 
-                             Boolean.TRUE.equals(enhancedContext.get("user_asking_about_rin_name"));
-                    
-                    String documentContext = "No relevant context found.";
-                    
-                    // Only perform vector search for actual environmental questions, not meta queries
-                    if (!isConversationHistoryQuery && !isNameQuery) {
-                        // Multi-stage context retrieval with semantic filtering
-                        List<Document> documents = performEnhancedVectorSearchWithSemanticFiltering(message, enhancedContext);
-                        // Build comprehensive context
-                        documentContext = documentContextService.buildIntelligentContext(documents, message);
-                    } else {
-                        log.debug("Skipping vector search for meta query: conversation history or name query");
-                    }
-
-                    // Build Rin enhanced prompt messages
-                    List<Message> promptMessages = rinPersonalityService.buildRinKazukiPromptMessages(
-                        conversationId, message, documentContext, enhancedContext, chatMemory);
-
-                    return promptMessages;
-                })
+    private Flux<String> processWithRinKazukiPersonalityStream(String message, TurnInputs turn, String userId, LlmRequestScheduler.Ticket ticket) {
+        ConversationSnapshot snapshot = turn.snapshot();
+        Map<String, Object> enhancedContext = turn.enhancedContext();
+        String conversationId = snapshot.getConversationId();
+        return Mono.fromCallable(() -> rinPersonalityService.buildRinKazukiPromptMessages(
+                        conversationId, message, turn.documentContext(), enhancedContext, snapshot))
                 .flatMapMany(promptMessages -> {
                     // Dynamic chat options based on context and Rin's personality
                     ChatOptions options = rinPersonalityService.buildRinPersonalityChatOptions(message, enhancedContext);
                     Prompt prompt = new Prompt(promptMessages, options);
 
                     // Stream response with Rin's personality tracking
-                    AtomicReference<StringBuilder> responseBuilder = new AtomicReference<>(new StringBuilder());
+                    StringBuilder responseBuilder = new StringBuilder(responseCapacity(options));
+                    AtomicLong requestStart = new AtomicLong();
+                    // Checked once per stream; the per-chunk path stays free of logging work when debug is off
+                    boolean logChunks = log.isDebugEnabled();
 
-                    return streamingChatModel.stream(prompt)
+                    return generate("stream", prompt, snapshot.size() == 0, ticket, requestStart)
                     .map(chatResponse -> {
 
                         // CRITICAL: Get content without aggressive processing
-                        String content = extractContent(chatResponse.getResult().getOutput());
+                        String content = extractContent(chatResponse);
+                        if (!content.isEmpty() && responseBuilder.isEmpty()) {
+                            recordTimeToFirstToken("stream", requestStart.get());
+                        }
                         
                         // Log for debugging
-                        if (!content.isEmpty()) {
+                        if (logChunks && !content.isEmpty()) {
                             log.debug("Streaming chunk: '{}' (length: {})", content, content.length());
                         }
                         
                         // Accumulate for memory storage
-                        responseBuilder.get().append(content);
+                        responseBuilder.append(content);
                         
                         // Return raw content for streaming - NO processing
                         return content;
                     })
-                    .doOnComplete(() -> {
-                        String finalResponse = responseBuilder.get().toString();
-                        saveChatToMemoryWithContext(conversationId, message, finalResponse, enhancedContext);
-                        conversationContextService.updateContextAfterInteraction(conversationId, message, finalResponse);
-                    })
+                    // Recorded before the stream completes, but off the model's I/O thread: recording can block
+                    // briefly when the post-turn queue is full
+                    .concatWith(Mono.<String>fromRunnable(() -> recordExchange(snapshot, message, responseBuilder.toString()))
+                            .subscribeOn(Schedulers.boundedElastic()))
                     .doOnError(error -> {
+                        // Queue-wait timeouts are refunded and reported by processStreamingChat
+                        if (error instanceof LlmCapacityExceededException) {
+                            return;
+                        }
                                             // Refund credits if streaming fails after deduction
                     if (userId != null) {
                         try {
@@ -303,6 +359,9 @@ public class AIChatService {
                         }
                     })
                     .onErrorResume(error -> {
+                        if (error instanceof LlmCapacityExceededException) {
+                            return Flux.error(error);
+                        }
                         // Handle client disconnection gracefully
                         if (isClientDisconnectionError(error)) {
                             log.info("Client disconnected during streaming, stopping gracefully for conversation: {}", conversationId);
@@ -315,128 +374,179 @@ public class AIChatService {
                     });
         })
         .onErrorResume(error -> {
+            if (error instanceof LlmCapacityExceededException) {
+                return Flux.error(error);
+            }
             log.error("Error in Rin's enhanced stream processing", error);
             return Flux.just(rinPersonalityService.getRinErrorResponseForException(error));
         });
     }
 
-    private Mono<String> processWithRinKazukiPersonality(String message, String conversationId, Map<String, Object> enhancedContext, String userId) {
+    private Mono<String> processWithRinKazukiPersonality(String message, TurnInputs turn, String userId, LlmRequestScheduler.Ticket ticket) {
+        ConversationSnapshot snapshot = turn.snapshot();
+        Map<String, Object> enhancedContext = turn.enhancedContext();
+        String conversationId = snapshot.getConversationId();
         return Mono.fromCallable(() -> {
-                    // Check if this is a conversation history query - if so, skip vector search
-                    boolean isConversationHistoryQuery = Boolean.TRUE.equals(enhancedContext.get("user_asking_about_conversation_history"));
-                    boolean isNameQuery = Boolean.TRUE.equals(enhancedContext.get("user_asking_about_name")) || 
-                                         Boolean.TRUE.equals(enhancedContext.get("user_asking_about_rin_name"));
-                    
-                    String documentContext = "No relevant context found.";
-                    
-                    // Only perform vector search for actual environmental questions, not meta queries
-                    if (!isConversationHistoryQuery && !isNameQuery) {
-                        List<Document> documents = performEnhancedVectorSearchWithSemanticFiltering(message, enhancedContext);
-                        documentContext = documentContextService.buildIntelligentContext(documents, message);
-                    } else {
-                        log.debug("Skipping vector search for sync meta query: conversation history or name query");
-                    }
-                    
                     List<Message> promptMessages = rinPersonalityService.buildRinKazukiPromptMessages(
-                        conversationId, message, documentContext, enhancedContext, chatMemory);
+                        conversationId, message, turn.documentContext(), enhancedContext, snapshot);
 
                     ChatOptions options = rinPersonalityService.buildRinPersonalityChatOptions(message, enhancedContext);
-                    Prompt prompt = new Prompt(promptMessages, options);
-
-                    StringBuilder responseBuilder = new StringBuilder();
-                    streamingChatModel.stream(prompt)
+                    return new Prompt(promptMessages, options);
+                })
+                .flatMap(prompt -> {
+                    StringBuilder responseBuilder = new StringBuilder(responseCapacity(prompt.getOptions()));
+                    AtomicLong requestStart = new AtomicLong();
+                    return generate("sync", prompt, snapshot.size() == 0, ticket, requestStart)
                             .doOnNext(chatResponse -> {
-                                String content = extractContent(chatResponse.getResult().getOutput());
+                                String content = extractContent(chatResponse);
+                                if (responseBuilder.isEmpty() && !content.isEmpty()) {
+                                    recordTimeToFirstToken("sync", requestStart.get());
+                                }
                                 responseBuilder.append(content);
                             })
-                            .blockLast();
-
-                    String finalResponse = responseBuilder.toString().trim();
-                    if (finalResponse.isEmpty()) {
-                        finalResponse = "I'm having a bit of trouble thinking of a proper response... Perhaps we could try a different approach to your environmental question?";
-                    }
-
-                    saveChatToMemoryWithContext(conversationId, message, finalResponse, enhancedContext);
-                    return finalResponse;
+                            .then(Mono.fromCallable(() -> {
+                                String finalResponse = responseBuilder.toString().trim();
+                                if (finalResponse.isEmpty()) {
+                                    finalResponse = "I'm having a bit of trouble thinking of a proper response... Perhaps we could try a different approach to your environmental question?";
+                                }
+
+                                recordExchange(snapshot, message, finalResponse);
+                                return finalResponse;
+                            }).subscribeOn(Schedulers.boundedElastic()));
                 })
                 .onErrorResume(error -> {
+                    if (error instanceof LlmCapacityExceededException) {
+                        // Still waiting for a slot when the queue budget ran out; surfaced as 429 by the caller
+                        return Mono.error(error);
+                    }
                     log.error("Error processing Rin's enhanced chat", error);
                     return Mono.just(rinPersonalityService.getRinErrorResponseForException(error));
                 });
     }
 
-    private List<Document> performEnhancedVectorSearchWithSemanticFiltering(String message, Map<String, Object> context) {
-        try {
-            SearchRequest.Builder requestBuilder = SearchRequest.builder()
-                    .query(message)
-                    .topK(12)
-                    .similarityThreshold(0.5);
-
-            List<Document> initialDocs = vectorStore.similaritySearch(requestBuilder.build());
-            assert initialDocs != null;
-            if (initialDocs.isEmpty()) {
-                return new ArrayList<>();
-            }
+    /**
+     * Chat model responses for {@code prompt}, run through the scheduler. First turns carry no history or
+     * summary, so identical ones from different users are coalesced onto one generation. {@code requestStart}
+     * is set when this caller's chunks start to be produced: when the prompt leaves the queue, or when the
+     * caller joins a generation that is already running.
+     */
+    private Flux<ChatResponse> generate(String mode, Prompt prompt, boolean shareable,
+                                        LlmRequestScheduler.Ticket ticket, AtomicLong requestStart) {
+        AtomicBoolean generating = new AtomicBoolean();
+        Supplier<Flux<ChatResponse>> generation = () -> llmRequestScheduler.schedule(ticket, () -> {
+            // Timed from when the prompt leaves the queue, so queueing does not count as prefill
+            generating.set(true);
+            requestStart.set(System.nanoTime());
+            return streamingChatModel.stream(prompt);
+        });
+        Flux<ChatResponse> responses = shareable ? chatGenerationCoalescer.join(prompt, generation) : Flux.defer(generation);
+        return responses
+                .doOnSubscribe(subscription -> requestStart.set(System.nanoTime()))
+                .doOnNext(chatResponse -> {
+                    // Followers get the leader's chunks; only the caller that ran the generation reports its prefill
+                    if (generating.get()) {
+                        recordPromptEvaluation(mode, chatResponse);
+                    }
+                });
+    }
+
+    /**
+     * Time from sending the prompt to the first non-empty chunk: mostly prompt evaluation (prefill), which is
+     * what a reused prompt prefix saves.
+     */
+    private void recordTimeToFirstToken(String mode, long requestStartNanos) {
+        Timer.builder("rin.chat.time.to.first.token")
+                .tag("mode", mode)
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - requestStartNanos));
+    }
 
-            return initialDocs.stream().limit(8).collect(Collectors.toList());
+    /**
+     * Ollama reports how long it spent evaluating the prompt on the final chunk; a cached prefix shows up here
+     * as a drop independent of network and queueing time.
+     */
+    private void recordPromptEvaluation(String mode, ChatResponse chatResponse) {
+        if (chatResponse.getMetadata() == null) {
+            return;
+        }
+        Object promptEval = chatResponse.getMetadata().get("prompt-eval-duration");
+        if (promptEval instanceof Duration duration && !duration.isZero()) {
+            Timer.builder("rin.chat.prompt.evaluation")
+                    .tag("mode", mode)
+                    .publishPercentiles(0.5, 0.95)
+                    .register(meterRegistry)
+                    .record(duration);
+        }
+    }
+
+    private List<Document> performEnhancedVectorSearchWithSemanticFiltering(String message, String companyId) {
+        try {
+            // Vector and BM25 candidates fused by reciprocal rank, scoped to the shared corpus and the caller's company
+            return hybridRetrievalService.retrieve(message, companyId, 12, 0.5, 8);
         } catch (Exception e) {
             log.warn("Enhanced vector search failed: {}", e.getMessage());
             return new ArrayList<>();
         }
     }
 
-    private String extractContent(Object output) {
-        if (output == null) return "";
+    /**
+     * Company of the authenticated caller, resolved on the request thread. The userId request parameter is
+     * not trusted for this, so anonymous callers only ever see the shared corpus.
+     */
+    private String currentCompanyId() {
         try {
-            for (String methodName : Arrays.asList("getContent", "getText", "getTextContent")) {
-                try {
-                    Object content = output.getClass().getMethod(methodName).invoke(output);
-                    if (content != null) {
-                        String contentStr = content.toString();
-                        if (!contentStr.isEmpty()) {
-                            return contentStr;
-                        }
-                    }
-                } catch (Exception ignored) {}
-            }
-            
-            // Fallback to toString but filter out debug information
-            String fallbackContent = output.toString();
-            
-            // Filter out debug messages like "AssistantMessage [messageType=ASSISTANT...]"
-            if (fallbackContent.startsWith("AssistantMessage [") || 
-                fallbackContent.contains("messageType=ASSISTANT") ||
-                fallbackContent.contains("toolCalls=[]") ||
-                fallbackContent.contains("metadata=")) {
-                return "";
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication != null && authentication.isAuthenticated() &&
+                    !"anonymousUser".equals(authentication.getName())) {
+                return securityUtil.getCurrentUser().getCompanyId();
             }
-            
-            return fallbackContent;
         } catch (Exception e) {
-            log.warn("Failed to extract content from output: {}", e.getMessage());
+            log.debug("Could not resolve company for retrieval scope: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Text of one streamed chunk. The output is typed, so no reflection is needed; chunks without a
+     * generation (such as a final metadata-only one) yield an empty string.
+     */
+    static String extractContent(ChatResponse chatResponse) {
+        Generation generation = chatResponse.getResult();
+        if (generation == null || generation.getOutput() == null) {
             return "";
         }
+        String text = generation.getOutput().getText();
+        return text != null ? text : "";
     }
-    
-    private void saveChatToMemoryWithContext(String conversationId, String userInput, String assistantResponse, Map<String, Object> context) {
-        try {
-            UserMessage userMessage = new UserMessage(userInput);
-            AssistantMessage assistantMessage = new AssistantMessage(assistantResponse);
 
-            chatMemory.add(conversationId, userMessage);
-            chatMemory.add(conversationId, assistantMessage);
+    /**
+     * Initial size of the response buffer: about four characters per token of the response limit, so the
+     * buffer does not have to grow chunk by chunk while the answer streams in.
+     */
+    static int responseCapacity(ChatOptions options) {
+        Integer maxTokens = options != null ? options.getMaxTokens() : null;
+        return maxTokens != null ? Math.min(maxTokens, 4096) * 4 : 4096;
+    }
 
-            log.debug("Saved Rin's chat exchange to memory for conversation: {}", conversationId);
+    /**
+     * Ends the turn's own work: the exchange goes into the snapshot and its writes onto the post-turn bus,
+     * so the response is complete at the last token rather than after the chat memory and context writes.
+     */
+    private void recordExchange(ConversationSnapshot snapshot, String userInput, String assistantResponse) {
+        String conversationId = snapshot.getConversationId();
+        try {
+            conversationContextService.recordExchange(snapshot, userInput, assistantResponse);
+            log.debug("Queued Rin's chat exchange for conversation: {}", conversationId);
+
+            // Older turns are folded into the running summary off the request thread
+            conversationSummaryService.summarizeIfNeeded(snapshot);
         } catch (Exception e) {
-            log.error("Failed to save Rin's messages to chat memory for conversation '{}': {}",
+            log.error("Failed to record Rin's chat exchange for conversation '{}': {}",
                     conversationId, e.getMessage(), e);
         }
     }
 
-    private ApiResponse createInsufficientCreditsResponse(String userId) {
-        return createInsufficientCreditsResponse(userId, null);
-    }
-
     private ApiResponse createInsufficientCreditsResponse(String userId, InsufficientCreditsException e) {
         Map<String, Object> creditStats = aiCreditService.getCreditStats(userId);
         
@@ -515,4 +625,11 @@ public class AIChatService {
         
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Inputs of one turn, gathered before its prompt is built.
+     */
+    private record TurnInputs(ConversationSnapshot snapshot, Map<String, Object> enhancedContext,
+                              String documentContext, int remainingCredits) {
+    }
+}
@@ -7,6 +7,8 @@ import com.app.greensuitetest.model.CreditTransaction;
 import com.app.greensuitetest.model.User;
 import com.app.greensuitetest.repository.CreditTransactionRepository;
 import com.app.greensuitetest.repository.UserRepository;
+import com.app.greensuitetest.service.conversation.PostTurnEventBus;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheEvict;
@@ -31,34 +33,72 @@ public class AICreditService {
     
     private final UserRepository userRepository;
     private final CreditTransactionRepository creditTransactionRepository;
+    private final PostTurnEventBus postTurnEventBus;
     
     private static final int CHAT_COST = 2;
     private static final int DEFAULT_CREDITS = 50;
     
+    @PostConstruct
+    public void subscribeToTransactions() {
+        postTurnEventBus.subscribe(CreditTransaction.class, this::saveTransactions);
+    }
+    
     /**
      * Log a credit transaction
      */
     private void logCreditTransaction(String userId, CreditTransaction.TransactionType type, int amount, 
                                     int balanceBefore, int balanceAfter, String reason, String conversationId) {
         try {
-            CreditTransaction transaction = CreditTransaction.builder()
-                    .userId(userId)
-                    .type(type)
-                    .amount(amount)
-                    .balanceBefore(balanceBefore)
-                    .balanceAfter(balanceAfter)
-                    .reason(reason)
-                    .conversationId(conversationId)
-                    .timestamp(LocalDateTime.now())
-                    .build();
-            
-            creditTransactionRepository.save(transaction);
+            creditTransactionRepository.save(buildTransaction(userId, type, amount, balanceBefore, balanceAfter,
+                    reason, conversationId));
             log.debug("Logged credit transaction: {} for user: {}", type, userId);
         } catch (Exception e) {
             log.error("Failed to log credit transaction for user: {}", userId, e);
         }
     }
     
+    /**
+     * Log the credit transaction of a chat turn (its deduction or refund). The balance is already saved; the
+     * ledger entry is written behind by the post-turn bus so it does not hold up the turn. Everything else is
+     * logged synchronously by {@link #logCreditTransaction}, since the bus loses queued events on a crash.
+     */
+    private void queueChatCreditTransaction(String userId, CreditTransaction.TransactionType type, int amount,
+                                            int balanceBefore, int balanceAfter, String reason, String conversationId) {
+        try {
+            postTurnEventBus.publish(buildTransaction(userId, type, amount, balanceBefore, balanceAfter,
+                    reason, conversationId));
+            log.debug("Queued credit transaction: {} for user: {}", type, userId);
+        } catch (Exception e) {
+            log.error("Failed to log credit transaction for user: {}", userId, e);
+        }
+    }
+    
+    private CreditTransaction buildTransaction(String userId, CreditTransaction.TransactionType type, int amount,
+                                               int balanceBefore, int balanceAfter, String reason, String conversationId) {
+        return CreditTransaction.builder()
+                .userId(userId)
+                .type(type)
+                .amount(amount)
+                .balanceBefore(balanceBefore)
+                .balanceAfter(balanceAfter)
+                .reason(reason)
+                .conversationId(conversationId)
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+    
+    /**
+     * Post-turn handler: one insert for every ledger entry in the batch
+     */
+    private void saveTransactions(List<CreditTransaction> transactions) {
+        try {
+            creditTransactionRepository.saveAll(transactions);
+            log.debug("Logged {} credit transactions", transactions.size());
+        } catch (Exception e) {
+            log.error("Failed to log {} credit transactions", transactions.size(), e);
+        }
+    }
+    
     /**
      * Check if user has sufficient credits for chat
      */
@@ -108,7 +148,7 @@ public class AICreditService {
         User savedUser = userRepository.save(user);
         
         // Log the transaction
-        logCreditTransaction(userId, CreditTransaction.TransactionType.CHAT_DEDUCTION, 
+        queueChatCreditTransaction(userId, CreditTransaction.TransactionType.CHAT_DEDUCTION, 
                            -CHAT_COST, balanceBefore, savedUser.getAiCredits(),
                            reason, conversationId);
         
@@ -271,7 +311,7 @@ public class AICreditService {
         User savedUser = userRepository.save(user);
         
         // Log the transaction
-        logCreditTransaction(userId, CreditTransaction.TransactionType.ADMIN_GRANT, amount, 
+        queueChatCreditTransaction(userId, CreditTransaction.TransactionType.ADMIN_GRANT, amount,
                            balanceBefore, newBalance, reason, conversationId);
         
         log.info("Refunded {} AI credits to user {} ({}). New balance: {}", 
@@ -0,0 +1,236 @@
+package com.app.greensuitetest.service;
+
+import com.app.greensuitetest.util.KeywordAutomaton;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Content features of a knowledge-base chunk (content type, domain, formulas, numbers, procedures,
+ * recommendations, key terms). Computed once at ingestion and stored as chunk metadata so that
+ * {@link DocumentContextService} only has to score precomputed fields on each chat turn.
+ */
+@Component
+public class ChunkFeatureExtractor {
+
+    // Bump when the extracted fields change so older chunks are recognised as stale
+    public static final int FEATURES_VERSION = 1;
+
+    public static final String FEATURES_VERSION_KEY = "features_version";
+    public static final String CONTENT_TYPE = "content_type";
+    public static final String CONTENT_DOMAIN = "content_domain";
+    public static final String HAS_FORMULAS = "has_formulas";
+    public static final String HAS_NUMBERS = "has_numbers";
+    public static final String HAS_PROCEDURES = "has_procedures";
+    public static final String WORD_COUNT = "word_count";
+    public static final String KEY_TERMS = "key_terms";
+    public static final String FORMULAS = "formulas";
+    public static final String NUMERICAL_VALUES = "numerical_values";
+    public static final String PROCEDURES = "procedures";
+    public static final String RECOMMENDATIONS = "recommendations";
+
+    // Patterns for identifying different types of content
+    private final Pattern formulaPattern = Pattern.compile("\\b\\w+\\s*=\\s*[\\w\\s+\\-*/().,]+");
+    private final Pattern numberPattern = Pattern.compile("\\d+(?:\\.\\d+)?\\s*(?:%|kg|tons?|kwh|mwh|gwh|m[²³]?|ft[²³]?|gal|l|°[cf])?");
+    private final Pattern procedurePattern = Pattern.compile("(?i)(?:step|procedure|process|method|approach)\\s*\\d*:?\\s*(.+)");
+    private final Pattern numberedLinePattern = Pattern.compile("^\\d+\\.\\s+.+");
+
+    // Balanced domain keywords with equal representation
+    private final Map<String, List<String>> domainKeywords = Map.of(
+            "carbon_calculation", Arrays.asList("carbon", "co2", "emission", "ghg", "scope 1", "scope 2", "scope 3", "footprint"),
+            "energy_management", Arrays.asList("energy", "renewable", "efficiency", "consumption", "solar", "wind", "power", "electricity"),
+            "waste_management", Arrays.asList("waste", "recycling", "disposal", "circular", "landfill", "reduction", "reuse"),
+            "water_management", Arrays.asList("water", "consumption", "treatment", "wastewater", "conservation", "quality"),
+            "supply_chain", Arrays.asList("supply", "chain", "procurement", "vendor", "supplier", "logistics", "sourcing"),
+            "reporting", Arrays.asList("report", "disclosure", "compliance", "audit", "certification", "standard", "framework"),
+            "general_sustainability", Arrays.asList("sustainability", "esg", "environmental", "green", "climate", "biodiversity")
+    );
+
+    private static final String ANY_DOMAIN = "any";
+
+    // Per-domain categories plus one covering every domain keyword
+    private final KeywordAutomaton domainAutomaton = buildDomainAutomaton();
+
+    private static final String[] RECOMMENDATION_INDICATORS = {
+            "recommend", "suggest", "should", "best practice", "advised", "optimal"
+    };
+
+    private KeywordAutomaton buildDomainAutomaton() {
+        KeywordAutomaton.Builder builder = KeywordAutomaton.builder();
+        domainKeywords.forEach((domain, keywords) -> builder.add(domain, keywords).add(ANY_DOMAIN, keywords));
+        return builder.build();
+    }
+
+    /**
+     * Distinct domain keywords occurring in {@code text}, found in one pass; matching ignores case.
+     */
+    public List<String> findDomainKeywords(String text) {
+        return domainAutomaton.scan(text).keywords(ANY_DOMAIN);
+    }
+
+    public Pattern getNumberPattern() {
+        return numberPattern;
+    }
+
+    /**
+     * Extracts every feature for a chunk in one pass over its text.
+     */
+    public Map<String, Object> extractFeatures(String content) {
+        Map<String, Object> features = new HashMap<>();
+        String text = content != null ? content : "";
+        String lowerContent = text.toLowerCase();
+
+        String formulas = extractFormulas(text);
+        String numericalValues = extractNumericalData(text);
+        String procedures = extractProcedures(text);
+        boolean hasFormulas = formulaPattern.matcher(text).find();
+        boolean hasNumbers = !numericalValues.isEmpty();
+        boolean hasProcedures = procedurePattern.matcher(text).find();
+
+        features.put(CONTENT_TYPE, analyzeContentType(lowerContent, hasFormulas, hasNumbers, hasProcedures));
+        KeywordAutomaton.Matches domainMatches = domainAutomaton.scan(text);
+        features.put(CONTENT_DOMAIN, classifyContentDomain(domainMatches));
+        features.put(HAS_FORMULAS, hasFormulas);
+        features.put(HAS_NUMBERS, hasNumbers);
+        features.put(HAS_PROCEDURES, hasProcedures);
+        features.put(WORD_COUNT, text.isBlank() ? 0 : text.trim().split("\\s+").length);
+        features.put(KEY_TERMS, new ArrayList<>(extractKeyTerms(domainMatches, hasNumbers)));
+        features.put(FORMULAS, formulas);
+        features.put(NUMERICAL_VALUES, numericalValues);
+        features.put(PROCEDURES, procedures);
+        features.put(RECOMMENDATIONS, extractRecommendations(text));
+        features.put(FEATURES_VERSION_KEY, FEATURES_VERSION);
+        return features;
+    }
+
+    public boolean hasCurrentFeatures(Map<String, Object> metadata) {
+        Object version = metadata.get(FEATURES_VERSION_KEY);
+        return version instanceof Number number && number.intValue() == FEATURES_VERSION;
+    }
+
+    private String analyzeContentType(String lowerContent, boolean hasFormulas, boolean hasNumbers, boolean hasProcedures) {
+        if (hasFormulas && hasNumbers) {
+            return "CALCULATION";
+        } else if (hasProcedures || lowerContent.contains("step") || lowerContent.contains("process")) {
+            return "PROCEDURE";
+        } else if (lowerContent.contains("definition") || lowerContent.contains("means") ||
+                lowerContent.contains("refers to")) {
+            return "DEFINITION";
+        } else if (lowerContent.contains("example") || lowerContent.contains("case study")) {
+            return "EXAMPLE";
+        } else if (lowerContent.contains("standard") || lowerContent.contains("requirement") ||
+                lowerContent.contains("compliance")) {
+            return "STANDARD";
+        } else {
+            return "GENERAL";
+        }
+    }
+
+    /**
+     * Balanced content domain classification
+     */
+    private String classifyContentDomain(KeywordAutomaton.Matches domainMatches) {
+        Map<String, Integer> domainScores = new HashMap<>();
+
+        // Score each domain based on keyword presence
+        for (String domain : domainKeywords.keySet()) {
+            int score = 0;
+            for (int occurrences : domainMatches.occurrences(domain).values()) {
+                // Count occurrences with diminishing returns
+                score += Math.min(occurrences, 3); // Cap at 3 to prevent single keyword dominance
+            }
+            if (score > 0) {
+                domainScores.put(domain, score);
+            }
+        }
+
+        // Return domain only if it has a clear lead and minimum threshold
+        Optional<Map.Entry<String, Integer>> topDomain = domainScores.entrySet().stream()
+                .filter(entry -> entry.getValue() >= 2) // Minimum threshold
+                .max(Map.Entry.comparingByValue());
+
+        if (topDomain.isPresent()) {
+            // Ensure the top domain has a significant lead
+            int topScore = topDomain.get().getValue();
+            long competingDomains = domainScores.values().stream()
+                    .filter(score -> score >= topScore - 1)
+                    .count();
+
+            if (competingDomains <= 2) {
+                return topDomain.get().getKey();
+            }
+        }
+
+        return "general";
+    }
+
+    private Set<String> extractKeyTerms(KeywordAutomaton.Matches domainMatches, boolean hasNumbers) {
+        // Extract all domain keywords present (balanced approach)
+        Set<String> keyTerms = new HashSet<>(domainMatches.keywords(ANY_DOMAIN));
+
+        if (hasNumbers) {
+            keyTerms.add("numerical_value");
+        }
+
+        return keyTerms;
+    }
+
+    private String extractFormulas(String content) {
+        StringBuilder formulas = new StringBuilder();
+        Matcher matcher = formulaPattern.matcher(content);
+
+        while (matcher.find() && formulas.length() < 500) {
+            formulas.append("• ").append(matcher.group().trim()).append("\n");
+        }
+
+        return formulas.toString();
+    }
+
+    private String extractNumericalData(String content) {
+        Matcher matcher = numberPattern.matcher(content);
+        Set<String> uniqueNumbers = new LinkedHashSet<>();
+
+        while (matcher.find() && uniqueNumbers.size() < 10) {
+            uniqueNumbers.add(matcher.group().trim());
+        }
+
+        return String.join(", ", uniqueNumbers);
+    }
+
+    private String extractProcedures(String content) {
+        StringBuilder procedures = new StringBuilder();
+        Matcher matcher = procedurePattern.matcher(content);
+
+        while (matcher.find() && procedures.length() < 800) {
+            procedures.append("• ").append(matcher.group().trim()).append("\n");
+        }
+
+        // Also look for numbered lists
+        for (String line : content.split("\n")) {
+            String trimmed = line.trim();
+            if (procedures.length() < 800 && numberedLinePattern.matcher(trimmed).matches()) {
+                procedures.append("• ").append(trimmed).append("\n");
+            }
+        }
+
+        return procedures.toString();
+    }
+
+    private String extractRecommendations(String content) {
+        StringBuilder recommendations = new StringBuilder();
+
+        for (String sentence : content.split("\\.")) {
+            String lowerSentence = sentence.toLowerCase();
+            for (String indicator : RECOMMENDATION_INDICATORS) {
+                if (lowerSentence.contains(indicator) && recommendations.length() < 600) {
+                    recommendations.append("• ").append(sentence.trim()).append(".\n");
+                    break;
+                }
+            }
+        }
+
+        return recommendations.toString();
+    }
+}
@@ -1,6 +1,9 @@
 package com.app.greensuitetest.service;
 
-import lombok.RequiredArgsConstructor;
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import com.app.greensuitetest.service.conversation.ConversationSnapshot;
+import com.app.greensuitetest.util.KeywordAutomaton;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
@@ -8,29 +11,39 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ContextBuilderService {
 
     private final ConversationContextService conversationContextService;
     private final RinPersonalityService rinPersonalityService;
     
     // Cache for conversation contexts to improve performance
-    private final Map<String, Map<String, Object>> conversationCache = new ConcurrentHashMap<>();
+    private final StateCache<String, Map<String, Object>> conversationCache;
 
     // Environmental sustainability keywords
-    private final Set<String> sustainabilityKeywords = Set.of(
-        "environment", "sustainability", "green", "eco", "carbon", "emission", "footprint",
-        "renewable", "energy", "solar", "wind", "recycling", "waste", "conservation",
-        "climate", "global warming", "pollution", "biodiversity", "organic", "sustainable"
-    );
+    private final KeywordAutomaton sustainabilityKeywords = KeywordAutomaton.builder()
+            .add("sustainability", "environment", "sustainability", "green", "eco", "carbon", "emission", "footprint",
+                    "renewable", "energy", "solar", "wind", "recycling", "waste", "conservation",
+                    "climate", "global warming", "pollution", "biodiversity", "organic", "sustainable")
+            .build();
+
+    public ContextBuilderService(ConversationContextService conversationContextService,
+                                 RinPersonalityService rinPersonalityService,
+                                 StateCacheFactory stateCacheFactory) {
+        this.conversationContextService = conversationContextService;
+        this.rinPersonalityService = rinPersonalityService;
+        this.conversationCache = stateCacheFactory.create("enhanced-context");
+    }
 
     public Map<String, Object> buildEnhancedContextWithPersonality(String conversationId, String userId, String sessionId, String message) {
+        return buildEnhancedContextWithPersonality(conversationContextService.loadSnapshot(conversationId), userId, sessionId, message);
+    }
+
+    public Map<String, Object> buildEnhancedContextWithPersonality(ConversationSnapshot snapshot, String userId, String sessionId, String message) {
         Map<String, Object> context = new HashMap<>();
+        String conversationId = snapshot.getConversationId();
         String userKey = userId != null ? userId : conversationId;
 
         // Add Rin's personality context
@@ -38,7 +51,7 @@ public class ContextBuilderService {
         context.put("rin_personality_state", rinPersonalityService.getRinPersonalityState(conversationId, userId));
 
         // Add conversation context
-        Map<String, Object> conversationContext = conversationContextService.buildComprehensiveContext(conversationId, userId, sessionId, message);
+        Map<String, Object> conversationContext = conversationContextService.buildComprehensiveContext(snapshot, userId, sessionId, message);
         context.putAll(conversationContext);
 
         // Add message analysis
@@ -95,7 +108,7 @@ public class ContextBuilderService {
     }
 
     public void clearContextCache(String conversationId) {
-        conversationCache.entrySet().removeIf(entry -> entry.getKey().startsWith(conversationId));
+        conversationCache.removeIf(key -> key.startsWith(conversationId));
     }
 
     public void clearAllContextCache() {
@@ -103,7 +116,7 @@ public class ContextBuilderService {
     }
 
     public int getCacheSize() {
-        return conversationCache.size();
+        return (int) conversationCache.size();
     }
 
     private Map<String, Object> getUserInteractionHistory(String userKey) {
@@ -181,13 +194,7 @@ public class ContextBuilderService {
         
         // Analyze environmental engagement
         String lowerMessage = message.toLowerCase();
-        int environmentalScore = 0;
-        
-        for (String keyword : sustainabilityKeywords) {
-            if (lowerMessage.contains(keyword)) {
-                environmentalScore += 2;
-            }
-        }
+        int environmentalScore = sustainabilityKeywords.scan(message).count("sustainability") * 2;
         
         // Check for specific environmental topics
         if (lowerMessage.contains("carbon") || lowerMessage.contains("emission")) {
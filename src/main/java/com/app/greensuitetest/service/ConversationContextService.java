@@ -1,7 +1,13 @@
 package com.app.greensuitetest.service;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import com.app.greensuitetest.service.conversation.ConversationContextState;
+import com.app.greensuitetest.service.conversation.ConversationSnapshot;
+import com.app.greensuitetest.service.conversation.PostTurnEventBus;
+import jakarta.annotation.PostConstruct;
+import com.app.greensuitetest.util.KeywordAutomaton;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.Message;
@@ -12,26 +18,36 @@ import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.concurrent.ConcurrentHashMap;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class ConversationContextService {
 
+    private static final int WRITE_STRIPES = 64;
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 3;
+    private static final int MAX_WRITE_RETRIES = 5;
+    private static final long WRITE_RETRY_DELAY_MS = 1000;
+
     private final ChatMemory chatMemory;
+    private final PostTurnEventBus postTurnEventBus;
+
+    // Exchanges handed to the post-turn bus and not yet in chat memory; guarded by the conversation's write stripe
+    private final Map<String, List<Message>> pendingWrites = new ConcurrentHashMap<>();
+    private final WriteStripe[] writeStripes = new WriteStripe[WRITE_STRIPES];
 
     // Cache for extracted context to improve performance
-    private final Map<String, Map<String, Object>> contextCache = new ConcurrentHashMap<>();
+    private final StateCache<String, Map<String, Object>> contextCache;
 
-    // Rin Kazuki personality context tracking
-    private final Map<String, List<String>> rinPersonalityMoments = new ConcurrentHashMap<>();
-    private final Map<String, Integer> environmentalEngagementScore = new ConcurrentHashMap<>();
+    // Incrementally maintained extraction state per conversation
+    private final StateCache<String, ConversationContextState> contextStates;
 
     // FIXED: Improved pattern matching for user name extraction
     private final List<Pattern> namePatterns = Arrays.asList(
@@ -114,44 +130,176 @@ public class ConversationContextService {
             Pattern.compile("(?i)conversation\\s+summary", Pattern.CASE_INSENSITIVE)
     );
 
+    private final Pattern preferencePattern = Pattern.compile("(?i)(i like|i prefer|i love|i enjoy|i'm interested in) ([^.!?]+)", Pattern.CASE_INSENSITIVE);
+
+    private final String[] formalWords = {"please", "thank you", "would you", "could you", "appreciate"};
+    private final String[] casualWords = {"hey", "yeah", "ok", "cool", "awesome", "great"};
+    private final String[] technicalWords = {"methodology", "calculation", "algorithm", "parameters", "metrics"};
+    private final String[] friendlyWords = {"rin", "cute", "helpful", "smart", "thanks rin", "good job"};
+
+    private final String[] goalIndicators = {
+            "we want to", "our goal is", "we aim to", "we're trying to",
+            "we need to", "objective is", "target is", "hoping to"
+    };
+
+    // Key sustainability concepts to track
+    private final String[] trackedConcepts = {
+            "carbon", "emissions", "energy", "waste", "water", "sustainability",
+            "renewable", "efficiency", "reduction", "calculation", "reporting",
+            "compliance", "audit", "certification", "offset", "neutral"
+    };
+
+    private final String[] howQuestions = {"how to", "how do", "how can", "how should"};
+    private final String[] whatQuestions = {"what is", "what are", "what does", "what should"};
+    private final String[] whyQuestions = {"why is", "why do", "why should", "why does"};
+    private final String[] calculationQuestions = {"calculate", "compute", "formula", "equation"};
+
+    private final String[] followUpWords = {"also", "additionally", "furthermore", "moreover", "and what about"};
+    private final String[] detailWords = {"more details", "elaborate", "explain further", "tell me more"};
+    private final String[] clarificationWords = {"what do you mean", "can you clarify", "i don't understand"};
+
+    private final String[] beginnerWords = {"basic", "simple", "beginner", "new to", "don't know", "what is"};
+    private final String[] intermediateWords = {"understand", "familiar", "some experience", "general idea"};
+    private final String[] expertWords = {"methodology", "implementation", "optimization", "advanced", "complex"};
+
+    // Enhanced keyword sets with more specific terms; matched against lower-cased text
+    private final Map<String, String[]> domainKeywords = Map.of(
+            "manufacturing", new String[]{"factory", "production", "assembly", "manufacturing", "industrial", "plant", "machinery", "fabrication"},
+            "technology", new String[]{"software", "technology", "digital", "tech", "platform", "app", "system", "programming", "data"},
+            "finance", new String[]{"bank", "financial", "investment", "capital", "fund", "trading", "portfolio", "loan", "credit"},
+            "healthcare", new String[]{"hospital", "medical", "healthcare", "pharmaceutical", "clinical", "patient", "medicine", "treatment"},
+            "retail", new String[]{"retail", "store", "customer", "sales", "commerce", "shopping", "consumer", "merchandise"},
+            "energy", new String[]{"energy", "power", "utility", "grid", "renewable", "electricity", "oil", "gas", "solar", "wind"},
+            "construction", new String[]{"construction", "building", "infrastructure", "contractor", "architect", "cement", "concrete"},
+            "transportation", new String[]{"logistics", "transportation", "shipping", "freight", "delivery", "trucking", "fleet", "cargo"},
+            "agriculture", new String[]{"agriculture", "farming", "crop", "livestock", "agricultural", "harvest", "farm", "rural", "soil"}
+    );
+
+    private static final String SUSTAINABILITY = "sustainability";
+    private static final String TSUNDERE = "tsundere";
+    private static final String DERE = "dere";
+    private static final String FORMAL = "formal";
+    private static final String CASUAL = "casual";
+    private static final String TECHNICAL = "technical";
+    private static final String FRIENDLY = "friendly";
+    private static final String GOAL = "goal";
+    private static final String CONCEPT = "concept";
+    private static final String HOW = "how";
+    private static final String WHAT = "what";
+    private static final String WHY = "why";
+    private static final String CALCULATION = "calculation";
+    private static final String FOLLOW_UP = "follow_up";
+    private static final String DETAIL = "detail";
+    private static final String CLARIFICATION = "clarification";
+    private static final String BEGINNER = "beginner";
+    private static final String INTERMEDIATE = "intermediate";
+    private static final String EXPERT = "expert";
+    private static final String RIN = "rin";
+    private static final String COMPLIMENT = "compliment";
+    private static final String PERSONALITY = "personality";
+    private static final String SAPPY = "sappy";
+    private static final String DOMAIN_PREFIX = "domain:";
+
+    // Every keyword list above in one automaton, so a message is scanned once instead of once per keyword
+    private final KeywordAutomaton messageKeywords = buildMessageKeywords();
+
+    private final KeywordAutomaton greetingKeywords = KeywordAutomaton.builder()
+            .add("greeting", "hi", "hello", "hey", "good morning", "good afternoon", "good evening",
+                    "greetings", "howdy", "what's up", "how are you")
+            .build();
+
+    private KeywordAutomaton buildMessageKeywords() {
+        KeywordAutomaton.Builder builder = KeywordAutomaton.builder()
+                .add(SUSTAINABILITY, sustainabilityKeywords)
+                .add(TSUNDERE, rinTsundereKeywords)
+                .add(DERE, rinDereKeywords)
+                .add(FORMAL, formalWords)
+                .add(CASUAL, casualWords)
+                .add(TECHNICAL, technicalWords)
+                .add(FRIENDLY, friendlyWords)
+                .add(GOAL, goalIndicators)
+                .add(CONCEPT, trackedConcepts)
+                .add(HOW, howQuestions)
+                .add(WHAT, whatQuestions)
+                .add(WHY, whyQuestions)
+                .add(CALCULATION, calculationQuestions)
+                .add(FOLLOW_UP, followUpWords)
+                .add(DETAIL, detailWords)
+                .add(CLARIFICATION, clarificationWords)
+                .add(BEGINNER, beginnerWords)
+                .add(INTERMEDIATE, intermediateWords)
+                .add(EXPERT, expertWords)
+                .add(RIN, "rin")
+                .add(COMPLIMENT, "good", "smart", "helpful", "cute", "thank")
+                .add(PERSONALITY, "tsundere", "personality", "mood", "character")
+                .add(SAPPY, "no sappy lines");
+        domainKeywords.forEach((domain, keywords) -> builder.add(DOMAIN_PREFIX + domain, keywords));
+        return builder.build();
+    }
+
+    public ConversationContextService(ChatMemory chatMemory, PostTurnEventBus postTurnEventBus, StateCacheFactory stateCacheFactory) {
+        this.chatMemory = chatMemory;
+        this.postTurnEventBus = postTurnEventBus;
+        this.contextCache = stateCacheFactory.create("conversation-context");
+        this.contextStates = stateCacheFactory.create("conversation-context-state");
+        Arrays.setAll(writeStripes, i -> new WriteStripe());
+    }
+
+    @PostConstruct
+    public void subscribeToExchanges() {
+        postTurnEventBus.subscribe(ExchangeRecorded.class, this::writeExchanges);
+        postTurnEventBus.subscribe(PendingWriteRetry.class, this::retryWrites);
+    }
+
     // Temporarily disable caching to avoid serialization issues
     // @Cacheable(value = "conversationContext", key = "#conversationId + '_' + #currentMessage.hashCode()")
     public Map<String, Object> buildComprehensiveContext(String conversationId, String userId, String sessionId, String currentMessage) {
+        return buildComprehensiveContext(loadSnapshot(conversationId), userId, sessionId, currentMessage);
+    }
+
+    /**
+     * Builds the context from a history the caller already loaded for this turn.
+     */
+    public Map<String, Object> buildComprehensiveContext(ConversationSnapshot snapshot, String userId, String sessionId, String currentMessage) {
         Map<String, Object> context = new HashMap<>();
+        String conversationId = snapshot.getConversationId();
 
         try {
             // Validate conversation ID to prevent mixing
             validateConversationId(conversationId, userId, sessionId);
             
-            // Get conversation history
-            List<Message> history = chatMemory.get(conversationId);
-
-            // FIXED: Always check for name and history queries first
-            context.putAll(analyzeCurrentMessage(currentMessage, history));
+            List<Message> history = snapshot.getMessages();
+            ConversationContextState state = contextState(snapshot);
+
+            // Reads the running state only; no pass over the history
+            synchronized (state) {
+                // FIXED: Always check for name and history queries first
+                context.putAll(analyzeCurrentMessage(currentMessage, state, history.size()));
+
+                if (history.isEmpty()) {
+                    log.debug("No chat history found for conversation: {}", conversationId);
+                    context.put("is_new_conversation", true);
+                    context.put("history_length", 0);
+                    return context;
+                }
 
-            if (history.isEmpty()) {
-                log.debug("No chat history found for conversation: {}", conversationId);
-                context.put("is_new_conversation", true);
-                context.put("history_length", 0);
-                return context;
-            }
+                // Extract various context types only if not asking meta questions
+                boolean isMetaQuery = (Boolean) context.getOrDefault("user_asking_about_name", false) ||
+                        (Boolean) context.getOrDefault("user_asking_about_rin_name", false) ||
+                        (Boolean) context.getOrDefault("user_asking_about_conversation_history", false);
 
-            // Extract various context types only if not asking meta questions
-            boolean isMetaQuery = (Boolean) context.getOrDefault("user_asking_about_name", false) ||
-                    (Boolean) context.getOrDefault("user_asking_about_rin_name", false) ||
-                    (Boolean) context.getOrDefault("user_asking_about_conversation_history", false);
+                if (!isMetaQuery) {
+                    context.putAll(extractPersonalInformation(state));
+                    context.putAll(extractBusinessContext(state));
+                    context.putAll(extractTopicalContext(state));
+                    context.putAll(extractUserBehaviorPatterns(state));
+                }
 
-            if (!isMetaQuery) {
-                context.putAll(extractPersonalInformation(history));
-                context.putAll(extractBusinessContext(history));
-                context.putAll(extractTopicalContext(history));
-                context.putAll(extractUserBehaviorPatterns(history));
+                // Always extract these for metadata
+                context.putAll(extractConversationMetrics(state));
+                context.putAll(extractRinPersonalityContext(state, conversationId));
             }
 
-            // Always extract these for metadata
-            context.putAll(extractConversationMetrics(history));
-            context.putAll(extractRinPersonalityContext(history, conversationId));
-
             // Add session and user context if available
             if (userId != null) {
                 context.put("user_id", userId);
@@ -175,6 +323,39 @@ public class ConversationContextService {
         return context;
     }
 
+    /**
+     * Reads the conversation's history once; the snapshot is then passed along for the rest of the turn.
+     * Exchanges still waiting on the post-turn bus are appended, so a turn always sees the one before it.
+     */
+    public ConversationSnapshot loadSnapshot(String conversationId) {
+        WriteStripe stripe = writeStripe(conversationId);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                long version;
+                synchronized (stripe) {
+                    // Read the store at a moment when none of this stripe's writes is half done
+                    awaitWrites(stripe);
+                    version = stripe.version;
+                }
+                ConversationSnapshot snapshot = ConversationSnapshot.load(chatMemory, conversationId);
+                synchronized (stripe) {
+                    // A write that started during the read may or may not be in it, so the read is retried
+                    if (stripe.version != version && attempt < MAX_SNAPSHOT_ATTEMPTS) {
+                        continue;
+                    }
+                    List<Message> pending = pendingWrites.get(conversationId);
+                    if (pending != null) {
+                        snapshot.append(pending);
+                    }
+                    return snapshot;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Failed to load chat history for conversation '{}': {}", conversationId, e.getMessage());
+            return ConversationSnapshot.empty(conversationId);
+        }
+    }
+
     /**
      * Validate that the conversation ID is properly isolated and not shared
      */
@@ -193,10 +374,50 @@ public class ConversationContextService {
         log.debug("Processing conversation: {} for user: {} session: {}", conversationId, userId, sessionId);
     }
 
+    /**
+     * Incremental context for the conversation, rebuilt from the snapshot when there is none yet or it is out of step.
+     */
+    private ConversationContextState contextState(ConversationSnapshot snapshot) {
+        ConversationContextState state = contextStates.get(snapshot.getConversationId());
+        // Behind the history means messages were saved without updateContextAfterInteraction (e.g. the
+        // turn ran on another node); a different last message catches that once the memory window is full.
+        // An empty history behind a non-empty state means the conversation was cleared
+        if (state == null || snapshot.size() > state.getMessagesApplied()
+                || (snapshot.isEmpty() && state.getMessagesApplied() > 0)
+                || (!snapshot.isEmpty() && lastMessageHash(snapshot) != state.getLastMessageHash())) {
+            state = rebuildContextState(snapshot);
+        }
+        return state;
+    }
+
+    private int lastMessageHash(ConversationSnapshot snapshot) {
+        List<Message> messages = snapshot.getMessages();
+        return getMessageContent(messages.get(messages.size() - 1)).hashCode();
+    }
+
+    /**
+     * Full rebuild from the stored history. This is the recovery path; normal turns only fold in the new exchange.
+     */
+    public ConversationContextState rebuildContextState(ConversationSnapshot snapshot) {
+        ConversationContextState state = new ConversationContextState();
+        for (Message message : snapshot.getMessages()) {
+            if (message instanceof UserMessage) {
+                applyUserMessage(state, getMessageContent(message));
+            } else if (message instanceof AssistantMessage) {
+                applyAssistantMessage(state, getMessageContent(message));
+            } else {
+                state.messageSkipped(getMessageContent(message).hashCode());
+            }
+        }
+        contextStates.put(snapshot.getConversationId(), state);
+        log.debug("Rebuilt context state from {} messages for conversation: {}", snapshot.size(), snapshot.getConversationId());
+        return state;
+    }
+
     /**
      * FIXED: Analyze current message for meta queries (name and history questions)
      */
-    private Map<String, Object> analyzeCurrentMessage(String currentMessage, List<Message> history) {
+    private Map<String, Object> analyzeCurrentMessage(String currentMessage, ConversationContextState state, int historySize) {
         Map<String, Object> messageContext = new HashMap<>();
 
         if (currentMessage == null || currentMessage.trim().isEmpty()) {
@@ -222,8 +443,8 @@ public class ConversationContextService {
         if (isAskingAboutUserName) {
             messageContext.put("user_asking_about_name", true);
 
-            // Look for user's name in conversation history
-            String userName = extractUserNameFromHistory(history);
+            // User's name as first mentioned in the conversation
+            String userName = state.getUserName();
             messageContext.put("user_name", userName); // null if not found
 
             log.debug("User asking about their own name. Found name: {}", userName);
@@ -238,15 +459,15 @@ public class ConversationContextService {
             messageContext.put("user_asking_about_conversation_history", true);
 
             // FIXED: Determine if this is actually a new conversation
-            int meaningfulExchanges = countMeaningfulExchanges(history);
+            int meaningfulExchanges = state.getMeaningfulExchanges();
 
-            if (meaningfulExchanges == 0 || history.size() <= 2) {
+            if (meaningfulExchanges == 0 || historySize <= 2) {
                 messageContext.put("is_new_conversation", true);
                 messageContext.put("conversation_status", "just_started");
                 log.debug("User asking about history but conversation just started");
             } else {
                 messageContext.put("is_new_conversation", false);
-                messageContext.putAll(extractConversationSummary(history));
+                messageContext.putAll(extractConversationSummary(state));
                 log.debug("User asking about history with {} meaningful exchanges", meaningfulExchanges);
             }
 
@@ -257,182 +478,293 @@ public class ConversationContextService {
     }
 
     /**
-     * FIXED: Extract user name specifically from conversation history
+     * Folds one user message into the state; the per-message half of every extractor below.
      */
-    private String extractUserNameFromHistory(List<Message> history) {
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message);
-                for (Pattern pattern : namePatterns) {
-                    Matcher matcher = pattern.matcher(content);
-                    if (matcher.find()) {
-                        String candidateName = matcher.group(1).trim();
-                        if (isValidUserName(candidateName)) {
-                            return capitalizeFirstLetter(candidateName);
-                        }
-                    }
-                }
+    private void applyUserMessage(ConversationContextState state, String content) {
+        String lowerContent = content.toLowerCase();
+        String trimmed = lowerContent.trim();
+        KeywordAutomaton.Matches matches = messageKeywords.scan(content);
+        boolean metaQuestion = isMetaQuestion(lowerContent);
+        boolean greeting = isGreeting(lowerContent);
+
+        // Skip meta questions and very short messages when counting meaningful exchanges
+        boolean meaningful = trimmed.length() > 5 && !metaQuestion && !greeting && !isSimpleAcknowledgment(trimmed);
+        state.userMessageApplied(countWords(content), content.split("\\?").length - 1, meaningful, content.hashCode());
+
+        // Personal and business details keep their first mention
+        if (state.getUserName() == null) {
+            state.setUserName(matchUserName(content));
+        }
+        if (state.getCompanyName() == null) {
+            state.setCompanyName(matchPatterns(content, companyPatterns));
+        }
+        if (state.getUserRole() == null) {
+            state.setUserRole(matchPatterns(content, rolePatterns));
+        }
+
+        Matcher preferenceMatcher = preferencePattern.matcher(content);
+        while (preferenceMatcher.find()) {
+            String preference = preferenceMatcher.group(2).trim();
+            if (preference.length() > 3 && preference.length() < 100) {
+                state.addPreference(preference);
             }
         }
-        return null; // No name found
-    }
+        applyBusinessGoals(state, lowerContent, matches);
 
-    /**
-     * FIXED: Count meaningful exchanges (excluding meta questions)
-     */
-    private int countMeaningfulExchanges(List<Message> history) {
-        int meaningfulCount = 0;
+        if (!metaQuestion) {
+            state.getConversationTopics().addAll(matches.keywords(SUSTAINABILITY));
+        }
+        if (!metaQuestion && !greeting && (content.contains("?") || lowerContent.startsWith("how") ||
+                lowerContent.startsWith("what") || lowerContent.startsWith("why"))) {
+            state.addUserQuestion(truncateText(content, 150));
+        }
+        state.setPendingUserMessage(content);
 
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase().trim();
-
-                // Skip meta questions and very short messages
-                if (content.length() > 5 &&
-                        !isMetaQuestion(content) &&
-                        !isGreeting(content) &&
-                        !isSimpleAcknowledgment(content)) {
-                    meaningfulCount++;
-                }
-            }
+        countMatches(state, state.getCommunicationStyle(), FORMAL, matches);
+        countMatches(state, state.getCommunicationStyle(), CASUAL, matches);
+        countMatches(state, state.getCommunicationStyle(), TECHNICAL, matches);
+        countMatches(state, state.getCommunicationStyle(), FRIENDLY, matches);
+
+        if (matches.contains(HOW)) {
+            state.getQuestionTypes().add("how-to");
+        }
+        if (matches.contains(WHAT)) {
+            state.getQuestionTypes().add("definition");
+        }
+        if (matches.contains(WHY)) {
+            state.getQuestionTypes().add("explanation");
+        }
+        if (matches.contains(CALCULATION)) {
+            state.getQuestionTypes().add("calculation");
+        }
+
+        Map<String, Integer> interactions = state.getInteractionPatterns();
+        if (matches.contains(FOLLOW_UP)) {
+            state.increment(interactions, "follow_up_questions", 1);
+        }
+        if (matches.contains(DETAIL)) {
+            state.increment(interactions, "detail_requests", 1);
+        }
+        if (matches.contains(CLARIFICATION)) {
+            state.increment(interactions, "clarification_requests", 1);
         }
 
-        return meaningfulCount;
+        countMatches(state, state.getExpertiseIndicators(), BEGINNER, matches);
+        countMatches(state, state.getExpertiseIndicators(), INTERMEDIATE, matches);
+        countMatches(state, state.getExpertiseIndicators(), EXPERT, matches);
+
+        applyRinInteractionPatterns(state, lowerContent, matches);
+        applyMessageTopics(state, matches);
     }
 
     /**
-     * FIXED: Check if message is a meta question
+     * Folds one of Rin's replies into the state.
      */
-    private boolean isMetaQuestion(String content) {
-        return nameQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find()) ||
-                rinNameQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find()) ||
-                historyQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find());
+    private void applyAssistantMessage(ConversationContextState state, String content) {
+        KeywordAutomaton.Matches matches = messageKeywords.scan(content);
+        int tsundere = 0;
+        int dere = 0;
+        int environmental = 0;
+
+        // Analyze Rin's tsundere expressions
+        for (String keyword : matches.keywords(TSUNDERE)) {
+            tsundere++;
+            state.addPersonalityMoment("tsundere_moment: " + keyword);
+        }
+
+        // Analyze Rin's dere expressions
+        for (String keyword : matches.keywords(DERE)) {
+            dere++;
+            state.addPersonalityMoment("dere_moment: " + keyword);
+        }
+
+        // Analyze environmental passion
+        for (String keyword : matches.keywords(SUSTAINABILITY)) {
+            environmental++;
+            state.addRinEnvironmentalTopic(keyword);
+        }
+
+        // Special Rin expressions
+        if (matches.contains(SAPPY)) {
+            state.addPersonalityMoment("akira_reference: no sappy lines");
+        }
+
+        state.rinExpressions(tsundere, dere, environmental);
+        state.assistantMessageApplied(countWords(content), tsundere + dere, content.hashCode());
+
+        // Pair with the question it answers for the conversation highlights; skip meta questions and greetings
+        String userContent = state.getPendingUserMessage();
+        if (userContent != null && userContent.length() > 10 && content.length() > 20 &&
+                !isMetaQuestion(userContent.toLowerCase()) && !isGreeting(userContent.toLowerCase())) {
+            state.addHighlight("User asked about: " + truncateText(userContent, 100) +
+                    " | Rin responded about: " + truncateText(content, 100));
+        }
+        state.setPendingUserMessage(null);
+
+        applyMessageTopics(state, matches);
     }
 
     /**
-     * FIXED: Check if message is just a greeting
+     * Domain, topic and concept tracking shared by both sides of the conversation.
      */
-    private boolean isGreeting(String content) {
-        String[] greetings = {"hi", "hello", "hey", "good morning", "good afternoon", "good evening", 
-                             "greetings", "howdy", "what's up", "how are you"};
-        return Arrays.stream(greetings).anyMatch(content::contains);
+    private void applyMessageTopics(ConversationContextState state, KeywordAutomaton.Matches matches) {
+        for (String domain : domainKeywords.keySet()) {
+            for (String keyword : matches.keywords(DOMAIN_PREFIX + domain)) {
+                // More specific terms get higher weights
+                state.increment(state.getDomainScores(), domain, keyword.length() > 6 ? 2 : 1);
+            }
+        }
+
+        Set<String> messageTopics = new HashSet<>(matches.keywords(SUSTAINABILITY));
+        state.getSustainabilityTopics().addAll(messageTopics);
+        state.addRecentMessageTopics(messageTopics);
+
+        for (String concept : matches.keywords(CONCEPT)) {
+            state.increment(state.getConceptFrequency(), concept, 1);
+        }
     }
 
-    /**
-     * NEW: Check if message is just a simple acknowledgment
-     */
-    private boolean isSimpleAcknowledgment(String content) {
-        String[] acknowledgments = {"ok", "okay", "thanks", "thank you", "got it", "i see", 
-                                  "understood", "alright", "yes", "no", "sure", "fine"};
-        return content.length() <= 15 && Arrays.stream(acknowledgments).anyMatch(content::equals);
+    private void applyBusinessGoals(ConversationContextState state, String lowerContent, KeywordAutomaton.Matches matches) {
+        for (String indicator : matches.keywords(GOAL)) {
+            // Extract the goal text after the indicator
+            int startIndex = lowerContent.indexOf(indicator) + indicator.length();
+            int endIndex = Math.min(startIndex + 100, lowerContent.length());
+            String goalText = lowerContent.substring(startIndex, endIndex).trim();
+
+            // Find sentence end
+            int sentenceEnd = Math.min(
+                    goalText.indexOf('.') != -1 ? goalText.indexOf('.') : goalText.length(),
+                    goalText.indexOf('!') != -1 ? goalText.indexOf('!') : goalText.length()
+            );
+
+            if (sentenceEnd > 0) {
+                goalText = goalText.substring(0, sentenceEnd).trim();
+                if (goalText.length() > 10) {
+                    state.addBusinessGoal(goalText);
+                }
+            }
+        }
     }
 
     /**
-     * FIXED: Extract conversation summary for history queries
+     * NEW: Track how users interact with Rin's personality
      */
-    private Map<String, Object> extractConversationSummary(List<Message> history) {
-        Map<String, Object> summaryContext = new HashMap<>();
+    private void applyRinInteractionPatterns(ConversationContextState state, String content, KeywordAutomaton.Matches matches) {
+        Map<String, Integer> patterns = state.getRinInteractionPatterns();
 
-        summaryContext.put("conversation_topics", extractActualConversationTopics(history));
-        summaryContext.put("conversation_highlights", extractConversationHighlights(history));
-        summaryContext.put("user_questions_asked", extractUserQuestions(history));
-        summaryContext.put("conversation_flow", getConversationFlow(history));
+        // Count compliments or acknowledgments to Rin
+        if (matches.contains(RIN) && matches.contains(COMPLIMENT)) {
+            state.increment(patterns, "compliments_to_rin", 1);
+        }
 
-        return summaryContext;
+        // Count environmental engagement, once per message
+        if (matches.contains(SUSTAINABILITY)) {
+            state.increment(patterns, "environmental_questions", 1);
+        }
+
+        // Count personality acknowledgments
+        if (matches.contains(PERSONALITY)) {
+            state.increment(patterns, "personality_acknowledgments", 1);
+        }
+
+        // Count polite interactions, once per message
+        if (rinInteractionPatterns.stream().anyMatch(pattern -> pattern.matcher(content).find())) {
+            state.increment(patterns, "polite_interactions", 1);
+        }
     }
 
-    /**
-     * FIXED: Extract actual topics discussed in the conversation (not from documents)
-     */
-    private List<String> extractActualConversationTopics(List<Message> history) {
-        Set<String> topics = new LinkedHashSet<>();
+    private void countMatches(ConversationContextState state, Map<String, Integer> counters, String key,
+                              KeywordAutomaton.Matches matches) {
+        int count = matches.count(key);
+        if (count > 0) {
+            state.increment(counters, key, count);
+        }
+    }
 
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
+    private int countWords(String content) {
+        return content.split("\\s+").length;
+    }
 
-                // Skip meta questions
-                if (isMetaQuestion(content)) {
-                    continue;
+    /**
+     * FIXED: Extract user name from a single message
+     */
+    private String matchUserName(String content) {
+        for (Pattern pattern : namePatterns) {
+            Matcher matcher = pattern.matcher(content);
+            if (matcher.find()) {
+                String candidateName = matcher.group(1).trim();
+                if (isValidUserName(candidateName)) {
+                    return capitalizeFirstLetter(candidateName);
                 }
+            }
+        }
+        return null; // No name found
+    }
 
-                // Extract sustainability topics that were actually discussed
-                for (String keyword : sustainabilityKeywords) {
-                    if (content.contains(keyword.toLowerCase())) {
-                        topics.add(keyword);
-                    }
+    private String matchPatterns(String content, List<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(content);
+            if (matcher.find()) {
+                String result = matcher.group(1).trim();
+                if (!isCommonWord(result)) {
+                    return result;
                 }
             }
         }
-
-        return new ArrayList<>(topics);
+        return null;
     }
 
     /**
-     * FIXED: Extract conversation highlights (main questions and answers)
+     * Whether the message asks about a name or the conversation itself. Such turns are answered from the
+     * history, not the knowledge base. The check looks at the text only, so it can run before the history is loaded.
      */
-    private List<String> extractConversationHighlights(List<Message> history) {
-        List<String> highlights = new ArrayList<>();
-
-        for (int i = 0; i < history.size() - 1; i += 2) {
-            if (i + 1 < history.size()) {
-                Message userMsg = history.get(i);
-                Message assistantMsg = history.get(i + 1);
-
-                if (userMsg instanceof UserMessage && assistantMsg instanceof AssistantMessage) {
-                    String userContent = getMessageContent(userMsg);
-                    String assistantContent = getMessageContent(assistantMsg);
-
-                    // Skip meta questions and greetings
-                    if (userContent.length() > 10 && assistantContent.length() > 20 &&
-                            !isMetaQuestion(userContent.toLowerCase()) &&
-                            !isGreeting(userContent.toLowerCase())) {
-
-                        String summary = "User asked about: " + truncateText(userContent, 100) +
-                                " | Rin responded about: " + truncateText(assistantContent, 100);
-                        highlights.add(summary);
-                    }
-                }
-            }
-        }
+    public boolean isMetaQuery(String message) {
+        return message != null && !message.isBlank() && isMetaQuestion(message.toLowerCase().trim());
+    }
 
-        // Return last 5 highlights to avoid overwhelming
-        return highlights.stream().skip(Math.max(0, highlights.size() - 5)).collect(Collectors.toList());
+    /**
+     * FIXED: Check if message is a meta question
+     */
+    private boolean isMetaQuestion(String content) {
+        return nameQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find()) ||
+                rinNameQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find()) ||
+                historyQuestionPatterns.stream().anyMatch(p -> p.matcher(content).find());
     }
 
     /**
-     * FIXED: Extract actual user questions from conversation
+     * FIXED: Check if message is just a greeting
      */
-    private List<String> extractUserQuestions(List<Message> history) {
-        List<String> questions = new ArrayList<>();
+    private boolean isGreeting(String content) {
+        return greetingKeywords.containsAny(content);
+    }
 
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message);
+    /**
+     * NEW: Check if message is just a simple acknowledgment
+     */
+    private boolean isSimpleAcknowledgment(String content) {
+        String[] acknowledgments = {"ok", "okay", "thanks", "thank you", "got it", "i see", 
+                                  "understood", "alright", "yes", "no", "sure", "fine"};
+        return content.length() <= 15 && Arrays.stream(acknowledgments).anyMatch(content::equals);
+    }
 
-                // Skip meta questions about name and conversation history
-                String lowerContent = content.toLowerCase();
-                if (isMetaQuestion(lowerContent) || isGreeting(lowerContent)) {
-                    continue;
-                }
+    /**
+     * FIXED: Conversation summary for history queries
+     */
+    private Map<String, Object> extractConversationSummary(ConversationContextState state) {
+        Map<String, Object> summaryContext = new HashMap<>();
 
-                if (content.contains("?") || content.toLowerCase().startsWith("how") ||
-                        content.toLowerCase().startsWith("what") || content.toLowerCase().startsWith("why")) {
-                    questions.add(truncateText(content, 150));
-                }
-            }
-        }
+        summaryContext.put("conversation_topics", new ArrayList<>(state.getConversationTopics()));
+        summaryContext.put("conversation_highlights", new ArrayList<>(state.getHighlights()));
+        summaryContext.put("user_questions_asked", new ArrayList<>(state.getUserQuestions()));
+        summaryContext.put("conversation_flow", getConversationFlow(state.getMeaningfulExchanges()));
 
-        // Return last 3 questions
-        return questions.stream().skip(Math.max(0, questions.size() - 3)).collect(Collectors.toList());
+        return summaryContext;
     }
 
     /**
      * FIXED: Get conversation flow summary
      */
-    private String getConversationFlow(List<Message> history) {
-        int meaningfulExchanges = countMeaningfulExchanges(history);
-
+    private String getConversationFlow(int meaningfulExchanges) {
         if (meaningfulExchanges == 0) {
             return "Just started conversation with introductions";
         } else if (meaningfulExchanges == 1) {
@@ -450,51 +782,14 @@ public class ConversationContextService {
     }
 
     /**
-     * NEW: Extract Rin Kazuki's personality context from conversation history
+     * NEW: Rin Kazuki's personality context from the conversation so far
      */
-    private Map<String, Object> extractRinPersonalityContext(List<Message> history, String conversationId) {
+    private Map<String, Object> extractRinPersonalityContext(ConversationContextState state, String conversationId) {
         Map<String, Object> rinContext = new HashMap<>();
 
-        int tsundereScore = 0;
-        int dereScore = 0;
-        int environmentalPassionScore = 0;
-        List<String> personalityMoments = new ArrayList<>();
-        List<String> environmentalTopics = new ArrayList<>();
-
-        for (Message message : history) {
-            if (message instanceof AssistantMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                // Analyze Rin's tsundere expressions
-                for (String keyword : rinTsundereKeywords) {
-                    if (content.contains(keyword)) {
-                        tsundereScore++;
-                        personalityMoments.add("tsundere_moment: " + keyword);
-                    }
-                }
-
-                // Analyze Rin's dere expressions
-                for (String keyword : rinDereKeywords) {
-                    if (content.contains(keyword)) {
-                        dereScore++;
-                        personalityMoments.add("dere_moment: " + keyword);
-                    }
-                }
-
-                // Analyze environmental passion
-                for (String keyword : sustainabilityKeywords) {
-                    if (content.contains(keyword)) {
-                        environmentalPassionScore++;
-                        environmentalTopics.add(keyword);
-                    }
-                }
-
-                // Special Rin expressions
-                if (content.contains("no sappy lines")) {
-                    personalityMoments.add("akira_reference: no sappy lines");
-                }
-            }
-        }
+        int tsundereScore = state.getTsundereScore();
+        int dereScore = state.getDereScore();
+        List<String> personalityMoments = new ArrayList<>(state.getPersonalityMoments());
 
         // Calculate personality balance
         double tsundereRatio = tsundereScore > 0 ? (double) tsundereScore / (tsundereScore + dereScore) : 0.7;
@@ -503,36 +798,28 @@ public class ConversationContextService {
 
         rinContext.put("rin_tsundere_score", tsundereScore);
         rinContext.put("rin_dere_score", dereScore);
-        rinContext.put("rin_environmental_passion", environmentalPassionScore);
+        rinContext.put("rin_environmental_passion", state.getEnvironmentalPassion());
         rinContext.put("rin_personality_balance", personalityBalance);
-        rinContext.put("rin_personality_moments", personalityMoments.stream().limit(10).collect(Collectors.toList()));
-        rinContext.put("rin_environmental_topics", environmentalTopics.stream().distinct().limit(10).collect(Collectors.toList()));
-
-        // Store for future reference
-        rinPersonalityMoments.put(conversationId, personalityMoments);
-        environmentalEngagementScore.put(conversationId, environmentalPassionScore);
+        rinContext.put("rin_personality_moments", personalityMoments.stream()
+                .skip(Math.max(0, personalityMoments.size() - 10)).collect(Collectors.toList()));
+        rinContext.put("rin_environmental_topics", new ArrayList<>(state.getRinEnvironmentalTopics()));
 
         return rinContext;
     }
 
-    private Map<String, Object> extractPersonalInformation(List<Message> history) {
+    private Map<String, Object> extractPersonalInformation(ConversationContextState state) {
         Map<String, Object> personalInfo = new HashMap<>();
 
-        // FIXED: Extract user name with better validation
-        String userName = extractUserNameFromHistory(history);
-        if (userName != null) {
-            personalInfo.put("user_name", userName);
+        if (state.getUserName() != null) {
+            personalInfo.put("user_name", state.getUserName());
         }
 
-        // Extract preferences
-        List<String> preferences = extractPreferences(history);
-        if (!preferences.isEmpty()) {
-            personalInfo.put("user_preferences", preferences);
+        if (!state.getPreferences().isEmpty()) {
+            personalInfo.put("user_preferences", new ArrayList<>(state.getPreferences()));
         }
 
-        // Extract communication style (enhanced for Rin interactions)
-        String communicationStyle = analyzeCommunicationStyleWithRin(history);
-        personalInfo.put("communication_style", communicationStyle);
+        // Communication style (enhanced for Rin interactions)
+        personalInfo.put("communication_style", analyzeCommunicationStyleWithRin(state.getCommunicationStyle()));
 
         return personalInfo;
     }
@@ -585,35 +872,11 @@ public class ConversationContextService {
     /**
      * Enhanced communication style analysis that considers interactions with Rin
      */
-    private String analyzeCommunicationStyleWithRin(List<Message> history) {
-        int formalCount = 0;
-        int casualCount = 0;
-        int technicalCount = 0;
-        int friendlyCount = 0; // NEW: Track friendly interactions with Rin
-
-        String[] formalWords = {"please", "thank you", "would you", "could you", "appreciate"};
-        String[] casualWords = {"hey", "yeah", "ok", "cool", "awesome", "great"};
-        String[] technicalWords = {"methodology", "calculation", "algorithm", "parameters", "metrics"};
-        String[] friendlyWords = {"rin", "cute", "helpful", "smart", "thanks rin", "good job"}; // NEW
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                for (String word : formalWords) {
-                    if (content.contains(word)) formalCount++;
-                }
-                for (String word : casualWords) {
-                    if (content.contains(word)) casualCount++;
-                }
-                for (String word : technicalWords) {
-                    if (content.contains(word)) technicalCount++;
-                }
-                for (String word : friendlyWords) { // NEW
-                    if (content.contains(word)) friendlyCount++;
-                }
-            }
-        }
+    private String analyzeCommunicationStyleWithRin(Map<String, Integer> styleCounts) {
+        int formalCount = styleCounts.getOrDefault("formal", 0);
+        int casualCount = styleCounts.getOrDefault("casual", 0);
+        int technicalCount = styleCounts.getOrDefault("technical", 0);
+        int friendlyCount = styleCounts.getOrDefault("friendly", 0);
 
         // Enhanced style detection
         if (friendlyCount > 2) {
@@ -629,275 +892,97 @@ public class ConversationContextService {
         return "neutral";
     }
 
-    // ... [Keep all the existing helper methods from the original code] ...
-
-    private Map<String, Object> extractBusinessContext(List<Message> history) {
+    private Map<String, Object> extractBusinessContext(ConversationContextState state) {
         Map<String, Object> businessContext = new HashMap<>();
 
-        // Extract company information
-        String company = extractWithPatterns(history, companyPatterns, "company");
-        if (company != null) {
-            businessContext.put("company_name", company);
+        if (state.getCompanyName() != null) {
+            businessContext.put("company_name", state.getCompanyName());
         }
 
-        // Extract role information
-        String role = extractWithPatterns(history, rolePatterns, "role");
-        if (role != null) {
-            businessContext.put("user_role", role);
+        if (state.getUserRole() != null) {
+            businessContext.put("user_role", state.getUserRole());
         }
 
-        // Extract industry/domain with improved logic (FIXED from original)
-        String domain = extractDomainImproved(history);
+        // Industry/domain with improved logic (FIXED from original)
+        String domain = extractDomainImproved(state.getDomainScores());
         if (domain != null && !domain.equals("unknown")) {
             businessContext.put("user_domain", domain);
         }
 
-        // Extract business goals
-        List<String> goals = extractBusinessGoals(history);
-        if (!goals.isEmpty()) {
-            businessContext.put("business_goals", goals);
+        if (!state.getBusinessGoals().isEmpty()) {
+            businessContext.put("business_goals", new ArrayList<>(state.getBusinessGoals()));
         }
 
         return businessContext;
     }
 
-    private Map<String, Object> extractTopicalContext(List<Message> history) {
+    private Map<String, Object> extractTopicalContext(ConversationContextState state) {
         Map<String, Object> topicalContext = new HashMap<>();
 
-        // Extract sustainability topics discussed
-        Set<String> sustainabilityTopics = extractSustainabilityTopics(history);
-        if (!sustainabilityTopics.isEmpty()) {
-            topicalContext.put("sustainability_topics", new ArrayList<>(sustainabilityTopics));
+        if (!state.getSustainabilityTopics().isEmpty()) {
+            topicalContext.put("sustainability_topics", new ArrayList<>(state.getSustainabilityTopics()));
         }
 
-        // Extract frequently mentioned concepts
-        Map<String, Integer> conceptFrequency = extractConceptFrequency(history);
+        // Only concepts mentioned more than once
+        Map<String, Integer> conceptFrequency = state.getConceptFrequency().entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
         if (!conceptFrequency.isEmpty()) {
             topicalContext.put("frequent_concepts", conceptFrequency);
         }
 
-        // Extract recent focus areas
-        List<String> recentFocusAreas = extractRecentFocusAreas(history);
+        // Topics from the last 10 messages
+        Set<String> recentFocusAreas = state.recentFocusAreas();
         if (!recentFocusAreas.isEmpty()) {
-            topicalContext.put("recent_focus_areas", recentFocusAreas);
+            topicalContext.put("recent_focus_areas", new ArrayList<>(recentFocusAreas));
         }
 
         return topicalContext;
     }
 
-    private Map<String, Object> extractConversationMetrics(List<Message> history) {
+    private Map<String, Object> extractConversationMetrics(ConversationContextState state) {
         Map<String, Object> metrics = new HashMap<>();
 
-        int userMessages = 0;
-        int assistantMessages = 0;
-        int totalWords = 0;
-        int questions = 0;
-        int rinPersonalityExpressions = 0; // NEW
-
-        for (Message message : history) {
-            String content = getMessageContent(message);
-
-            if (message instanceof UserMessage) {
-                userMessages++;
-                questions += content.split("\\?").length - 1;
-            } else if (message instanceof AssistantMessage) {
-                assistantMessages++;
-                // Count Rin's personality expressions
-                String lowerContent = content.toLowerCase();
-                for (String keyword : rinTsundereKeywords) {
-                    if (lowerContent.contains(keyword)) {
-                        rinPersonalityExpressions++;
-                    }
-                }
-                for (String keyword : rinDereKeywords) {
-                    if (lowerContent.contains(keyword)) {
-                        rinPersonalityExpressions++;
-                    }
-                }
-            }
-
-            totalWords += content.split("\\s+").length;
-        }
-
-        metrics.put("user_messages", userMessages);
-        metrics.put("assistant_messages", assistantMessages);
-        metrics.put("total_words", totalWords);
-        metrics.put("questions_asked", questions);
-        metrics.put("avg_words_per_message", history.isEmpty() ? 0 : totalWords / history.size());
-        metrics.put("rin_personality_expressions", rinPersonalityExpressions); // NEW
+        metrics.put("user_messages", state.getUserMessages());
+        metrics.put("assistant_messages", state.getAssistantMessages());
+        metrics.put("total_words", state.getTotalWords());
+        metrics.put("questions_asked", state.getQuestionsAsked());
+        metrics.put("avg_words_per_message", state.messageCount() == 0 ? 0 : state.getTotalWords() / state.messageCount());
+        metrics.put("rin_personality_expressions", state.getRinPersonalityExpressions()); // NEW
 
         return metrics;
     }
 
-    private Map<String, Object> extractUserBehaviorPatterns(List<Message> history) {
+    private Map<String, Object> extractUserBehaviorPatterns(ConversationContextState state) {
         Map<String, Object> patterns = new HashMap<>();
 
-        // Analyze question patterns
-        List<String> questionTypes = analyzeQuestionTypes(history);
-        if (!questionTypes.isEmpty()) {
-            patterns.put("question_patterns", questionTypes);
+        if (!state.getQuestionTypes().isEmpty()) {
+            patterns.put("question_patterns", new ArrayList<>(state.getQuestionTypes()));
         }
 
-        // Analyze interaction frequency
-        Map<String, Integer> interactionPatterns = analyzeInteractionPatterns(history);
-        if (!interactionPatterns.isEmpty()) {
-            patterns.put("interaction_patterns", interactionPatterns);
+        Map<String, Integer> interactionPatterns = new HashMap<>();
+        for (String key : List.of("follow_up_questions", "detail_requests", "clarification_requests")) {
+            interactionPatterns.put(key, state.getInteractionPatterns().getOrDefault(key, 0));
         }
+        patterns.put("interaction_patterns", interactionPatterns);
 
-        // Analyze expertise level indicators
-        String expertiseLevel = analyzeExpertiseLevel(history);
-        patterns.put("expertise_level", expertiseLevel);
+        patterns.put("expertise_level", analyzeExpertiseLevel(state.getExpertiseIndicators()));
 
-        // NEW: Analyze Rin interaction patterns
-        Map<String, Integer> rinInteractionPatterns = analyzeRinInteractionPatterns(history);
-        if (!rinInteractionPatterns.isEmpty()) {
-            patterns.put("rin_interaction_patterns", rinInteractionPatterns);
+        // NEW: Rin interaction patterns
+        Map<String, Integer> rinInteractions = new HashMap<>();
+        for (String key : List.of("compliments_to_rin", "environmental_questions", "personality_acknowledgments", "polite_interactions")) {
+            rinInteractions.put(key, state.getRinInteractionPatterns().getOrDefault(key, 0));
         }
+        patterns.put("rin_interaction_patterns", rinInteractions);
 
         return patterns;
     }
 
-    /**
-     * NEW: Analyze how users interact with Rin's personality
-     */
-    private Map<String, Integer> analyzeRinInteractionPatterns(List<Message> history) {
-        Map<String, Integer> patterns = new HashMap<>();
-
-        int complimentsToRin = 0;
-        int environmentalQuestions = 0;
-        int personalityAcknowledgments = 0;
-        int politeInteractions = 0;
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                // Count compliments or acknowledgments to Rin
-                if (content.contains("rin") && (content.contains("good") || content.contains("smart") ||
-                        content.contains("helpful") || content.contains("cute") || content.contains("thank"))) {
-                    complimentsToRin++;
-                }
-
-                // Count environmental engagement
-                for (String keyword : sustainabilityKeywords) {
-                    if (content.contains(keyword)) {
-                        environmentalQuestions++;
-                        break; // Count once per message
-                    }
-                }
-
-                // Count personality acknowledgments
-                if (content.contains("tsundere") || content.contains("personality") ||
-                        content.contains("mood") || content.contains("character")) {
-                    personalityAcknowledgments++;
-                }
-
-                // Count polite interactions
-                for (Pattern pattern : rinInteractionPatterns) {
-                    if (pattern.matcher(content).find()) {
-                        politeInteractions++;
-                        break; // Count once per message
-                    }
-                }
-            }
-        }
-
-        patterns.put("compliments_to_rin", complimentsToRin);
-        patterns.put("environmental_questions", environmentalQuestions);
-        patterns.put("personality_acknowledgments", personalityAcknowledgments);
-        patterns.put("polite_interactions", politeInteractions);
-
-        return patterns;
-    }
-
-    // Keep all existing helper methods...
-    private String extractWithPatterns(List<Message> history, List<Pattern> patterns, String type) {
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message);
-                for (Pattern pattern : patterns) {
-                    Matcher matcher = pattern.matcher(content);
-                    if (matcher.find()) {
-                        String result = matcher.group(1).trim();
-                        if (!isCommonWord(result)) {
-                            return result;
-                        }
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
-    private List<String> extractPreferences(List<Message> history) {
-        List<String> preferences = new ArrayList<>();
-        Pattern preferencePattern = Pattern.compile("(?i)(i like|i prefer|i love|i enjoy|i'm interested in) ([^.!?]+)", Pattern.CASE_INSENSITIVE);
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message);
-                Matcher matcher = preferencePattern.matcher(content);
-                while (matcher.find()) {
-                    String preference = matcher.group(2).trim();
-                    if (preference.length() > 3 && preference.length() < 100) {
-                        preferences.add(preference);
-                    }
-                }
-            }
-        }
-
-        return preferences.stream().distinct().collect(Collectors.toList());
-    }
-
     /**
      * FIXED: Improved domain extraction with balanced scoring and higher thresholds
      * This addresses the agriculture domain bias issue from the original
      */
-    private String extractDomainImproved(List<Message> history) {
-        Map<String, Integer> domainScores = new HashMap<>();
-
-        // Initialize all domains
-        domainScores.put("manufacturing", 0);
-        domainScores.put("technology", 0);
-        domainScores.put("finance", 0);
-        domainScores.put("healthcare", 0);
-        domainScores.put("retail", 0);
-        domainScores.put("energy", 0);
-        domainScores.put("construction", 0);
-        domainScores.put("transportation", 0);
-        domainScores.put("agriculture", 0);
-
-        // Enhanced keyword sets with more specific terms
-        Map<String, String[]> domainKeywords = Map.of(
-                "manufacturing", new String[]{"factory", "production", "assembly", "manufacturing", "industrial", "plant", "machinery", "fabrication"},
-                "technology", new String[]{"software", "technology", "digital", "IT", "tech", "platform", "app", "system", "programming", "data"},
-                "finance", new String[]{"bank", "financial", "investment", "capital", "fund", "trading", "portfolio", "loan", "credit"},
-                "healthcare", new String[]{"hospital", "medical", "healthcare", "pharmaceutical", "clinical", "patient", "medicine", "treatment"},
-                "retail", new String[]{"retail", "store", "customer", "sales", "commerce", "shopping", "consumer", "merchandise"},
-                "energy", new String[]{"energy", "power", "utility", "grid", "renewable", "electricity", "oil", "gas", "solar", "wind"},
-                "construction", new String[]{"construction", "building", "infrastructure", "contractor", "architect", "cement", "concrete"},
-                "transportation", new String[]{"logistics", "transportation", "shipping", "freight", "delivery", "trucking", "fleet", "cargo"},
-                "agriculture", new String[]{"agriculture", "farming", "crop", "livestock", "agricultural", "harvest", "farm", "rural", "soil"}
-        );
-
-        // Count keywords with weighted scoring
-        for (Message message : history) {
-            String content = getMessageContent(message).toLowerCase();
-
-            for (Map.Entry<String, String[]> entry : domainKeywords.entrySet()) {
-                String domain = entry.getKey();
-                String[] keywords = entry.getValue();
-
-                for (String keyword : keywords) {
-                    if (content.contains(keyword)) {
-                        // More specific terms get higher weights
-                        int weight = keyword.length() > 6 ? 2 : 1;
-                        domainScores.merge(domain, weight, Integer::sum);
-                    }
-                }
-            }
-        }
-
+    private String extractDomainImproved(Map<String, Integer> domainScores) {
         // Find the highest scoring domain with minimum threshold
         Optional<Map.Entry<String, Integer>> topDomain = domainScores.entrySet().stream()
                 .filter(entry -> entry.getValue() >= 3) // Increased threshold to require stronger evidence
@@ -925,190 +1010,10 @@ public class ConversationContextService {
         return "general"; // Default to general instead of null
     }
 
-    private List<String> extractBusinessGoals(List<Message> history) {
-        List<String> goals = new ArrayList<>();
-        String[] goalIndicators = {
-                "we want to", "our goal is", "we aim to", "we're trying to",
-                "we need to", "objective is", "target is", "hoping to"
-        };
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-                for (String indicator : goalIndicators) {
-                    if (content.contains(indicator)) {
-                        // Extract the goal text after the indicator
-                        int startIndex = content.indexOf(indicator) + indicator.length();
-                        int endIndex = Math.min(startIndex + 100, content.length());
-                        String goalText = content.substring(startIndex, endIndex).trim();
-
-                        // Find sentence end
-                        int sentenceEnd = Math.min(
-                                goalText.indexOf('.') != -1 ? goalText.indexOf('.') : goalText.length(),
-                                goalText.indexOf('!') != -1 ? goalText.indexOf('!') : goalText.length()
-                        );
-
-                        if (sentenceEnd > 0) {
-                            goalText = goalText.substring(0, sentenceEnd).trim();
-                            if (goalText.length() > 10) {
-                                goals.add(goalText);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        return goals.stream().distinct().collect(Collectors.toList());
-    }
-
-    private Set<String> extractSustainabilityTopics(List<Message> history) {
-        Set<String> topics = new HashSet<>();
-
-        for (Message message : history) {
-            String content = getMessageContent(message).toLowerCase();
-            for (String keyword : sustainabilityKeywords) {
-                if (content.contains(keyword.toLowerCase())) {
-                    topics.add(keyword);
-                }
-            }
-        }
-
-        return topics;
-    }
-
-    private Map<String, Integer> extractConceptFrequency(List<Message> history) {
-        Map<String, Integer> conceptFreq = new HashMap<>();
-
-        // Key sustainability concepts to track
-        String[] concepts = {
-                "carbon", "emissions", "energy", "waste", "water", "sustainability",
-                "renewable", "efficiency", "reduction", "calculation", "reporting",
-                "compliance", "audit", "certification", "offset", "neutral"
-        };
-
-        for (Message message : history) {
-            String content = getMessageContent(message).toLowerCase();
-            for (String concept : concepts) {
-                if (content.contains(concept)) {
-                    conceptFreq.merge(concept, 1, Integer::sum);
-                }
-            }
-        }
-
-        // Only return concepts mentioned more than once
-        return conceptFreq.entrySet().stream()
-                .filter(entry -> entry.getValue() > 1)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-    }
-
-    private List<String> extractRecentFocusAreas(List<Message> history) {
-        // Focus on last 10 messages for recent topics
-        int startIndex = Math.max(0, history.size() - 10);
-        List<Message> recentHistory = history.subList(startIndex, history.size());
-
-        Set<String> recentTopics = new HashSet<>();
-
-        for (Message message : recentHistory) {
-            String content = getMessageContent(message).toLowerCase();
-            for (String keyword : sustainabilityKeywords) {
-                if (content.contains(keyword.toLowerCase())) {
-                    recentTopics.add(keyword);
-                }
-            }
-        }
-
-        return new ArrayList<>(recentTopics);
-    }
-
-    private List<String> analyzeQuestionTypes(List<Message> history) {
-        List<String> questionTypes = new ArrayList<>();
-
-        String[] howQuestions = {"how to", "how do", "how can", "how should"};
-        String[] whatQuestions = {"what is", "what are", "what does", "what should"};
-        String[] whyQuestions = {"why is", "why do", "why should", "why does"};
-        String[] calculationQuestions = {"calculate", "compute", "formula", "equation"};
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                if (Arrays.stream(howQuestions).anyMatch(content::contains)) {
-                    questionTypes.add("how-to");
-                }
-                if (Arrays.stream(whatQuestions).anyMatch(content::contains)) {
-                    questionTypes.add("definition");
-                }
-                if (Arrays.stream(whyQuestions).anyMatch(content::contains)) {
-                    questionTypes.add("explanation");
-                }
-                if (Arrays.stream(calculationQuestions).anyMatch(content::contains)) {
-                    questionTypes.add("calculation");
-                }
-            }
-        }
-
-        return questionTypes.stream().distinct().collect(Collectors.toList());
-    }
-
-    private Map<String, Integer> analyzeInteractionPatterns(List<Message> history) {
-        Map<String, Integer> patterns = new HashMap<>();
-
-        int followUpQuestions = 0;
-        int detailRequests = 0;
-        int clarifications = 0;
-
-        String[] followUpWords = {"also", "additionally", "furthermore", "moreover", "and what about"};
-        String[] detailWords = {"more details", "elaborate", "explain further", "tell me more"};
-        String[] clarificationWords = {"what do you mean", "can you clarify", "i don't understand"};
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                if (Arrays.stream(followUpWords).anyMatch(content::contains)) {
-                    followUpQuestions++;
-                }
-                if (Arrays.stream(detailWords).anyMatch(content::contains)) {
-                    detailRequests++;
-                }
-                if (Arrays.stream(clarificationWords).anyMatch(content::contains)) {
-                    clarifications++;
-                }
-            }
-        }
-
-        patterns.put("follow_up_questions", followUpQuestions);
-        patterns.put("detail_requests", detailRequests);
-        patterns.put("clarification_requests", clarifications);
-
-        return patterns;
-    }
-
-    private String analyzeExpertiseLevel(List<Message> history) {
-        int beginnerIndicators = 0;
-        int intermediateIndicators = 0;
-        int expertIndicators = 0;
-
-        String[] beginnerWords = {"basic", "simple", "beginner", "new to", "don't know", "what is"};
-        String[] intermediateWords = {"understand", "familiar", "some experience", "general idea"};
-        String[] expertWords = {"methodology", "implementation", "optimization", "advanced", "complex"};
-
-        for (Message message : history) {
-            if (message instanceof UserMessage) {
-                String content = getMessageContent(message).toLowerCase();
-
-                for (String word : beginnerWords) {
-                    if (content.contains(word)) beginnerIndicators++;
-                }
-                for (String word : intermediateWords) {
-                    if (content.contains(word)) intermediateIndicators++;
-                }
-                for (String word : expertWords) {
-                    if (content.contains(word)) expertIndicators++;
-                }
-            }
-        }
+    private String analyzeExpertiseLevel(Map<String, Integer> indicators) {
+        int beginnerIndicators = indicators.getOrDefault("beginner", 0);
+        int intermediateIndicators = indicators.getOrDefault("intermediate", 0);
+        int expertIndicators = indicators.getOrDefault("expert", 0);
 
         if (expertIndicators > intermediateIndicators && expertIndicators > beginnerIndicators) {
             return "expert";
@@ -1147,8 +1052,134 @@ public class ConversationContextService {
         }
     }
 
+    /**
+     * Adds a finished exchange to the turn's snapshot and hands its writes (chat memory, context and
+     * personality tracking) to the post-turn bus. Returns without touching the database.
+     */
+    public void recordExchange(ConversationSnapshot snapshot, String userMessage, String assistantResponse) {
+        String conversationId = snapshot.getConversationId();
+        List<Message> exchange = List.of(new UserMessage(userMessage), new AssistantMessage(assistantResponse));
+        snapshot.append(exchange);
+        synchronized (writeStripe(conversationId)) {
+            pendingWrites.computeIfAbsent(conversationId, id -> new ArrayList<>()).addAll(exchange);
+        }
+        postTurnEventBus.publish(new ExchangeRecorded(conversationId, userMessage, assistantResponse));
+    }
+
+    /**
+     * Post-turn handler: one chat memory write per conversation for all of its exchanges in the batch, then
+     * the context updates in turn order.
+     */
+    private void writeExchanges(List<ExchangeRecorded> batch) {
+        Map<String, List<ExchangeRecorded>> byConversation = batch.stream()
+                .collect(Collectors.groupingBy(ExchangeRecorded::conversationId, LinkedHashMap::new, Collectors.toList()));
+
+        byConversation.forEach((conversationId, exchanges) -> {
+            writePending(conversationId, 0);
+            exchanges.forEach(exchange -> updateContextAfterInteraction(
+                    conversationId, exchange.userMessage(), exchange.assistantResponse()));
+        });
+    }
+
+    private void retryWrites(List<PendingWriteRetry> retries) {
+        retries.forEach(retry -> writePending(retry.conversationId(), retry.attempt()));
+    }
+
+    /**
+     * Writes every message of the conversation that is still pending. A failed write leaves its messages
+     * pending, so reads keep seeing them; they are retried with backoff and, failing that, go out with the
+     * conversation's next exchange.
+     */
+    private void writePending(String conversationId, int attempt) {
+        WriteStripe stripe = writeStripe(conversationId);
+        List<Message> pending;
+        List<Message> messages;
+        synchronized (stripe) {
+            // One write per stripe at a time, so each pending message is taken by exactly one write
+            awaitWrites(stripe);
+            pending = pendingWrites.get(conversationId);
+            // Only what is still pending: a conversation cleared since the turn must stay cleared
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+            messages = List.copyOf(pending);
+            stripe.writing++;
+            stripe.version++;
+        }
+
+        // The stripe is not held across the database call, so turns recording or loading never wait on it
+        boolean saved = false;
+        try {
+            chatMemory.add(conversationId, messages);
+            saved = true;
+            log.debug("Saved {} messages to chat memory for conversation: {}", messages.size(), conversationId);
+        } catch (Exception e) {
+            log.error("Failed to save {} messages to chat memory for conversation '{}' (attempt {}): {}",
+                    messages.size(), conversationId, attempt + 1, e.getMessage(), e);
+        } finally {
+            synchronized (stripe) {
+                if (saved) {
+                    Set<Message> written = Collections.newSetFromMap(new IdentityHashMap<>());
+                    written.addAll(messages);
+                    pending.removeIf(written::contains);
+                    if (pending.isEmpty()) {
+                        pendingWrites.remove(conversationId, pending);
+                    }
+                }
+                stripe.writing--;
+                stripe.version++;
+                stripe.notifyAll();
+            }
+        }
+
+        if (!saved) {
+            scheduleRetry(conversationId, attempt + 1);
+        }
+    }
+
+    private void scheduleRetry(String conversationId, int attempt) {
+        if (attempt > MAX_WRITE_RETRIES) {
+            log.error("Chat memory writes for conversation '{}' still failing after {} retries; "
+                    + "its messages stay pending until its next exchange", conversationId, MAX_WRITE_RETRIES);
+            return;
+        }
+        long delay = WRITE_RETRY_DELAY_MS << (attempt - 1);
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                .execute(() -> postTurnEventBus.publish(new PendingWriteRetry(conversationId, attempt)));
+    }
+
+    private WriteStripe writeStripe(String conversationId) {
+        return writeStripes[Math.floorMod(conversationId.hashCode(), WRITE_STRIPES)];
+    }
+
+    /**
+     * Waits, with the stripe held, until no chat memory write of the stripe is running.
+     */
+    private static void awaitWrites(WriteStripe stripe) {
+        try {
+            while (stripe.writing > 0) {
+                stripe.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public void updateContextAfterInteraction(String conversationId, String userMessage, String assistantResponse) {
         try {
+            // Fold the new exchange into the running state; a missing state is rebuilt from history on the next turn
+            ConversationContextState state = contextStates.get(conversationId);
+            String response = assistantResponse != null ? assistantResponse : "";
+            if (state != null) {
+                synchronized (state) {
+                    // A turn that started before this update ran has already rebuilt the state with the exchange in it
+                    if (state.getLastMessageHash() != response.hashCode()) {
+                        applyUserMessage(state, userMessage);
+                        applyAssistantMessage(state, response);
+                    }
+                }
+            }
+
             // Update cached context based on new interaction
             String cacheKey = conversationId;
             Map<String, Object> cachedContext = contextCache.get(cacheKey);
@@ -1163,9 +1194,6 @@ public class ConversationContextService {
 
                 // Analyze and update recent topics
                 updateRecentTopics(cachedContext, userMessage + " " + assistantResponse);
-
-                // NEW: Update Rin personality tracking
-                updateRinPersonalityTracking(conversationId, userMessage, assistantResponse);
             }
 
             log.debug("Updated context cache for conversation: {}", conversationId);
@@ -1174,54 +1202,12 @@ public class ConversationContextService {
         }
     }
 
-    /**
-     * NEW: Update Rin's personality tracking based on interaction
-     */
-    private void updateRinPersonalityTracking(String conversationId, String userMessage, String assistantResponse) {
-        List<String> moments = rinPersonalityMoments.getOrDefault(conversationId, new ArrayList<>());
-
-        String lowerResponse = assistantResponse.toLowerCase();
-        String lowerUser = userMessage.toLowerCase();
-
-        // Track Rin's tsundere moments
-        for (String keyword : rinTsundereKeywords) {
-            if (lowerResponse.contains(keyword)) {
-                moments.add("tsundere: " + keyword + " at " + LocalDateTime.now().format(DateTimeFormatter.ISO_TIME));
-            }
-        }
-
-        // Track Rin's dere moments
-        for (String keyword : rinDereKeywords) {
-            if (lowerResponse.contains(keyword)) {
-                moments.add("dere: " + keyword + " at " + LocalDateTime.now().format(DateTimeFormatter.ISO_TIME));
-            }
-        }
-
-        // Track user's environmental engagement
-        int currentScore = environmentalEngagementScore.getOrDefault(conversationId, 0);
-        for (String keyword : sustainabilityKeywords) {
-            if (lowerUser.contains(keyword)) {
-                currentScore++;
-                break; // Count once per message
-            }
-        }
-
-        // Keep only recent moments (last 20)
-        if (moments.size() > 20) {
-            moments = moments.subList(moments.size() - 20, moments.size());
-        }
-
-        rinPersonalityMoments.put(conversationId, moments);
-        environmentalEngagementScore.put(conversationId, currentScore);
-    }
-
     private void updateRecentTopics(Map<String, Object> context, String content) {
         @SuppressWarnings("unchecked")
         List<String> recentTopics = (List<String>) context.getOrDefault("recent_topics", new ArrayList<>());
 
-        String lowerContent = content.toLowerCase();
-        for (String keyword : sustainabilityKeywords) {
-            if (lowerContent.contains(keyword.toLowerCase()) && !recentTopics.contains(keyword)) {
+        for (String keyword : messageKeywords.scan(content).keywords(SUSTAINABILITY)) {
+            if (!recentTopics.contains(keyword)) {
                 recentTopics.add(keyword);
                 // Keep only the most recent 10 topics
                 if (recentTopics.size() > 10) {
@@ -1250,7 +1236,7 @@ public class ConversationContextService {
             // NEW: Add Rin personality summary
             summary.put("rin_personality_balance", context.get("rin_personality_balance"));
             summary.put("rin_environmental_passion", context.get("rin_environmental_passion"));
-            summary.put("environmental_engagement_score", environmentalEngagementScore.get(conversationId));
+            summary.put("environmental_engagement_score", context.get("rin_environmental_passion"));
 
             return summary;
         } catch (Exception e) {
@@ -1263,31 +1249,55 @@ public class ConversationContextService {
      * NEW: Get Rin's personality moments for a conversation
      */
     public List<String> getRinPersonalityMoments(String conversationId) {
-        return rinPersonalityMoments.getOrDefault(conversationId, new ArrayList<>());
+        ConversationContextState state = contextState(loadSnapshot(conversationId));
+        synchronized (state) {
+            return new ArrayList<>(state.getPersonalityMoments());
+        }
     }
 
     /**
      * NEW: Get environmental engagement score
      */
     public int getEnvironmentalEngagementScore(String conversationId) {
-        return environmentalEngagementScore.getOrDefault(conversationId, 0);
+        ConversationContextState state = contextState(loadSnapshot(conversationId));
+        synchronized (state) {
+            return state.getEnvironmentalPassion();
+        }
     }
 
     // Temporarily disable cache eviction
     // @CacheEvict(value = "conversationContext", key = "#conversationId + '_*'")
     public void clearContextCache(String conversationId) {
+        WriteStripe stripe = writeStripe(conversationId);
+        synchronized (stripe) {
+            pendingWrites.remove(conversationId);
+            // A write already under way would land after the caller clears chat memory; let it finish first
+            awaitWrites(stripe);
+        }
         contextCache.remove(conversationId);
-        // NEW: Clear Rin personality data
-        rinPersonalityMoments.remove(conversationId);
-        environmentalEngagementScore.remove(conversationId);
+        contextStates.remove(conversationId);
         log.debug("Cleared context cache and Rin personality data for conversation: {}", conversationId);
     }
 
     public void clearAllContextCache() {
         contextCache.clear();
-        // NEW: Clear all Rin personality data
-        rinPersonalityMoments.clear();
-        environmentalEngagementScore.clear();
+        contextStates.clear();
         log.info("Cleared all context cache and Rin personality data");
     }
-}
\ No newline at end of file
+
+    /**
+     * Lock for the pending writes of the conversations that hash to it, held only for in-memory bookkeeping.
+     * {@code version} moves whenever a chat memory write starts or ends, so a reader can tell whether the
+     * store changed under it.
+     */
+    private static final class WriteStripe {
+        private int writing;
+        private long version;
+    }
+
+    private record ExchangeRecorded(String conversationId, String userMessage, String assistantResponse) {
+    }
+
+    private record PendingWriteRetry(String conversationId, int attempt) {
+    }
+}
@@ -1,5 +1,7 @@
 package com.app.greensuitetest.service;
 
+import com.app.greensuitetest.config.PromptBudgetProperties;
+import com.app.greensuitetest.util.TokenEstimator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -8,7 +10,6 @@ import org.springframework.util.StringUtils;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 @Service
@@ -16,21 +17,11 @@ import java.util.regex.Matcher;
 @Slf4j
 public class DocumentContextService {
 
-    // Patterns for identifying different types of content
-    private final Pattern formulaPattern = Pattern.compile("\\b\\w+\\s*=\\s*[\\w\\s+\\-*/().,]+");
-    private final Pattern numberPattern = Pattern.compile("\\d+(?:\\.\\d+)?\\s*(?:%|kg|tons?|kwh|mwh|gwh|m[²³]?|ft[²³]?|gal|l|°[cf])?");
-    private final Pattern procedurePattern = Pattern.compile("(?i)(?:step|procedure|process|method|approach)\\s*\\d*:?\\s*(.+)");
-
-    // FIXED: Balanced domain keywords with equal representation
-    private final Map<String, List<String>> domainKeywords = Map.of(
-            "carbon_calculation", Arrays.asList("carbon", "co2", "emission", "ghg", "scope 1", "scope 2", "scope 3", "footprint"),
-            "energy_management", Arrays.asList("energy", "renewable", "efficiency", "consumption", "solar", "wind", "power", "electricity"),
-            "waste_management", Arrays.asList("waste", "recycling", "disposal", "circular", "landfill", "reduction", "reuse"),
-            "water_management", Arrays.asList("water", "consumption", "treatment", "wastewater", "conservation", "quality"),
-            "supply_chain", Arrays.asList("supply", "chain", "procurement", "vendor", "supplier", "logistics", "sourcing"),
-            "reporting", Arrays.asList("report", "disclosure", "compliance", "audit", "certification", "standard", "framework"),
-            "general_sustainability", Arrays.asList("sustainability", "esg", "environmental", "green", "climate", "biodiversity")
-    );
+    // Section header and source summary around the documents
+    private static final int CONTEXT_OVERHEAD_TOKENS = 60;
+
+    private final ChunkFeatureExtractor chunkFeatureExtractor;
+    private final PromptBudgetProperties promptBudgetProperties;
 
     public String buildIntelligentContext(List<Document> documents, String userQuery) {
         if (documents == null || documents.isEmpty()) {
@@ -43,7 +34,7 @@ public class DocumentContextService {
 
             // Filter and rank documents based on relevance
             List<EnhancedDocument> enhancedDocs = documents.stream()
-                    .map(this::enhanceDocument)
+                    .map(doc -> enhanceDocument(doc, queryAnalysis))
                     .filter(Objects::nonNull)
                     .collect(Collectors.toList());
 
@@ -82,13 +73,9 @@ public class DocumentContextService {
         // Calculate semantic relevance score
         double relevanceScore = 0.0;
 
-        // 1. Query concept overlap (primary relevance factor)
-        Set<String> queryTerms = extractQueryTerms(queryAnalysis.query.toLowerCase());
-        Set<String> docTerms = extractDocumentTerms(docContent);
-
-        long termOverlap = queryTerms.stream()
-                .mapToLong(term -> docTerms.contains(term) ? 1 : 0)
-                .sum();
+        // 1. Query concept overlap (primary relevance factor), computed once per document
+        Set<String> queryTerms = queryAnalysis.queryTerms;
+        long termOverlap = doc.termOverlap;
 
         relevanceScore += termOverlap * 2.0;
 
@@ -121,16 +108,8 @@ public class DocumentContextService {
     }
 
     private Set<String> extractQueryTerms(String query) {
-        Set<String> terms = new HashSet<>();
-
         // Add all sustainability-related terms from query
-        for (List<String> domainTerms : domainKeywords.values()) {
-            for (String term : domainTerms) {
-                if (query.contains(term.toLowerCase())) {
-                    terms.add(term.toLowerCase());
-                }
-            }
-        }
+        Set<String> terms = new HashSet<>(chunkFeatureExtractor.findDomainKeywords(query));
 
         // Add significant words (longer than 3 characters)
         String[] words = query.split("\\s+");
@@ -144,21 +123,6 @@ public class DocumentContextService {
         return terms;
     }
 
-    private Set<String> extractDocumentTerms(String content) {
-        Set<String> terms = new HashSet<>();
-
-        // Add all sustainability-related terms from content
-        for (List<String> domainTerms : domainKeywords.values()) {
-            for (String term : domainTerms) {
-                if (content.contains(term.toLowerCase())) {
-                    terms.add(term.toLowerCase());
-                }
-            }
-        }
-
-        return terms;
-    }
-
     private boolean isStopWord(String word) {
         Set<String> stopWords = Set.of("with", "from", "they", "this", "that", "will", "have", "been",
                 "their", "said", "each", "which", "them", "would", "make", "like");
@@ -202,6 +166,9 @@ public class DocumentContextService {
             analysis.type = QueryType.GENERAL;
         }
 
+        // Query terms are extracted once here and reused for every retrieved document
+        analysis.queryTerms = extractQueryTerms(lowerQuery);
+
         // Extract key concepts
         analysis.concepts = extractKeyConcepts(query);
 
@@ -218,20 +185,11 @@ public class DocumentContextService {
     }
 
     private List<String> extractKeyConcepts(String query) {
-        List<String> concepts = new ArrayList<>();
-        String lowerQuery = query.toLowerCase();
-
         // Extract sustainability concepts without domain bias
-        for (Map.Entry<String, List<String>> domainEntry : domainKeywords.entrySet()) {
-            for (String keyword : domainEntry.getValue()) {
-                if (lowerQuery.contains(keyword.toLowerCase())) {
-                    concepts.add(keyword);
-                }
-            }
-        }
+        List<String> concepts = new ArrayList<>(chunkFeatureExtractor.findDomainKeywords(query));
 
         // Extract numerical concepts
-        Matcher numberMatcher = numberPattern.matcher(query);
+        Matcher numberMatcher = chunkFeatureExtractor.getNumberPattern().matcher(query);
         while (numberMatcher.find()) {
             concepts.add("numerical_data");
             break; // Only add once
@@ -260,7 +218,7 @@ public class DocumentContextService {
         }
     }
 
-    private EnhancedDocument enhanceDocument(Document document) {
+    private EnhancedDocument enhanceDocument(Document document, QueryAnalysis queryAnalysis) {
         try {
             EnhancedDocument enhanced = new EnhancedDocument();
             enhanced.originalDocument = document;
@@ -271,14 +229,26 @@ public class DocumentContextService {
                 return null;
             }
 
-            // Analyze content
-            enhanced.contentType = analyzeContentType(enhanced.content);
-            enhanced.domain = classifyContentDomain(enhanced.content);
-            enhanced.hasFormulas = formulaPattern.matcher(enhanced.content).find();
-            enhanced.hasNumbers = numberPattern.matcher(enhanced.content).find();
-            enhanced.hasProcedures = procedurePattern.matcher(enhanced.content).find();
-            enhanced.wordCount = enhanced.content.split("\\s+").length;
-            enhanced.keyTerms = extractKeyTerms(enhanced.content);
+            // Features are precomputed at ingestion; only chunks stored before that are analysed here
+            Map<String, Object> features = chunkFeatureExtractor.hasCurrentFeatures(enhanced.metadata)
+                    ? enhanced.metadata
+                    : chunkFeatureExtractor.extractFeatures(enhanced.content);
+
+            enhanced.contentType = parseContentType(features.get(ChunkFeatureExtractor.CONTENT_TYPE));
+            enhanced.domain = String.valueOf(features.getOrDefault(ChunkFeatureExtractor.CONTENT_DOMAIN, "general"));
+            enhanced.hasFormulas = Boolean.TRUE.equals(features.get(ChunkFeatureExtractor.HAS_FORMULAS));
+            enhanced.hasNumbers = Boolean.TRUE.equals(features.get(ChunkFeatureExtractor.HAS_NUMBERS));
+            enhanced.hasProcedures = Boolean.TRUE.equals(features.get(ChunkFeatureExtractor.HAS_PROCEDURES));
+            enhanced.wordCount = features.get(ChunkFeatureExtractor.WORD_COUNT) instanceof Number count ? count.intValue() : 0;
+            if (features.get(ChunkFeatureExtractor.KEY_TERMS) instanceof Collection<?> terms) {
+                terms.forEach(term -> enhanced.keyTerms.add(String.valueOf(term)));
+            }
+            enhanced.formulas = stringFeature(features, ChunkFeatureExtractor.FORMULAS);
+            enhanced.numericalValues = stringFeature(features, ChunkFeatureExtractor.NUMERICAL_VALUES);
+            enhanced.procedures = stringFeature(features, ChunkFeatureExtractor.PROCEDURES);
+            enhanced.recommendations = stringFeature(features, ChunkFeatureExtractor.RECOMMENDATIONS);
+            enhanced.matchedTerms = collectMatchedTerms(enhanced, queryAnalysis.queryTerms);
+            enhanced.termOverlap = enhanced.matchedTerms.size();
 
             return enhanced;
         } catch (Exception e) {
@@ -287,87 +257,41 @@ public class DocumentContextService {
         }
     }
 
-    private ContentType analyzeContentType(String content) {
-        String lowerContent = content.toLowerCase();
-
-        if (formulaPattern.matcher(content).find() && numberPattern.matcher(content).find()) {
-            return ContentType.CALCULATION;
-        } else if (procedurePattern.matcher(content).find() ||
-                lowerContent.contains("step") || lowerContent.contains("process")) {
-            return ContentType.PROCEDURE;
-        } else if (lowerContent.contains("definition") || lowerContent.contains("means") ||
-                lowerContent.contains("refers to")) {
-            return ContentType.DEFINITION;
-        } else if (lowerContent.contains("example") || lowerContent.contains("case study")) {
-            return ContentType.EXAMPLE;
-        } else if (lowerContent.contains("standard") || lowerContent.contains("requirement") ||
-                lowerContent.contains("compliance")) {
-            return ContentType.STANDARD;
-        } else {
-            return ContentType.GENERAL;
-        }
-    }
-
     /**
-     * IMPROVED: More balanced content domain classification
+     * Query terms present in the document: the BM25 matches attached by hybrid retrieval plus any
+     * domain keyword the document contains. Both are restricted to this service's own query terms, whose
+     * stop words differ from the keyword index's, so hybrid retrieval does not shift the relevance filter.
      */
-    private String classifyContentDomain(String content) {
-        String lowerContent = content.toLowerCase();
-        Map<String, Integer> domainScores = new HashMap<>();
-
-        // Score each domain based on keyword presence
-        for (Map.Entry<String, List<String>> domainEntry : domainKeywords.entrySet()) {
-            int score = 0;
-            for (String keyword : domainEntry.getValue()) {
-                // Count occurrences with diminishing returns
-                int count = lowerContent.split(keyword.toLowerCase(), -1).length - 1;
-                score += Math.min(count, 3); // Cap at 3 to prevent single keyword dominance
-            }
-            if (score > 0) {
-                domainScores.put(domainEntry.getKey(), score);
+    private Set<String> collectMatchedTerms(EnhancedDocument document, Set<String> queryTerms) {
+        Set<String> matched = new HashSet<>();
+        Object bm25Matches = document.metadata.get("matched_terms");
+        if (bm25Matches instanceof Collection<?> terms) {
+            for (Object term : terms) {
+                String matchedTerm = String.valueOf(term);
+                if (queryTerms.contains(matchedTerm)) {
+                    matched.add(matchedTerm);
+                }
             }
         }
-
-        // Return domain only if it has a clear lead and minimum threshold
-        Optional<Map.Entry<String, Integer>> topDomain = domainScores.entrySet().stream()
-                .filter(entry -> entry.getValue() >= 2) // Minimum threshold
-                .max(Map.Entry.comparingByValue());
-
-        if (topDomain.isPresent()) {
-            // Ensure the top domain has a significant lead
-            int topScore = topDomain.get().getValue();
-            long competingDomains = domainScores.values().stream()
-                    .filter(score -> score >= topScore - 1)
-                    .count();
-
-            if (competingDomains <= 2) {
-                return topDomain.get().getKey();
+        for (String keyTerm : document.keyTerms) {
+            if (queryTerms.contains(keyTerm)) {
+                matched.add(keyTerm);
             }
         }
-
-        return "general";
+        return matched;
     }
 
-    private Set<String> extractKeyTerms(String content) {
-        Set<String> keyTerms = new HashSet<>();
-        String lowerContent = content.toLowerCase();
-
-        // Extract all domain keywords present (balanced approach)
-        for (List<String> keywords : domainKeywords.values()) {
-            for (String keyword : keywords) {
-                if (lowerContent.contains(keyword.toLowerCase())) {
-                    keyTerms.add(keyword);
-                }
-            }
-        }
-
-        // Extract numerical values and units
-        Matcher numberMatcher = numberPattern.matcher(content);
-        if (numberMatcher.find()) {
-            keyTerms.add("numerical_value");
+    private ContentType parseContentType(Object value) {
+        try {
+            return value != null ? ContentType.valueOf(value.toString()) : ContentType.GENERAL;
+        } catch (IllegalArgumentException e) {
+            return ContentType.GENERAL;
         }
+    }
 
-        return keyTerms;
+    private String stringFeature(Map<String, Object> features, String key) {
+        Object value = features.get(key);
+        return value != null ? value.toString() : "";
     }
 
     private List<EnhancedDocument> rankDocumentsByRelevance(List<EnhancedDocument> documents, QueryAnalysis query) {
@@ -392,13 +316,8 @@ public class DocumentContextService {
         }
 
         // Concept overlap (most important factor)
-        Set<String> queryTerms = extractQueryTerms(query.query.toLowerCase());
-        Set<String> docTerms = extractDocumentTerms(document.content.toLowerCase());
-
-        long conceptOverlap = queryTerms.stream()
-                .mapToLong(term -> docTerms.contains(term) ? 1 : 0)
-                .sum();
-        score += conceptOverlap * 3.0;
+        Set<String> queryTerms = query.queryTerms;
+        score += document.termOverlap * 3.0;
 
         // Content quality bonuses
         if (query.type == QueryType.CALCULATION && document.hasFormulas) {
@@ -448,16 +367,45 @@ public class DocumentContextService {
             case SIMPLE -> 3;
         };
 
-        List<EnhancedDocument> selectedDocs = documents.stream()
-                .limit(maxDocs)
-                .collect(Collectors.toList());
+        // Documents arrive ranked; take each in turn only if its section still fits the token budget,
+        // so a long marginal chunk never pushes the prompt past the context window
+        int budget = promptBudgetProperties.getDocuments() - CONTEXT_OVERHEAD_TOKENS;
+        int used = 0;
+        List<EnhancedDocument> selectedDocs = new ArrayList<>();
+        for (EnhancedDocument doc : documents) {
+            if (selectedDocs.size() >= maxDocs) {
+                break;
+            }
+            StringBuilder section = new StringBuilder();
+            appendSections(section, query.type, List.of(doc));
+            int cost = TokenEstimator.estimate(section);
+            if (used + cost <= budget) {
+                selectedDocs.add(doc);
+                used += cost;
+            }
+        }
 
         if (selectedDocs.isEmpty()) {
             return "No relevant context found.";
         }
 
+        appendSections(context, query.type, selectedDocs);
+
+        // Add summary of sources
+        context.append("\n--- SOURCE SUMMARY ---\n");
+        Set<String> sources = selectedDocs.stream()
+                .map(doc -> (String) doc.metadata.get("file_name"))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        context.append("Sources consulted: ").append(String.join(", ", sources));
+
+        log.debug("Document context: {} of {} ranked documents, ~{} tokens", selectedDocs.size(), documents.size(), used);
+        return context.toString();
+    }
+
+    private void appendSections(StringBuilder context, QueryType type, List<EnhancedDocument> selectedDocs) {
         // Build context based on query type
-        switch (query.type) {
+        switch (type) {
             case CALCULATION:
                 context.append("CALCULATION RESOURCES:\n");
                 buildCalculationContext(context, selectedDocs);
@@ -482,16 +430,6 @@ public class DocumentContextService {
                 context.append("RELEVANT RESOURCES:\n");
                 buildGeneralContext(context, selectedDocs);
         }
-
-        // Add summary of sources
-        context.append("\n--- SOURCE SUMMARY ---\n");
-        Set<String> sources = selectedDocs.stream()
-                .map(doc -> (String) doc.metadata.get("file_name"))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-        context.append("Sources consulted: ").append(String.join(", ", sources));
-
-        return context.toString();
     }
 
     private void buildCalculationContext(StringBuilder context, List<EnhancedDocument> documents) {
@@ -499,23 +437,16 @@ public class DocumentContextService {
             String source = (String) doc.metadata.getOrDefault("file_name", "Knowledge Base");
             context.append("\nFrom: ").append(source).append("\n");
 
-            if (doc.hasFormulas) {
-                // Extract and highlight formulas
-                String formulaContent = extractFormulas(doc.content);
-                if (!formulaContent.isEmpty()) {
-                    context.append("Formulas and Calculations:\n").append(formulaContent).append("\n");
-                }
+            if (doc.hasFormulas && !doc.formulas.isEmpty()) {
+                context.append("Formulas and Calculations:\n").append(doc.formulas).append("\n");
             }
 
             // Add relevant content with emphasis on numerical data
             String relevantContent = extractRelevantContent(doc.content, 400);
             context.append("Context: ").append(relevantContent).append("\n");
 
-            if (doc.hasNumbers) {
-                String numericalData = extractNumericalData(doc.content);
-                if (!numericalData.isEmpty()) {
-                    context.append("Key Values: ").append(numericalData).append("\n");
-                }
+            if (doc.hasNumbers && !doc.numericalValues.isEmpty()) {
+                context.append("Key Values: ").append(doc.numericalValues).append("\n");
             }
 
             context.append("---\n");
@@ -527,11 +458,8 @@ public class DocumentContextService {
             String source = (String) doc.metadata.getOrDefault("file_name", "Knowledge Base");
             context.append("\nFrom: ").append(source).append("\n");
 
-            if (doc.hasProcedures) {
-                String procedures = extractProcedures(doc.content);
-                if (!procedures.isEmpty()) {
-                    context.append("Procedures:\n").append(procedures).append("\n");
-                }
+            if (doc.hasProcedures && !doc.procedures.isEmpty()) {
+                context.append("Procedures:\n").append(doc.procedures).append("\n");
             }
 
             String relevantContent = extractRelevantContent(doc.content, 500);
@@ -578,10 +506,8 @@ public class DocumentContextService {
             String source = (String) doc.metadata.getOrDefault("file_name", "Knowledge Base");
             context.append("\nFrom: ").append(source).append("\n");
 
-            // Look for recommendation indicators
-            String recommendations = extractRecommendations(doc.content);
-            if (!recommendations.isEmpty()) {
-                context.append("Recommendations:\n").append(recommendations).append("\n");
+            if (!doc.recommendations.isEmpty()) {
+                context.append("Recommendations:\n").append(doc.recommendations).append("\n");
             }
 
             String relevantContent = extractRelevantContent(doc.content, 400);
@@ -599,72 +525,6 @@ public class DocumentContextService {
         }
     }
 
-    private String extractFormulas(String content) {
-        StringBuilder formulas = new StringBuilder();
-        Matcher matcher = formulaPattern.matcher(content);
-
-        while (matcher.find() && formulas.length() < 500) {
-            formulas.append("• ").append(matcher.group().trim()).append("\n");
-        }
-
-        return formulas.toString();
-    }
-
-    private String extractNumericalData(String content) {
-        StringBuilder numbers = new StringBuilder();
-        Matcher matcher = numberPattern.matcher(content);
-        Set<String> uniqueNumbers = new HashSet<>();
-
-        while (matcher.find() && uniqueNumbers.size() < 10) {
-            String number = matcher.group().trim();
-            if (uniqueNumbers.add(number)) {
-                numbers.append(number).append(", ");
-            }
-        }
-
-        String result = numbers.toString();
-        return result.endsWith(", ") ? result.substring(0, result.length() - 2) : result;
-    }
-
-    private String extractProcedures(String content) {
-        StringBuilder procedures = new StringBuilder();
-        Matcher matcher = procedurePattern.matcher(content);
-
-        while (matcher.find() && procedures.length() < 800) {
-            procedures.append("• ").append(matcher.group().trim()).append("\n");
-        }
-
-        // Also look for numbered lists
-        String[] lines = content.split("\n");
-        for (String line : lines) {
-            if (line.trim().matches("^\\d+\\.\\s+.+") && procedures.length() < 800) {
-                procedures.append("• ").append(line.trim()).append("\n");
-            }
-        }
-
-        return procedures.toString();
-    }
-
-    private String extractRecommendations(String content) {
-        StringBuilder recommendations = new StringBuilder();
-        String[] recommendationIndicators = {
-                "recommend", "suggest", "should", "best practice", "advised", "optimal"
-        };
-
-        String[] sentences = content.split("\\.");
-        for (String sentence : sentences) {
-            String lowerSentence = sentence.toLowerCase();
-            for (String indicator : recommendationIndicators) {
-                if (lowerSentence.contains(indicator) && recommendations.length() < 600) {
-                    recommendations.append("• ").append(sentence.trim()).append(".\n");
-                    break;
-                }
-            }
-        }
-
-        return recommendations.toString();
-    }
-
     private String extractRelevantContent(String content, int maxLength) {
         if (content == null || content.trim().isEmpty()) {
             return "No content available";
@@ -735,6 +595,7 @@ public class DocumentContextService {
         String query;
         QueryType type;
         List<String> concepts = new ArrayList<>();
+        Set<String> queryTerms = new HashSet<>();
         String domain;
         QueryComplexity complexity;
     }
@@ -750,6 +611,12 @@ public class DocumentContextService {
         boolean hasProcedures;
         int wordCount;
         Set<String> keyTerms = new HashSet<>();
+        Set<String> matchedTerms = new HashSet<>();
+        int termOverlap;
+        String formulas = "";
+        String numericalValues = "";
+        String procedures = "";
+        String recommendations = "";
         double relevanceScore;
     }
 
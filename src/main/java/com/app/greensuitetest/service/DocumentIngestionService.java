@@ -1,39 +1,86 @@
 package com.app.greensuitetest.service;
 
-import jakarta.annotation.PostConstruct;
+import com.app.greensuitetest.model.IngestionManifest;
+import com.app.greensuitetest.repository.IngestionManifestRepository;
+import com.app.greensuitetest.service.ingestion.DocumentIngestionPipeline;
+import com.app.greensuitetest.service.ingestion.IngestionProgress;
+import com.app.greensuitetest.util.KeywordAutomaton;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.reader.pdf.PagePdfDocumentReader;
-import org.springframework.ai.reader.pdf.config.PdfDocumentReaderConfig;
-import org.springframework.ai.reader.ExtractedTextFormatter;
 import org.springframework.ai.reader.tika.TikaDocumentReader;
 
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
 import org.springframework.ai.transformer.splitter.TextSplitter;
 import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.util.StringUtils;
 
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class DocumentIngestionService {
 
+    // Bump when chunking or chunk metadata changes so every file is rewritten on the next run
+    public static final int PIPELINE_VERSION = 3;
+
+    // Corpus chunks from classpath:/docs belong to every tenant
+    private static final Map<String, Object> CORPUS_SCOPE =
+            Map.of(HybridRetrievalService.TENANT_KEY, HybridRetrievalService.GLOBAL_TENANT);
+
+    // Chunk domains in priority order (the first with any hit wins) and the topic terms, matched in one pass
+    private static final List<String> DOCUMENT_DOMAINS =
+            List.of("carbon_management", "energy", "waste_management", "supply_chain", "esg_reporting");
+    private static final String TOPIC = "topic";
+    private static final KeywordAutomaton DOCUMENT_KEYWORDS = KeywordAutomaton.builder()
+            .add("carbon_management", "carbon", "emission", "greenhouse", "co2", "climate")
+            .add("energy", "energy", "renewable", "solar", "wind", "electricity")
+            .add("waste_management", "waste", "recycling", "circular", "disposal")
+            .add("supply_chain", "supply", "chain", "procurement", "vendor")
+            .add("esg_reporting", "esg", "sustainability", "reporting", "compliance")
+            .add(TOPIC, "carbon footprint", "emissions", "renewable energy", "sustainability",
+                    "esg", "environmental", "green", "climate", "waste", "recycling",
+                    "circular economy", "supply chain", "biodiversity", "water management")
+            .build();
+
     private final VectorStore vectorStore;
+    private final HybridRetrievalService hybridRetrievalService;
+    private final ChunkFeatureExtractor chunkFeatureExtractor;
+    private final IngestionManifestRepository ingestionManifestRepository;
+    private final VectorStoreStatisticsService vectorStoreStatisticsService;
     private final PathMatchingResourcePatternResolver resourceResolver = new PathMatchingResourcePatternResolver();
 
     @Value("${app.document.ingestion.enabled:true}")
@@ -42,9 +89,6 @@ public class DocumentIngestionService {
     @Value("${app.document.ingestion.force-reingest:false}")
     private boolean forceReingest;
 
-    @Value("${app.document.ingestion.batch-size:50}")
-    private int batchSize;
-
     @Value("${app.document.ingestion.max-retries:3}")
     private int maxRetries;
 
@@ -54,11 +98,37 @@ public class DocumentIngestionService {
     @Value("${app.document.ingestion.chunk-overlap:200}")
     private int chunkOverlap;
 
-    // Document processing statistics
-    private final Map<String, Object> ingestionStats = new HashMap<>();
-    private final AtomicInteger totalProcessed = new AtomicInteger(0);
-    private final AtomicInteger totalFailed = new AtomicInteger(0);
-    private final AtomicInteger totalSkipped = new AtomicInteger(0);
+    @Value("${app.document.ingestion.parser-threads:0}")
+    private int parserThreads;
+
+    @Value("${app.document.ingestion.writer-threads:4}")
+    private int writerThreads;
+
+    @Value("${app.document.ingestion.embedding-batch-size:32}")
+    private int embeddingBatchSize;
+
+    @Value("${app.document.ingestion.queue-capacity:256}")
+    private int queueCapacity;
+
+    // Thread-safe progress of the current (or last) ingestion run
+    private final IngestionProgress progress = new IngestionProgress();
+
+    // Reconcile state of the current run; only replaced while performEnhancedIngestion holds the lock
+    private volatile Map<String, IngestionManifest> previousManifests = Map.of();
+    private volatile boolean legacyCleanup;
+    private final Map<String, IngestionManifest> pendingManifests = new ConcurrentHashMap<>();
+    private final Set<String> failedSources = ConcurrentHashMap.newKeySet();
+
+    public enum WarmupState { PENDING, WARMING, READY, FAILED }
+
+    private volatile WarmupState warmupState = WarmupState.PENDING;
+
+    // Runs ingestion off the caller's thread; one run at a time
+    private final ExecutorService ingestionCoordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingestion-coordinator");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     // Supported file patterns
     private final List<String> supportedPatterns = Arrays.asList(
@@ -69,77 +139,136 @@ public class DocumentIngestionService {
             "classpath:/docs/*.md"
     );
 
-    @PostConstruct
+    /**
+     * Warms the retrieval index once the application is serving: reconciles the corpus (or rebuilds a
+     * missing keyword index) on the ingestion thread, so startup never waits on Ollama or Atlas. Until this finishes
+     * the retrieval health indicator reports DEGRADED.
+     */
+    @EventListener(ApplicationReadyEvent.class)
     public void ingestDocuments() {
-        if (!ingestionEnabled) {
-            log.info("Document ingestion is disabled");
-            return;
-        }
-
-        log.info("Starting enhanced document ingestion process...");
-
-        try {
-            performEnhancedIngestion();
-        } catch (Exception e) {
-            log.error("Critical error in document ingestion process: {}", e.getMessage(), e);
-        }
+        warmupState = WarmupState.WARMING;
+        ingestionCoordinator.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                // Before the ingestion gate, so stores that are never reconciled still get their legacy chunks tagged
+                hybridRetrievalService.backfillTenants();
+                if (ingestionEnabled) {
+                    log.info("Starting background document ingestion...");
+                    performEnhancedIngestion();
+                } else {
+                    log.info("Document ingestion is disabled");
+                    hybridRetrievalService.rebuildKeywordIndexIfEmpty();
+                }
+                warmupState = progress.getStatus() == IngestionProgress.Status.FAILED ? WarmupState.FAILED : WarmupState.READY;
+                log.info("Retrieval index warm-up finished in {}ms ({})", System.currentTimeMillis() - start, warmupState);
+            } catch (Exception e) {
+                warmupState = WarmupState.FAILED;
+                log.error("Critical error in document ingestion process: {}", e.getMessage(), e);
+            }
+        });
     }
 
-    private void performEnhancedIngestion() {
-        // Initialize statistics
-        initializeIngestionStats();
-
-        // Check if documents already exist (unless force reingest is enabled)
-        if (!forceReingest && documentsAlreadyExist()) {
-            log.info("Documents already exist in vector store. Skipping ingestion. Set app.document.ingestion.force-reingest=true to force re-ingestion.");
-            return;
-        }
-
+    /**
+     * Reconciles the vector store with {@code classpath:/docs}: unchanged files are skipped by content
+     * hash, changed files only embed chunks that are new, chunks and files that disappeared are deleted.
+     * With force-reingest every chunk is rewritten; ids are deterministic, so this replaces rather than
+     * duplicates vectors.
+     */
+    private synchronized void performEnhancedIngestion() {
         List<Resource> allResources = collectAllDocuments();
         if (allResources.isEmpty()) {
             log.warn("No documents found for ingestion");
             return;
         }
 
-        log.info("Found {} documents for processing", allResources.size());
-
-        List<Document> allProcessedDocuments = new ArrayList<>();
-
-        // Process documents in batches to manage memory
-        for (int i = 0; i < allResources.size(); i += batchSize) {
-            int endIndex = Math.min(i + batchSize, allResources.size());
-            List<Resource> batch = allResources.subList(i, endIndex);
-
-            log.info("Processing batch {}/{} ({} documents)",
-                    (i / batchSize) + 1,
-                    (allResources.size() + batchSize - 1) / batchSize,
-                    batch.size());
+        beginReconcile();
+        if (forceReingest || legacyCleanup) {
+            hybridRetrievalService.clearKeywordIndex();
+        } else {
+            hybridRetrievalService.rebuildKeywordIndexIfEmpty();
+        }
 
-            List<Document> batchDocuments = processBatch(batch);
-            allProcessedDocuments.addAll(batchDocuments);
+        log.info("Found {} documents for reconciliation ({} with a manifest)", allResources.size(), previousManifests.size());
 
-            // Add batch to vector store immediately to prevent memory issues
-            if (!batchDocuments.isEmpty()) {
-                addDocumentsToVectorStore(batchDocuments);
-                log.info("Added {} documents from current batch to vector store", batchDocuments.size());
-            }
+        DocumentIngestionPipeline pipeline = new DocumentIngestionPipeline(
+                parserThreads, writerThreads, embeddingBatchSize, queueCapacity);
+        boolean failed = false;
+        try {
+            pipeline.run(allResources, this::produceChunks, this::writeBatch, progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            progress.addError("Ingestion interrupted");
+            failed = true;
+        } finally {
+            finishReconcile(allResources, failed);
+            progress.finish(failed);
         }
 
+        hybridRetrievalService.saveKeywordIndex();
+
         // Log final statistics
         logFinalStatistics();
     }
 
-    private void initializeIngestionStats() {
-        ingestionStats.put("start_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        ingestionStats.put("total_files_found", 0);
-        ingestionStats.put("successful_files", 0);
-        ingestionStats.put("failed_files", 0);
-        ingestionStats.put("skipped_files", 0);
-        ingestionStats.put("total_chunks_created", 0);
-        ingestionStats.put("errors", new ArrayList<String>());
-        totalProcessed.set(0);
-        totalFailed.set(0);
-        totalSkipped.set(0);
+    private void beginReconcile() {
+        Map<String, IngestionManifest> manifests = new HashMap<>();
+        ingestionManifestRepository.findAll().forEach(manifest -> manifests.put(manifest.getSource(), manifest));
+        previousManifests = manifests;
+        pendingManifests.clear();
+        failedSources.clear();
+
+        // Chunks written before manifests existed have random ids and cannot be matched, so they are replaced once
+        legacyCleanup = manifests.isEmpty() && documentsAlreadyExist();
+        if (legacyCleanup) {
+            log.info("Vector store has chunks without an ingestion manifest; they will be replaced per source file");
+        }
+    }
+
+    private void finishReconcile(List<Resource> resources, boolean failed) {
+        LocalDateTime now = LocalDateTime.now();
+        for (IngestionManifest manifest : pendingManifests.values()) {
+            IngestionManifest previous = previousManifests.get(manifest.getSource());
+            if (failed || failedSources.contains(manifest.getSource())) {
+                // Some writes may be missing: record every id that might exist, but no hash, so the next run retries the file
+                Set<String> knownIds = new LinkedHashSet<>(manifest.getChunkIds());
+                if (previous != null) {
+                    knownIds.addAll(previous.getChunkIds());
+                }
+                manifest.setFileHash(null);
+                manifest.setChunkIds(new ArrayList<>(knownIds));
+            }
+            if (previous != null) {
+                manifest.setCreatedAt(previous.getCreatedAt());
+            }
+            manifest.setUpdatedAt(now);
+        }
+        try {
+            ingestionManifestRepository.saveAll(pendingManifests.values());
+        } catch (Exception e) {
+            log.error("Failed to save ingestion manifests: {}", e.getMessage());
+            progress.addError("Manifest save failed: " + e.getMessage());
+        }
+
+        if (failed) {
+            return;
+        }
+        Set<String> presentSources = resources.stream()
+                .map(Resource::getFilename)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        for (IngestionManifest removed : previousManifests.values()) {
+            if (presentSources.contains(removed.getSource())) {
+                continue;
+            }
+            try {
+                deleteChunks(removed.getChunkIds());
+                ingestionManifestRepository.deleteById(removed.getSource());
+                log.info("Removed {} chunks of deleted document '{}'", removed.getChunkIds().size(), removed.getSource());
+            } catch (Exception e) {
+                log.warn("Failed to remove chunks of deleted document '{}': {}", removed.getSource(), e.getMessage());
+                progress.addError("Cleanup failed for " + removed.getSource() + ": " + e.getMessage());
+            }
+        }
     }
 
     private List<Resource> collectAllDocuments() {
@@ -154,47 +283,191 @@ public class DocumentIngestionService {
                 }
             } catch (Exception e) {
                 log.warn("Error collecting documents for pattern '{}': {}", pattern, e.getMessage());
-                addErrorToStats("Pattern collection error for " + pattern + ": " + e.getMessage());
+                progress.addError("Pattern collection error for " + pattern + ": " + e.getMessage());
             }
         }
 
-        ingestionStats.put("total_files_found", allResources.size());
         return allResources;
     }
 
-    private List<Document> processBatch(List<Resource> batch) {
-        List<Document> batchDocuments = new ArrayList<>();
+    private DocumentIngestionPipeline.Outcome produceChunks(Resource resource, Consumer<Document> sink) throws IOException {
+        String source = resource.getFilename();
+        String fileHash = hashFile(resource);
+        IngestionManifest previous = previousManifests.get(source);
+        if (!forceReingest && previous != null && previous.isUpToDate(fileHash, PIPELINE_VERSION)) {
+            return DocumentIngestionPipeline.Outcome.UNCHANGED;
+        }
+        if (previous == null && legacyCleanup) {
+            deleteLegacyChunks(source);
+        }
+
+        // Chunks of a completely written file that kept their content are left alone; anything else is (re)written
+        boolean reusable = previous != null && !forceReingest
+                && previous.getFileHash() != null && previous.getPipelineVersion() == PIPELINE_VERSION;
+        Set<String> keep = reusable ? new HashSet<>(previous.getChunkIds()) : Set.of();
 
-        for (Resource resource : batch) {
-            try {
-                List<Document> documentsFromFile = processDocumentWithRetry(resource);
-                if (!documentsFromFile.isEmpty()) {
-                    batchDocuments.addAll(documentsFromFile);
-                    totalProcessed.incrementAndGet();
-                    log.debug("Successfully processed '{}' - extracted {} chunks",
-                            resource.getFilename(), documentsFromFile.size());
-                } else {
-                    log.warn("No content extracted from '{}'", resource.getFilename());
-                    totalSkipped.incrementAndGet();
+        // Chunks stream out page by page; ids that were already handed on are not emitted again on retry
+        Set<String> emitted = new HashSet<>();
+        List<String> chunkIds;
+        try {
+            chunkIds = streamChunksWithRetry(resource, source, CORPUS_SCOPE, chunk -> {
+                if (!keep.contains(chunk.getId()) && emitted.add(chunk.getId())) {
+                    sink.accept(chunk);
                 }
-            } catch (Exception e) {
-                log.error("Failed to process document '{}' after all retries: {}",
-                        resource.getFilename(), e.getMessage());
-                totalFailed.incrementAndGet();
-                addErrorToStats("Failed to process " + resource.getFilename() + ": " + e.getMessage());
-                // Continue processing other files - this is the key improvement
+            });
+        } catch (RuntimeException e) {
+            if (!emitted.isEmpty()) {
+                // Part of the file was written; remember those ids so the next run can clean them up
+                failedSources.add(source);
+                pendingManifests.put(source, buildManifest(source, null, resource, new ArrayList<>(emitted)));
+            }
+            throw e;
+        }
+
+        if (previous != null) {
+            Set<String> current = new HashSet<>(chunkIds);
+            deleteChunks(previous.getChunkIds().stream().filter(id -> !current.contains(id)).toList());
+        }
+        pendingManifests.put(source, buildManifest(source, fileHash, resource, chunkIds));
+
+        return chunkIds.isEmpty() ? DocumentIngestionPipeline.Outcome.EMPTY : DocumentIngestionPipeline.Outcome.PROCESSED;
+    }
+
+    /**
+     * Ingests one uploaded file into a company's knowledge base through the same page-streaming,
+     * backpressured pipeline as the corpus. Chunks are tagged with the company and document id; the
+     * ids of the chunks that were written are returned so the caller can track or roll them back.
+     * Failures are reported through {@code jobProgress}.
+     */
+    public List<String> ingestTenantDocument(Resource resource, String companyId, String documentId, String filename,
+                                             IngestionProgress jobProgress) throws InterruptedException {
+        String source = companyId + "/" + documentId;
+        Map<String, Object> scope = Map.of(
+                HybridRetrievalService.TENANT_KEY, companyId,
+                "document_id", documentId,
+                "source", source,
+                "file_name", filename);
+
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        DocumentIngestionPipeline pipeline = new DocumentIngestionPipeline(1, writerThreads, embeddingBatchSize, queueCapacity);
+        try {
+            pipeline.run(List.of(resource), (file, sink) -> {
+                Set<String> emitted = new HashSet<>();
+                List<String> chunkIds = streamChunksWithRetry(file, source, scope, chunk -> {
+                    if (emitted.add(chunk.getId())) {
+                        sink.accept(chunk);
+                    }
+                });
+                return chunkIds.isEmpty() ? DocumentIngestionPipeline.Outcome.EMPTY : DocumentIngestionPipeline.Outcome.PROCESSED;
+            }, batch -> {
+                addDocumentsToVectorStore(batch);
+                batch.forEach(chunk -> written.add(chunk.getId()));
+            }, jobProgress);
+        } finally {
+            jobProgress.finish(jobProgress.hasFailures());
+            hybridRetrievalService.saveKeywordIndex(companyId);
+        }
+        return new ArrayList<>(written);
+    }
+
+    private IngestionManifest buildManifest(String source, String fileHash, Resource resource, List<String> chunkIds) throws IOException {
+        return IngestionManifest.builder()
+                .source(source)
+                .fileHash(fileHash)
+                .pipelineVersion(PIPELINE_VERSION)
+                .fileSize(resource.contentLength())
+                .chunkIds(chunkIds)
+                .chunkCount(chunkIds.size())
+                .build();
+    }
+
+    /**
+     * Gives a chunk an id derived from its source and content, so an unchanged chunk keeps its id
+     * across runs and rewriting it replaces the stored vector.
+     */
+    private Document withChunkId(String source, Document chunk, Map<String, Integer> occurrences) {
+        String contentHash = sha256(chunk.getText() != null ? chunk.getText() : "");
+        int occurrence = occurrences.merge(contentHash, 1, Integer::sum);
+        String key = source + ":" + contentHash + (occurrence > 1 ? ":" + occurrence : "");
+        Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+        metadata.put("content_hash", contentHash);
+        return Document.builder()
+                .id(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString())
+                .text(chunk.getText())
+                .metadata(metadata)
+                .build();
+    }
+
+    private void deleteChunks(List<String> chunkIds) {
+        if (chunkIds.isEmpty()) {
+            return;
+        }
+        vectorStore.delete(chunkIds);
+        hybridRetrievalService.removeChunks(chunkIds);
+        progress.chunksDeleted(chunkIds.size());
+    }
+
+    private void deleteLegacyChunks(String source) {
+        try {
+            vectorStore.delete(new FilterExpressionBuilder().eq("source", source).build());
+            log.debug("Deleted legacy chunks of '{}'", source);
+        } catch (Exception e) {
+            log.warn("Could not delete legacy chunks of '{}', they may be duplicated: {}", source, e.getMessage());
+        }
+    }
+
+    private void writeBatch(List<Document> batch) throws InterruptedException {
+        try {
+            addDocumentsToVectorStore(batch);
+        } catch (RuntimeException e) {
+            batch.forEach(chunk -> failedSources.add(String.valueOf(chunk.getMetadata().get("source"))));
+            throw e;
+        }
+    }
+
+    private String hashFile(Resource resource) throws IOException {
+        MessageDigest digest = newSha256();
+        try (InputStream in = resource.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
             }
         }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String sha256(String text) {
+        return HexFormat.of().formatHex(newSha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
 
-        return batchDocuments;
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
-    private List<Document> processDocumentWithRetry(Resource resource) {
+    /**
+     * Streams the chunks of {@code resource} to {@code sink} and returns the ids of all of them in order.
+     * {@code scope} metadata (tenant, source) is stamped on every chunk before its id is derived.
+     */
+    private List<String> streamChunksWithRetry(Resource resource, String source, Map<String, Object> scope,
+                                               Consumer<Document> sink) {
         Exception lastException = null;
 
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            List<String> chunkIds = new ArrayList<>();
+            Map<String, Integer> occurrences = new HashMap<>();
             try {
-                return processDocument(resource);
+                processDocument(resource, chunk -> {
+                    chunk.getMetadata().putAll(scope);
+                    Document identified = withChunkId(source, chunk, occurrences);
+                    chunkIds.add(identified.getId());
+                    sink.accept(identified);
+                });
+                return chunkIds;
             } catch (Exception e) {
                 lastException = e;
                 log.warn("Attempt {}/{} failed for '{}': {}",
@@ -215,69 +488,80 @@ public class DocumentIngestionService {
         throw new RuntimeException("Failed after " + maxRetries + " attempts", lastException);
     }
 
-    private List<Document> processDocument(Resource resource) {
+    private void processDocument(Resource resource, Consumer<Document> chunkSink) {
         String filename = resource.getFilename();
         if (filename == null) {
             throw new IllegalArgumentException("Resource has no filename");
         }
 
         String fileExtension = getFileExtension(filename).toLowerCase();
+        TextSplitter splitter = createEnhancedTextSplitter();
+        AtomicInteger chunkIndex = new AtomicInteger();
+        Consumer<Document> pageSink = page -> chunkPage(page, resource, splitter, chunkIndex, chunkSink);
 
-        try {
-            List<Document> rawDocuments = readDocumentBasedOnType(resource, fileExtension);
-
-            if (rawDocuments.isEmpty()) {
-                log.warn("No content extracted from '{}'", filename);
-                return new ArrayList<>();
-            }
-
-            return processAndChunkDocuments(rawDocuments, resource);
-
-        } catch (Exception e) {
-            log.error("Error processing document '{}': {}", filename, e.getMessage());
-            throw new RuntimeException("Document processing failed for " + filename, e);
-        }
-    }
-
-    private List<Document> readDocumentBasedOnType(Resource resource, String fileExtension) {
         try {
             switch (fileExtension) {
                 case "pdf":
-                    return readPdfDocument(resource);
+                    readPdfPages(resource, pageSink);
+                    break;
                 case "txt":
                 case "md":
-                    return readTextDocument(resource);
+                    readTextDocument(resource).forEach(pageSink);
+                    break;
                 case "docx":
                 case "doc":
-                    return readOfficeDocument(resource);
+                    readOfficeDocument(resource).forEach(pageSink);
+                    break;
                 default:
-                    log.warn("Unsupported file type: {} for file: {}", fileExtension, resource.getFilename());
-                    return new ArrayList<>();
+                    log.warn("Unsupported file type: {} for file: {}", fileExtension, filename);
             }
         } catch (Exception e) {
-            log.error("Failed to read document '{}' of type '{}': {}",
-                    resource.getFilename(), fileExtension, e.getMessage());
-            throw e;
+            log.error("Error processing document '{}': {}", filename, e.getMessage());
+            throw new RuntimeException("Document processing failed for " + filename, e);
         }
+        log.debug("Processed '{}' into {} chunks", filename, chunkIndex.get());
     }
 
-    private List<Document> readPdfDocument(Resource resource) {
+    /**
+     * Reads a PDF one page at a time and hands each page on before extracting the next, so memory
+     * stays proportional to a page rather than the document. Parsed streams are cached in temp files
+     * instead of on the heap.
+     */
+    private void readPdfPages(Resource resource, Consumer<Document> pageSink) throws IOException {
+        Path tempCopy = null;
         try {
-            PdfDocumentReaderConfig config = PdfDocumentReaderConfig.builder()
-                    .withPageExtractedTextFormatter(
-                            ExtractedTextFormatter.builder()
-                                    .withNumberOfTopTextLinesToDelete(0)
-                                    .withNumberOfBottomTextLinesToDelete(0)
-                                    .build()
-                    )
-                    .withPagesPerDocument(1)
-                    .build();
-
-            PagePdfDocumentReader reader = new PagePdfDocumentReader(resource, config);
-            return reader.get();
-        } catch (Exception e) {
-            log.error("Failed to read PDF document '{}': {}", resource.getFilename(), e.getMessage());
-            throw new RuntimeException("PDF reading failed", e);
+            File file;
+            if (resource.isFile()) {
+                file = resource.getFile();
+            } else {
+                // Resources inside the jar have no file; PDFBox needs random access, so spool to disk
+                tempCopy = Files.createTempFile("ingest-", ".pdf");
+                try (InputStream in = resource.getInputStream()) {
+                    Files.copy(in, tempCopy, StandardCopyOption.REPLACE_EXISTING);
+                }
+                file = tempCopy.toFile();
+            }
+
+            try (PDDocument pdf = Loader.loadPDF(new RandomAccessReadBufferedFile(file), "", null, null,
+                    IOUtils.createTempFileOnlyStreamCache())) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                stripper.setSortByPosition(true);
+                int pages = pdf.getNumberOfPages();
+                for (int page = 1; page <= pages; page++) {
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+                    String text = stripper.getText(pdf);
+
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("page_number", page);
+                    metadata.put("total_pages", pages);
+                    pageSink.accept(new Document(text, metadata));
+                }
+            }
+        } finally {
+            if (tempCopy != null) {
+                Files.deleteIfExists(tempCopy);
+            }
         }
     }
 
@@ -303,44 +587,32 @@ public class DocumentIngestionService {
         }
     }
 
-    private List<Document> processAndChunkDocuments(List<Document> rawDocuments, Resource resource) {
-        List<Document> processedDocuments = new ArrayList<>();
+    private void chunkPage(Document page, Resource resource, TextSplitter splitter, AtomicInteger chunkIndex,
+                           Consumer<Document> chunkSink) {
         String filename = resource.getFilename();
+        try {
+            // Clean and preprocess content
+            String cleanedContent = preprocessDocumentContent(extractDocumentContent(page));
 
-        // Create enhanced text splitter
-        TextSplitter splitter = createEnhancedTextSplitter();
-
-        for (Document doc : rawDocuments) {
-            try {
-                // Clean and preprocess content
-                String cleanedContent = preprocessDocumentContent(extractDocumentContent(doc));
-
-                if (!StringUtils.hasText(cleanedContent)) {
-                    log.warn("Document from '{}' has no meaningful content after preprocessing", filename);
-                    continue;
-                }
-
-                // Create a new document with cleaned content
-                Document cleanedDoc = new Document(cleanedContent, doc.getMetadata());
-
-                // Split into chunks
-                List<Document> chunks = splitter.apply(List.of(cleanedDoc));
-
-                // Enhance metadata for each chunk
-                for (int i = 0; i < chunks.size(); i++) {
-                    Document chunk = chunks.get(i);
-                    enhanceDocumentMetadata(chunk, resource, i, chunks.size());
-                    processedDocuments.add(chunk);
-                }
+            if (!StringUtils.hasText(cleanedContent)) {
+                log.debug("Page from '{}' has no meaningful content after preprocessing", filename);
+                return;
+            }
 
-            } catch (Exception e) {
-                log.warn("Failed to process individual document from '{}': {}", filename, e.getMessage());
-                // Continue with other documents in the file
+            // Split into chunks and enhance metadata for each chunk
+            List<Document> chunks = splitter.apply(List.of(new Document(cleanedContent, page.getMetadata())));
+            for (int i = 0; i < chunks.size(); i++) {
+                Document chunk = chunks.get(i);
+                enhanceDocumentMetadata(chunk, resource, chunkIndex.getAndIncrement(), i, chunks.size());
+                chunkSink.accept(chunk);
+            }
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw e;
             }
+            log.warn("Failed to process individual page from '{}': {}", filename, e.getMessage());
+            // Continue with other pages in the file
         }
-
-        log.debug("Processed '{}' into {} chunks", filename, processedDocuments.size());
-        return processedDocuments;
     }
 
     private TextSplitter createEnhancedTextSplitter() {
@@ -380,7 +652,7 @@ public class DocumentIngestionService {
         return content;
     }
 
-    private void enhanceDocumentMetadata(Document document, Resource resource, int chunkIndex, int totalChunks) {
+    private void enhanceDocumentMetadata(Document document, Resource resource, int chunkIndex, int pageChunkIndex, int pageChunks) {
         Map<String, Object> metadata = document.getMetadata();
 
         // Basic file information
@@ -390,7 +662,8 @@ public class DocumentIngestionService {
 
         // Chunk information
         metadata.put("chunk_index", chunkIndex);
-        metadata.put("total_chunks", totalChunks);
+        metadata.put("page_chunk_index", pageChunkIndex);
+        metadata.put("page_chunks", pageChunks);
         metadata.put("chunk_id", resource.getFilename() + "_chunk_" + chunkIndex);
 
         // Processing information
@@ -398,83 +671,54 @@ public class DocumentIngestionService {
         metadata.put("ingestion_date", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
         metadata.put("content_length", document.getText() != null ? document.getText().length() : 0);
 
-        // Content analysis
+        // Content analysis: every feature DocumentContextService needs at query time
         String content = document.getText() != null ? document.getText() : "";
-        metadata.put("word_count", content.split("\\s+").length);
-        metadata.put("has_numbers", content.matches(".*\\d.*"));
-        metadata.put("has_formulas", content.contains("=") || content.matches(".*\\b\\w+\\s*\\(.*\\).*"));
+        metadata.putAll(chunkFeatureExtractor.extractFeatures(content));
+
+        KeywordAutomaton.Matches keywordMatches = DOCUMENT_KEYWORDS.scan(content);
 
         // Domain classification
-        String domain = classifyDocumentDomain(content);
-        if (domain != null) {
-            metadata.put("domain", domain);
-        }
+        metadata.put("domain", classifyDocumentDomain(keywordMatches));
 
         // Extract key topics
-        Set<String> topics = extractKeyTopics(content);
+        List<String> topics = keywordMatches.keywords(TOPIC);
         if (!topics.isEmpty()) {
-            metadata.put("topics", new ArrayList<>(topics));
+            metadata.put("topics", topics);
         }
     }
 
-    private String classifyDocumentDomain(String content) {
-        String lowerContent = content.toLowerCase();
-
-        if (containsKeywords(lowerContent, Arrays.asList("carbon", "emission", "greenhouse", "co2", "climate"))) {
-            return "carbon_management";
-        } else if (containsKeywords(lowerContent, Arrays.asList("energy", "renewable", "solar", "wind", "electricity"))) {
-            return "energy";
-        } else if (containsKeywords(lowerContent, Arrays.asList("waste", "recycling", "circular", "disposal"))) {
-            return "waste_management";
-        } else if (containsKeywords(lowerContent, Arrays.asList("supply", "chain", "procurement", "vendor"))) {
-            return "supply_chain";
-        } else if (containsKeywords(lowerContent, Arrays.asList("esg", "sustainability", "reporting", "compliance"))) {
-            return "esg_reporting";
+    private String classifyDocumentDomain(KeywordAutomaton.Matches keywordMatches) {
+        for (String domain : DOCUMENT_DOMAINS) {
+            if (keywordMatches.contains(domain)) {
+                return domain;
+            }
         }
-
         return "general";
     }
 
-    private boolean containsKeywords(String content, List<String> keywords) {
-        return keywords.stream().anyMatch(content::contains);
-    }
-
-    private Set<String> extractKeyTopics(String content) {
-        Set<String> topics = new HashSet<>();
-        String lowerContent = content.toLowerCase();
-
-        // Sustainability topics
-        String[] sustainabilityTerms = {
-                "carbon footprint", "emissions", "renewable energy", "sustainability",
-                "esg", "environmental", "green", "climate", "waste", "recycling",
-                "circular economy", "supply chain", "biodiversity", "water management"
-        };
-
-        for (String term : sustainabilityTerms) {
-            if (lowerContent.contains(term)) {
-                topics.add(term);
-            }
+    private void addDocumentsToVectorStore(List<Document> documents) throws InterruptedException {
+        if (documents.isEmpty()) {
+            return;
         }
 
-        return topics;
-    }
-
-    private void addDocumentsToVectorStore(List<Document> documents) {
-        try {
-            if (documents.isEmpty()) {
+        RuntimeException lastException = null;
+        for (int attempt = 1; attempt <= maxRetries; attempt++) {
+            try {
+                // One call embeds the whole batch and bulk-inserts it
+                vectorStore.add(documents);
+                hybridRetrievalService.indexChunks(documents);
+                log.debug("Successfully added {} documents to vector store", documents.size());
                 return;
+            } catch (RuntimeException e) {
+                lastException = e;
+                log.warn("Vector store write attempt {}/{} failed for {} chunks: {}",
+                        attempt, maxRetries, documents.size(), e.getMessage());
+                if (attempt < maxRetries) {
+                    Thread.sleep(1000L * attempt);
+                }
             }
-
-            vectorStore.add(documents);
-            ingestionStats.put("total_chunks_created",
-                    (Integer) ingestionStats.get("total_chunks_created") + documents.size());
-
-            log.debug("Successfully added {} documents to vector store", documents.size());
-        } catch (Exception e) {
-            log.error("Failed to add documents to vector store: {}", e.getMessage(), e);
-            addErrorToStats("Vector store addition failed: " + e.getMessage());
-            throw new RuntimeException("Vector store addition failed", e);
         }
+        throw new RuntimeException("Vector store addition failed", lastException);
     }
 
     private String extractDocumentContent(Document doc) {
@@ -500,13 +744,7 @@ public class DocumentIngestionService {
 
     private boolean documentsAlreadyExist() {
         try {
-            List<Document> results = vectorStore.similaritySearch(
-                    SearchRequest.builder()
-                            .query("test")
-                            .topK(1)
-                            .build()
-            );
-            boolean hasDocuments = results != null && !results.isEmpty();
+            boolean hasDocuments = vectorStoreStatisticsService.countChunks() > 0;
             log.debug("Vector store contains documents: {}", hasDocuments);
             return hasDocuments;
         } catch (Exception e) {
@@ -515,27 +753,19 @@ public class DocumentIngestionService {
         }
     }
 
-    private void addErrorToStats(String error) {
-        @SuppressWarnings("unchecked")
-        List<String> errors = (List<String>) ingestionStats.get("errors");
-        errors.add(error);
-    }
-
     private void logFinalStatistics() {
-        ingestionStats.put("end_time", LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        ingestionStats.put("successful_files", totalProcessed.get());
-        ingestionStats.put("failed_files", totalFailed.get());
-        ingestionStats.put("skipped_files", totalSkipped.get());
-
+        Map<String, Object> stats = progress.snapshot();
         log.info("=== Document Ingestion Complete ===");
-        log.info("Total files found: {}", ingestionStats.get("total_files_found"));
-        log.info("Successfully processed: {}", totalProcessed.get());
-        log.info("Failed files: {}", totalFailed.get());
-        log.info("Skipped files: {}", totalSkipped.get());
-        log.info("Total chunks created: {}", ingestionStats.get("total_chunks_created"));
+        log.info("Total files found: {}", stats.get("total_files_found"));
+        log.info("Successfully processed: {}", stats.get("successful_files"));
+        log.info("Failed files: {}", stats.get("failed_files"));
+        log.info("Skipped files: {}", stats.get("skipped_files"));
+        log.info("Unchanged files: {}", stats.get("unchanged_files"));
+        log.info("Chunks deleted: {}", stats.get("chunks_deleted"));
+        log.info("Total chunks created: {} ({} chunks/s)", stats.get("total_chunks_created"), stats.get("chunks_per_second"));
 
         @SuppressWarnings("unchecked")
-        List<String> errors = (List<String>) ingestionStats.get("errors");
+        List<String> errors = (List<String>) stats.get("errors");
         if (!errors.isEmpty()) {
             log.warn("Errors encountered during ingestion:");
             errors.forEach(error -> log.warn("  - {}", error));
@@ -544,23 +774,30 @@ public class DocumentIngestionService {
 
     // Public methods for manual control and monitoring
 
-    @Async
+    public CompletableFuture<Map<String, Object>> reconcileDocumentsAsync() {
+        return runAsync(this::performEnhancedIngestion);
+    }
+
     public CompletableFuture<Map<String, Object>> forceReingestDocumentsAsync() {
-        log.info("Starting asynchronous document re-ingestion...");
-        boolean originalForceReingest = this.forceReingest;
-        this.forceReingest = true;
+        return runAsync(this::forceReingestDocuments);
+    }
 
-        try {
-            performEnhancedIngestion();
+    private CompletableFuture<Map<String, Object>> runAsync(Runnable ingestion) {
+        if (progress.isRunning()) {
             return CompletableFuture.completedFuture(getIngestionStats());
-        } catch (Exception e) {
-            log.error("Async re-ingestion failed: {}", e.getMessage(), e);
-            Map<String, Object> errorStats = new HashMap<>(ingestionStats);
-            errorStats.put("error", e.getMessage());
-            return CompletableFuture.completedFuture(errorStats);
-        } finally {
-            this.forceReingest = originalForceReingest;
         }
+        log.info("Starting asynchronous document re-ingestion...");
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                ingestion.run();
+                return getIngestionStats();
+            } catch (Exception e) {
+                log.error("Async re-ingestion failed: {}", e.getMessage(), e);
+                Map<String, Object> errorStats = getIngestionStats();
+                errorStats.put("error", e.getMessage());
+                return errorStats;
+            }
+        }, ingestionCoordinator);
     }
 
     public void forceReingestDocuments() {
@@ -574,27 +811,26 @@ public class DocumentIngestionService {
         }
     }
 
+    public WarmupState getWarmupState() {
+        return warmupState;
+    }
+
     public Map<String, Object> getIngestionStats() {
-        Map<String, Object> currentStats = new HashMap<>(ingestionStats);
-        currentStats.put("current_processed", totalProcessed.get());
-        currentStats.put("current_failed", totalFailed.get());
-        currentStats.put("current_skipped", totalSkipped.get());
-        return currentStats;
+        return progress.snapshot();
+    }
+
+    @PreDestroy
+    public void shutdownIngestion() {
+        ingestionCoordinator.shutdownNow();
     }
 
     public boolean isIngestionEnabled() {
         return ingestionEnabled;
     }
 
-    public int getDocumentCount() {
+    public long getDocumentCount() {
         try {
-            List<Document> results = vectorStore.similaritySearch(
-                    SearchRequest.builder()
-                            .query("*")
-                            .topK(1000) // Get more documents to count
-                            .build()
-            );
-            return results != null ? results.size() : 0;
+            return vectorStoreStatisticsService.countChunks();
         } catch (Exception e) {
             log.warn("Could not get document count: {}", e.getMessage());
             return -1;
@@ -602,47 +838,6 @@ public class DocumentIngestionService {
     }
 
     public Map<String, Object> getDetailedVectorStoreInfo() {
-        Map<String, Object> info = new HashMap<>();
-
-        try {
-            // Get sample documents to analyze metadata
-            List<Document> sampleDocs = vectorStore.similaritySearch(
-                    SearchRequest.builder()
-                            .query("sustainability")
-                            .topK(10)
-                            .build()
-            );
-
-            info.put("total_documents", getDocumentCount());
-            info.put("sample_size", sampleDocs.size());
-
-            if (!sampleDocs.isEmpty()) {
-                // Analyze document types
-                Map<String, Integer> typeCount = new HashMap<>();
-                Map<String, Integer> domainCount = new HashMap<>();
-
-                for (Document doc : sampleDocs) {
-                    String fileType = (String) doc.getMetadata().get("file_type");
-                    if (fileType != null) {
-                        typeCount.merge(fileType, 1, Integer::sum);
-                    }
-
-                    String domain = (String) doc.getMetadata().get("domain");
-                    if (domain != null) {
-                        domainCount.merge(domain, 1, Integer::sum);
-                    }
-                }
-
-                info.put("document_types", typeCount);
-                info.put("domain_distribution", domainCount);
-                info.put("sample_metadata_keys", sampleDocs.get(0).getMetadata().keySet());
-            }
-
-        } catch (Exception e) {
-            log.warn("Could not get detailed vector store info: {}", e.getMessage());
-            info.put("error", e.getMessage());
-        }
-
-        return info;
+        return vectorStoreStatisticsService.getStatistics();
     }
 }
\ No newline at end of file
@@ -0,0 +1,339 @@
+package com.app.greensuitetest.service;
+
+import com.app.greensuitetest.service.vector.Bm25Index;
+import com.app.greensuitetest.service.vector.LocalHnswVectorStore;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Fuses dense vector search with BM25 keyword search using reciprocal-rank fusion
+ * ({@code score = sum 1 / (k + rank)}), so exact terminology such as "scope 2" or "kWh"
+ * is not lost when embeddings rank it low.
+ * <p>
+ * Every returned chunk carries {@code vector_score}, {@code bm25_score}, {@code rrf_score} and
+ * {@code matched_terms} metadata; downstream context building uses these instead of re-tokenising text.
+ * <p>
+ * Retrieval is tenant-scoped: a caller sees the shared corpus ({@link #GLOBAL_TENANT}) plus its own
+ * company's uploads. The vector search pushes the {@code company_id} filter into the index, and each
+ * tenant has its own BM25 index, so other tenants' chunks are never scored. BM25 scores from different
+ * indexes are not comparable, so each tenant's keyword ranking enters the fusion as a list of its own.
+ */
+@Service
+@Slf4j
+public class HybridRetrievalService {
+
+    public static final String TENANT_KEY = "company_id";
+    public static final String GLOBAL_TENANT = "global";
+
+    private static final String TENANT_INDEX_DIRECTORY = "bm25-tenants";
+
+    private final VectorStore vectorStore;
+    private final MongoTemplate atlasMongoTemplate;
+    // tenant -> keyword index; the shared corpus lives under GLOBAL_TENANT
+    private final Map<String, Bm25Index> keywordIndexes = new ConcurrentHashMap<>();
+
+    @Value("${app.retrieval.bm25.index-path:data/bm25-index.bin}")
+    private String keywordIndexPath;
+
+    @Value("${app.retrieval.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${app.retrieval.hybrid-enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${spring.ai.vectorstore.mongodb.collection-name:green_suite-collect}")
+    private String collectionName;
+
+    public HybridRetrievalService(VectorStore vectorStore,
+                                  @Qualifier("atlasMongoTemplate") MongoTemplate atlasMongoTemplate) {
+        this.vectorStore = vectorStore;
+        this.atlasMongoTemplate = atlasMongoTemplate;
+    }
+
+    @PostConstruct
+    public void loadKeywordIndex() {
+        loadKeywordIndex(GLOBAL_TENANT, Path.of(keywordIndexPath));
+        Path tenantDirectory = tenantIndexDirectory();
+        if (Files.isDirectory(tenantDirectory)) {
+            try (Stream<Path> files = Files.list(tenantDirectory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".bin")).forEach(file -> {
+                    String name = file.getFileName().toString();
+                    String tenant = new String(HexFormat.of().parseHex(name.substring(0, name.length() - 4)), StandardCharsets.UTF_8);
+                    loadKeywordIndex(tenant, file);
+                });
+            } catch (Exception e) {
+                log.warn("Could not load tenant BM25 indexes from {}: {}", tenantDirectory, e.getMessage());
+            }
+        }
+    }
+
+    private void loadKeywordIndex(String tenant, Path file) {
+        try {
+            Bm25Index index = new Bm25Index();
+            if (index.load(file)) {
+                keywordIndexes.put(tenant, index);
+                log.info("Loaded BM25 index for '{}' with {} chunks and {} terms", tenant, index.size(), index.termCount());
+            }
+        } catch (Exception e) {
+            log.warn("Could not load BM25 index from {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Retrieves from the shared corpus and, when {@code companyId} is set, that company's own documents.
+     */
+    public List<Document> retrieve(String query, String companyId, int topK, double similarityThreshold, int limit) {
+        List<String> tenants = companyId != null && !companyId.isBlank()
+                ? List.of(GLOBAL_TENANT, companyId)
+                : List.of(GLOBAL_TENANT);
+
+        List<Document> vectorResults = vectorStore.similaritySearch(SearchRequest.builder()
+                .query(query)
+                .topK(topK)
+                .similarityThreshold(similarityThreshold)
+                .filterExpression(new FilterExpressionBuilder().in(TENANT_KEY, new ArrayList<Object>(tenants)).build())
+                .build());
+        if (vectorResults == null) {
+            vectorResults = List.of();
+        }
+
+        if (!hybridEnabled) {
+            return vectorResults.stream().limit(limit).toList();
+        }
+
+        Set<String> queryTerms = Bm25Index.queryTerms(query);
+        // Chunk ids are unique across tenants, so one map serves every tenant's hits
+        Map<String, Bm25Index.Hit> keywordHits = new HashMap<>();
+        List<List<Bm25Index.Hit>> keywordRankings = new ArrayList<>(tenants.size());
+        for (String tenant : tenants) {
+            Bm25Index index = keywordIndexes.get(tenant);
+            if (index == null || index.size() == 0) {
+                continue;
+            }
+            Map<String, Bm25Index.Hit> tenantHits = index.score(queryTerms);
+            if (!tenantHits.isEmpty()) {
+                keywordHits.putAll(tenantHits);
+                keywordRankings.add(tenantHits.values().stream()
+                        .sorted(Comparator.comparingDouble(Bm25Index.Hit::getScore).reversed())
+                        .limit(topK)
+                        .toList());
+            }
+        }
+        if (keywordRankings.isEmpty()) {
+            return vectorResults.stream().limit(limit).toList();
+        }
+
+        Map<String, Double> fused = new HashMap<>();
+        Map<String, Document> vectorById = new HashMap<>();
+        for (int rank = 0; rank < vectorResults.size(); rank++) {
+            Document document = vectorResults.get(rank);
+            vectorById.put(document.getId(), document);
+            fused.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+        for (List<Bm25Index.Hit> keywordRanking : keywordRankings) {
+            for (int rank = 0; rank < keywordRanking.size(); rank++) {
+                fused.merge(keywordRanking.get(rank).getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+
+        List<String> selectedIds = fused.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+
+        List<String> keywordOnlyIds = selectedIds.stream().filter(id -> !vectorById.containsKey(id)).toList();
+        Map<String, Document> hydrated = new HashMap<>(vectorById);
+        if (!keywordOnlyIds.isEmpty()) {
+            fetchChunks(keywordOnlyIds).forEach(document -> hydrated.put(document.getId(), document));
+        }
+
+        List<Document> results = new ArrayList<>(selectedIds.size());
+        for (String id : selectedIds) {
+            Document document = hydrated.get(id);
+            if (document == null) {
+                continue;
+            }
+            Bm25Index.Hit keywordHit = keywordHits.get(id);
+            Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+            metadata.put("vector_score", document.getScore() != null ? document.getScore() : 0.0);
+            metadata.put("bm25_score", keywordHit != null ? keywordHit.getScore() : 0.0);
+            metadata.put("rrf_score", fused.get(id));
+            metadata.put("matched_terms", keywordHit != null ? keywordHit.getMatchedTerms() : List.of());
+            results.add(Document.builder()
+                    .id(id)
+                    .text(document.getText())
+                    .metadata(metadata)
+                    .score(fused.get(id))
+                    .build());
+        }
+
+        log.debug("Hybrid retrieval for {}: {} vector, {} keyword, {} fused results",
+                tenants, vectorResults.size(), keywordRankings.stream().mapToInt(List::size).sum(), results.size());
+        return results;
+    }
+
+    // Keyword index maintenance, driven by DocumentIngestionService and KnowledgeBaseService
+
+    public static String tenantOf(Map<String, Object> metadata) {
+        Object tenant = metadata.get(TENANT_KEY);
+        return tenant != null ? String.valueOf(tenant) : GLOBAL_TENANT;
+    }
+
+    public void indexChunks(List<Document> chunks) {
+        for (Document chunk : chunks) {
+            keywordIndex(tenantOf(chunk.getMetadata())).add(chunk.getId(), chunk.getText());
+        }
+    }
+
+    public void removeChunks(Collection<String> chunkIds) {
+        keywordIndexes.values().forEach(index -> index.remove(chunkIds));
+    }
+
+    public void saveKeywordIndex() {
+        saveKeywordIndex(GLOBAL_TENANT);
+    }
+
+    public void saveKeywordIndex(String tenant) {
+        Bm25Index index = keywordIndexes.get(tenant);
+        if (index == null) {
+            return;
+        }
+        Path file = indexPath(tenant);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            index.snapshot(file);
+            log.info("BM25 index for '{}' saved: {} chunks, {} terms", tenant, index.size(), index.termCount());
+        } catch (Exception e) {
+            log.warn("Could not save BM25 index to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the keyword indexes from the chunks already in the vector store. Used when vectors exist
+     * but the BM25 snapshot is missing (e.g. first start after upgrading or a wiped data directory).
+     */
+    public void rebuildKeywordIndexIfEmpty() {
+        if (keywordIndex(GLOBAL_TENANT).size() > 0) {
+            return;
+        }
+        try {
+            if (vectorStore instanceof LocalHnswVectorStore localStore) {
+                localStore.forEachDocument(stored -> keywordIndex(tenantOf(stored.metadata())).add(stored.id(), stored.text()));
+            } else {
+                Query query = new Query();
+                query.fields().include("_id").include("content").include("metadata." + TENANT_KEY);
+                try (Stream<org.bson.Document> chunks = atlasMongoTemplate.stream(query, org.bson.Document.class, collectionName)) {
+                    chunks.forEach(chunk -> {
+                        org.bson.Document metadata = chunk.get("metadata", org.bson.Document.class);
+                        String tenant = metadata != null ? tenantOf(metadata) : GLOBAL_TENANT;
+                        keywordIndex(tenant).add(String.valueOf(chunk.get("_id")), chunk.getString("content"));
+                    });
+                }
+            }
+            log.info("Rebuilt BM25 indexes from vector store: {} tenants", keywordIndexes.size());
+            keywordIndexes.keySet().forEach(this::saveKeywordIndex);
+        } catch (Exception e) {
+            log.warn("Could not rebuild BM25 index, retrieval will be vector-only: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Tags chunks written before tenants existed with {@link #GLOBAL_TENANT}; the tenant filter matches on
+     * {@code company_id} and would otherwise never return them. Once every chunk is tagged this changes nothing.
+     */
+    public void backfillTenants() {
+        try {
+            long tagged;
+            if (vectorStore instanceof LocalHnswVectorStore localStore) {
+                tagged = localStore.backfillMetadata(TENANT_KEY, GLOBAL_TENANT);
+            } else {
+                Query untagged = new Query(Criteria.where("metadata." + TENANT_KEY).exists(false));
+                tagged = atlasMongoTemplate.updateMulti(untagged, Update.update("metadata." + TENANT_KEY, GLOBAL_TENANT),
+                        collectionName).getModifiedCount();
+            }
+            if (tagged > 0) {
+                log.info("Tagged {} chunks without a {} as {}", tagged, TENANT_KEY, GLOBAL_TENANT);
+            }
+        } catch (Exception e) {
+            log.warn("Could not tag chunks without a {}, tenant-filtered search will miss them: {}", TENANT_KEY, e.getMessage());
+        }
+    }
+
+    /**
+     * Clears the shared corpus index; tenant indexes are maintained by their uploads.
+     */
+    public void clearKeywordIndex() {
+        keywordIndex(GLOBAL_TENANT).clear();
+    }
+
+    public Map<String, Object> getKeywordIndexStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Bm25Index global = keywordIndex(GLOBAL_TENANT);
+        stats.put("chunks", keywordIndexes.values().stream().mapToInt(Bm25Index::size).sum());
+        stats.put("terms", global.termCount());
+        stats.put("tenants", keywordIndexes.size() - 1);
+        stats.put("hybridEnabled", hybridEnabled);
+        stats.put("rrfK", rrfK);
+        return stats;
+    }
+
+    private Bm25Index keywordIndex(String tenant) {
+        return keywordIndexes.computeIfAbsent(tenant, key -> new Bm25Index());
+    }
+
+    private Path tenantIndexDirectory() {
+        Path globalPath = Path.of(keywordIndexPath).toAbsolutePath();
+        return globalPath.getParent().resolve(TENANT_INDEX_DIRECTORY);
+    }
+
+    private Path indexPath(String tenant) {
+        if (GLOBAL_TENANT.equals(tenant)) {
+            return Path.of(keywordIndexPath);
+        }
+        // Hex keeps arbitrary tenant ids safe as file names
+        return tenantIndexDirectory().resolve(HexFormat.of().formatHex(tenant.getBytes(StandardCharsets.UTF_8)) + ".bin");
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Document> fetchChunks(List<String> ids) {
+        try {
+            if (vectorStore instanceof LocalHnswVectorStore localStore) {
+                return localStore.getDocuments(ids);
+            }
+
+            Query query = new Query(Criteria.where("_id").in(ids));
+            query.fields().include("_id").include("content").include("metadata");
+            List<Document> documents = new ArrayList<>();
+            for (org.bson.Document chunk : atlasMongoTemplate.find(query, org.bson.Document.class, collectionName)) {
+                Object metadata = chunk.get("metadata");
+                Map<String, Object> metadataMap = metadata instanceof Map<?, ?> map
+                        ? new HashMap<>((Map<String, Object>) map)
+                        : new HashMap<>();
+                documents.add(new Document(String.valueOf(chunk.get("_id")), chunk.getString("content"), metadataMap));
+            }
+            return documents;
+        } catch (Exception e) {
+            log.warn("Could not load keyword-only chunks {}: {}", ids, e.getMessage());
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.app.greensuitetest.service;
+
+import com.app.greensuitetest.constants.KnowledgeDocumentStatus;
+import com.app.greensuitetest.exception.EntityNotFoundException;
+import com.app.greensuitetest.exception.OperationNotAllowedException;
+import com.app.greensuitetest.exception.ValidationException;
+import com.app.greensuitetest.model.KnowledgeDocument;
+import com.app.greensuitetest.model.User;
+import com.app.greensuitetest.repository.KnowledgeDocumentRepository;
+import com.app.greensuitetest.service.ingestion.IngestionProgress;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Company-owned knowledge bases: uploads are stored on disk, recorded as {@link KnowledgeDocument}
+ * jobs and ingested asynchronously into chunks tagged with the company's id. Callers poll the job
+ * for its status.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class KnowledgeBaseService {
+
+    private static final Set<String> SUPPORTED_EXTENSIONS = Set.of("pdf", "txt", "md", "doc", "docx");
+    private static final List<KnowledgeDocumentStatus> ACTIVE_STATUSES =
+            List.of(KnowledgeDocumentStatus.QUEUED, KnowledgeDocumentStatus.PROCESSING, KnowledgeDocumentStatus.COMPLETED);
+
+    private final KnowledgeDocumentRepository knowledgeDocumentRepository;
+    private final DocumentIngestionService documentIngestionService;
+    private final HybridRetrievalService hybridRetrievalService;
+    private final VectorStore vectorStore;
+
+    @Value("${app.knowledge-base.upload-directory:data/knowledge-base}")
+    private String uploadDirectory;
+
+    @Value("${app.knowledge-base.max-file-bytes:26214400}")
+    private long maxFileBytes;
+
+    @Value("${app.knowledge-base.worker-threads:2}")
+    private int workerThreads;
+
+    @Value("${app.knowledge-base.queue-capacity:50}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor workers;
+
+    @PostConstruct
+    public void startWorkers() {
+        AtomicInteger counter = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-ingest-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Re-queues jobs interrupted by a restart once the application is serving, so startup does not wait on Mongo.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<KnowledgeDocument> unfinished = knowledgeDocumentRepository.findByStatusIn(
+                List.of(KnowledgeDocumentStatus.QUEUED, KnowledgeDocumentStatus.PROCESSING));
+        int requeued = 0;
+        for (KnowledgeDocument document : unfinished) {
+            document.setStatus(KnowledgeDocumentStatus.QUEUED);
+            knowledgeDocumentRepository.save(document);
+            if (submit(document)) {
+                requeued++;
+            } else {
+                // Left QUEUED it would never run before the next restart; failed, it can be uploaded again
+                fail(document, "Ingestion queue was full when resuming after a restart; please upload the document again");
+                document.setCompletedAt(LocalDateTime.now());
+                knowledgeDocumentRepository.save(document);
+            }
+        }
+        if (!unfinished.isEmpty()) {
+            log.info("Re-queued {} of {} unfinished knowledge base uploads", requeued, unfinished.size());
+        }
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        workers.shutdownNow();
+    }
+
+    public KnowledgeDocument upload(MultipartFile file, User uploader) {
+        String companyId = uploader.getCompanyId();
+        if (companyId == null) {
+            throw new OperationNotAllowedException("User is not associated with a company");
+        }
+        if (file == null || file.isEmpty()) {
+            throw new ValidationException("File is empty", "file", "required");
+        }
+        if (file.getSize() > maxFileBytes) {
+            throw new ValidationException("File exceeds the upload limit", "maxFileBytes", maxFileBytes);
+        }
+        String filename = Path.of(Objects.requireNonNullElse(file.getOriginalFilename(), "document")).getFileName().toString();
+        String extension = getFileExtension(filename);
+        if (!SUPPORTED_EXTENSIONS.contains(extension)) {
+            throw new ValidationException("Unsupported file type", "supportedTypes", SUPPORTED_EXTENSIONS);
+        }
+
+        String documentId = UUID.randomUUID().toString();
+        Path target = Path.of(uploadDirectory, companyId, documentId + "." + extension);
+        String fileHash;
+        try {
+            fileHash = store(file, target);
+        } catch (IOException e) {
+            log.error("Failed to store upload '{}' for company {}: {}", filename, companyId, e.getMessage());
+            throw new OperationNotAllowedException("Could not store the uploaded file");
+        }
+
+        // The same file uploaded twice by one company is ingested once
+        Optional<KnowledgeDocument> existing = knowledgeDocumentRepository
+                .findFirstByCompanyIdAndFileHashAndStatusIn(companyId, fileHash, ACTIVE_STATUSES);
+        if (existing.isPresent()) {
+            deleteQuietly(target);
+            return existing.get();
+        }
+
+        KnowledgeDocument document = knowledgeDocumentRepository.save(KnowledgeDocument.builder()
+                .id(documentId)
+                .companyId(companyId)
+                .uploadedBy(uploader.getId())
+                .filename(filename)
+                .contentType(file.getContentType())
+                .fileSize(file.getSize())
+                .fileHash(fileHash)
+                .storagePath(target.toString())
+                .status(KnowledgeDocumentStatus.QUEUED)
+                .build());
+
+        if (!submit(document)) {
+            knowledgeDocumentRepository.delete(document);
+            deleteQuietly(target);
+            throw new OperationNotAllowedException("Too many documents are being processed, please try again shortly");
+        }
+        log.info("Queued knowledge base upload '{}' ({} bytes) for company {}", filename, file.getSize(), companyId);
+        return document;
+    }
+
+    public List<KnowledgeDocument> listDocuments(String companyId) {
+        return knowledgeDocumentRepository.findByCompanyIdOrderByCreatedAtDesc(companyId);
+    }
+
+    public KnowledgeDocument getDocument(String companyId, String documentId) {
+        return knowledgeDocumentRepository.findByIdAndCompanyId(documentId, companyId)
+                .orElseThrow(() -> new EntityNotFoundException("Knowledge base document not found"));
+    }
+
+    public void deleteDocument(String companyId, String documentId) {
+        KnowledgeDocument document = getDocument(companyId, documentId);
+        if (document.getStatus() == KnowledgeDocumentStatus.PROCESSING) {
+            throw new OperationNotAllowedException("Document is still being ingested");
+        }
+        removeChunks(document);
+        hybridRetrievalService.saveKeywordIndex(companyId);
+        deleteQuietly(Path.of(document.getStoragePath()));
+        knowledgeDocumentRepository.delete(document);
+        log.info("Deleted knowledge base document '{}' of company {}", document.getFilename(), companyId);
+    }
+
+    private boolean submit(KnowledgeDocument document) {
+        try {
+            workers.execute(() -> process(document.getId()));
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("Knowledge base ingestion queue is full, rejecting '{}'", document.getFilename());
+            return false;
+        }
+    }
+
+    private void process(String documentId) {
+        KnowledgeDocument document = knowledgeDocumentRepository.findById(documentId).orElse(null);
+        if (document == null) {
+            return;
+        }
+        document.setStatus(KnowledgeDocumentStatus.PROCESSING);
+        document.setStartedAt(LocalDateTime.now());
+        document.setError(null);
+        knowledgeDocumentRepository.save(document);
+
+        IngestionProgress progress = new IngestionProgress();
+        try {
+            List<String> chunkIds = documentIngestionService.ingestTenantDocument(
+                    new FileSystemResource(document.getStoragePath()), document.getCompanyId(),
+                    document.getId(), document.getFilename(), progress);
+            document.setChunkIds(chunkIds);
+            document.setChunkCount(chunkIds.size());
+
+            if (progress.hasFailures()) {
+                fail(document, String.join("; ", errorsOf(progress)));
+            } else if (chunkIds.isEmpty()) {
+                fail(document, "No text could be extracted from the document");
+            } else {
+                document.setStatus(KnowledgeDocumentStatus.COMPLETED);
+                log.info("Ingested '{}' for company {} into {} chunks", document.getFilename(), document.getCompanyId(), chunkIds.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Left in PROCESSING so the next start re-queues it
+            log.warn("Ingestion of '{}' interrupted", document.getFilename());
+            return;
+        } catch (Exception e) {
+            log.error("Ingestion of '{}' for company {} failed: {}", document.getFilename(), document.getCompanyId(), e.getMessage());
+            fail(document, e.getMessage());
+        }
+        document.setCompletedAt(LocalDateTime.now());
+        knowledgeDocumentRepository.save(document);
+    }
+
+    private void fail(KnowledgeDocument document, String error) {
+        // Partially written chunks would surface in retrieval, so a failed job leaves nothing behind
+        removeChunks(document);
+        document.setChunkIds(new ArrayList<>());
+        document.setChunkCount(0);
+        document.setStatus(KnowledgeDocumentStatus.FAILED);
+        document.setError(error);
+    }
+
+    private void removeChunks(KnowledgeDocument document) {
+        FilterExpressionBuilder filter = new FilterExpressionBuilder();
+        try {
+            vectorStore.delete(filter.and(
+                    filter.eq(HybridRetrievalService.TENANT_KEY, document.getCompanyId()),
+                    filter.eq("document_id", document.getId())).build());
+        } catch (Exception e) {
+            log.warn("Filtered delete failed for knowledge base document {}, deleting by id: {}", document.getId(), e.getMessage());
+            try {
+                if (!document.getChunkIds().isEmpty()) {
+                    vectorStore.delete(document.getChunkIds());
+                }
+            } catch (Exception retry) {
+                log.error("Could not delete chunks of knowledge base document {}: {}", document.getId(), retry.getMessage());
+            }
+        }
+        hybridRetrievalService.removeChunks(document.getChunkIds());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> errorsOf(IngestionProgress progress) {
+        return (List<String>) progress.snapshot().get("errors");
+    }
+
+    private String store(MultipartFile file, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private String getFileExtension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase();
+    }
+}
@@ -1,6 +1,7 @@
 package com.app.greensuitetest.service;
 
-import lombok.RequiredArgsConstructor;
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.Message;
@@ -16,16 +17,14 @@ import com.app.greensuitetest.exception.InsufficientCreditsException;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MaiPersonalityService {
 
     // Rin personality tracking (with Yukari's mature personality)
-    private final Map<String, Integer> userRelationshipLevel = new ConcurrentHashMap<>();
-    private final Map<String, LocalDateTime> lastInteractionTime = new ConcurrentHashMap<>();
+    private final StateCache<String, Integer> userRelationshipLevel;
+    private final StateCache<String, LocalDateTime> lastInteractionTime;
     private final Random personalityRandom = new Random();
 
     // Rin-specific emotional keywords (Yukari's mature style)
@@ -54,6 +53,11 @@ public class MaiPersonalityService {
             "let me share something", "this reminds me of", "imagine if"
     );
 
+    public MaiPersonalityService(StateCacheFactory stateCacheFactory) {
+        this.userRelationshipLevel = stateCacheFactory.create("mai-relationship-level");
+        this.lastInteractionTime = stateCacheFactory.create("mai-last-interaction");
+    }
+
     public void updateRelationshipDynamics(String conversationId, String userId, String message) {
         String userKey = userId != null ? userId : conversationId;
 
@@ -221,8 +225,8 @@ public class MaiPersonalityService {
 
     @CacheEvict(value = "personalityState", key = "#conversationId + '_*'")
     public void clearRelationshipData(String conversationId) {
-        userRelationshipLevel.entrySet().removeIf(entry -> entry.getKey().startsWith(conversationId));
-        lastInteractionTime.entrySet().removeIf(entry -> entry.getKey().startsWith(conversationId));
+        userRelationshipLevel.removeIf(key -> key.startsWith(conversationId));
+        lastInteractionTime.removeIf(key -> key.startsWith(conversationId));
     }
 
     public int getUserRelationshipLevel(String userKey) {
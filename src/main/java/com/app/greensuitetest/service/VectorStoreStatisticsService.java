@@ -0,0 +1,180 @@
+package com.app.greensuitetest.service;
+
+import com.app.greensuitetest.model.IngestionManifest;
+import com.app.greensuitetest.repository.IngestionManifestRepository;
+import com.app.greensuitetest.service.vector.LocalHnswVectorStore;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Vector store statistics served from collection metadata and the ingestion manifest. Nothing here
+ * embeds a query or runs a similarity search, so the numbers are exact and cost a count or an
+ * aggregation on the Atlas collection (or a heap scan for the local store).
+ */
+@Service
+@Slf4j
+public class VectorStoreStatisticsService {
+
+    private final VectorStore vectorStore;
+    private final MongoTemplate atlasMongoTemplate;
+    private final IngestionManifestRepository ingestionManifestRepository;
+    private final HybridRetrievalService hybridRetrievalService;
+
+    @Value("${spring.ai.vectorstore.mongodb.collection-name:green_suite-collect}")
+    private String collectionName;
+
+    public VectorStoreStatisticsService(VectorStore vectorStore,
+                                        @Qualifier("atlasMongoTemplate") MongoTemplate atlasMongoTemplate,
+                                        IngestionManifestRepository ingestionManifestRepository,
+                                        HybridRetrievalService hybridRetrievalService) {
+        this.vectorStore = vectorStore;
+        this.atlasMongoTemplate = atlasMongoTemplate;
+        this.ingestionManifestRepository = ingestionManifestRepository;
+        this.hybridRetrievalService = hybridRetrievalService;
+    }
+
+    /**
+     * Exact number of chunks in the vector store.
+     */
+    public long countChunks() {
+        if (vectorStore instanceof LocalHnswVectorStore localStore) {
+            return localStore.size();
+        }
+        return atlasMongoTemplate.count(new Query(), collectionName);
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("vector_store", vectorStore.getName());
+
+        try {
+            long totalChunks = countChunks();
+            stats.put("total_chunks", totalChunks);
+            Map<String, Long> byTenant = countByMetadata(HybridRetrievalService.TENANT_KEY);
+            stats.put("chunks_by_tenant", byTenant);
+            stats.put("chunks_by_domain", countByMetadata("content_domain"));
+            stats.put("chunks_by_file_type", countByMetadata("file_type"));
+            stats.put("index", getIndexSizes());
+
+            Map<String, Object> manifest = getManifestStatistics();
+            stats.put("manifest", manifest);
+            long trackedChunks = (long) manifest.get("tracked_chunks");
+            // Corpus chunks without a manifest entry are legacy or orphaned and will be replaced by the next reconcile;
+            // company uploads are tracked by their knowledge base documents instead
+            long corpusChunks = byTenant.getOrDefault(HybridRetrievalService.GLOBAL_TENANT, 0L) + byTenant.getOrDefault("unknown", 0L);
+            stats.put("untracked_chunks", Math.max(0, corpusChunks - trackedChunks));
+        } catch (Exception e) {
+            log.warn("Could not collect vector store statistics: {}", e.getMessage());
+            stats.put("error", e.getMessage());
+        }
+
+        stats.put("keyword_index", hybridRetrievalService.getKeywordIndexStats());
+        return stats;
+    }
+
+    private Map<String, Long> countByMetadata(String field) {
+        if (vectorStore instanceof LocalHnswVectorStore localStore) {
+            return sortByCount(localStore.countByMetadata(field));
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.group("metadata." + field).count().as("chunks"),
+                Aggregation.sort(Sort.Direction.DESC, "chunks"));
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Document group : atlasMongoTemplate.aggregate(aggregation, collectionName, Document.class)) {
+            Object key = group.get("_id");
+            counts.put(key != null ? String.valueOf(key) : "unknown", ((Number) group.get("chunks")).longValue());
+        }
+        return counts;
+    }
+
+    private Map<String, Object> getIndexSizes() {
+        if (vectorStore instanceof LocalHnswVectorStore localStore) {
+            return localStore.getIndexStats();
+        }
+
+        Map<String, Object> sizes = new LinkedHashMap<>();
+        Document collStats = atlasMongoTemplate.executeCommand(new Document("collStats", collectionName));
+        sizes.put("data_bytes", collStats.get("size"));
+        sizes.put("storage_bytes", collStats.get("storageSize"));
+        sizes.put("avg_chunk_bytes", collStats.get("avgObjSize"));
+        sizes.put("total_index_bytes", collStats.get("totalIndexSize"));
+        sizes.put("index_bytes", collStats.get("indexSizes"));
+
+        try {
+            // Atlas Search indexes are not part of collStats; their status comes from $listSearchIndexes
+            List<Map<String, Object>> searchIndexes = new ArrayList<>();
+            Document result = atlasMongoTemplate.executeCommand(new Document("aggregate", collectionName)
+                    .append("pipeline", List.of(new Document("$listSearchIndexes", new Document())))
+                    .append("cursor", new Document()));
+            for (Document index : result.get("cursor", Document.class).getList("firstBatch", Document.class)) {
+                Map<String, Object> summary = new LinkedHashMap<>();
+                summary.put("name", index.get("name"));
+                summary.put("type", index.get("type"));
+                summary.put("status", index.get("status"));
+                summary.put("queryable", index.get("queryable"));
+                searchIndexes.add(summary);
+            }
+            sizes.put("search_indexes", searchIndexes);
+        } catch (Exception e) {
+            log.debug("Could not list search indexes: {}", e.getMessage());
+        }
+        return sizes;
+    }
+
+    private Map<String, Object> getManifestStatistics() {
+        List<IngestionManifest> manifests = ingestionManifestRepository.findAll();
+        Map<String, Object> perSource = new TreeMap<>();
+        long trackedChunks = 0;
+        long totalBytes = 0;
+        int incomplete = 0;
+        LocalDateTime lastIngested = null;
+
+        for (IngestionManifest manifest : manifests) {
+            trackedChunks += manifest.getChunkCount();
+            totalBytes += manifest.getFileSize();
+            if (manifest.getFileHash() == null) {
+                incomplete++;
+            }
+            if (manifest.getUpdatedAt() != null && (lastIngested == null || manifest.getUpdatedAt().isAfter(lastIngested))) {
+                lastIngested = manifest.getUpdatedAt();
+            }
+
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("chunks", manifest.getChunkCount());
+            source.put("file_bytes", manifest.getFileSize());
+            source.put("complete", manifest.getFileHash() != null);
+            source.put("pipeline_version", manifest.getPipelineVersion());
+            source.put("updated_at", manifest.getUpdatedAt());
+            perSource.put(manifest.getSource(), source);
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("tracked_files", manifests.size());
+        stats.put("tracked_chunks", trackedChunks);
+        stats.put("source_bytes", totalBytes);
+        stats.put("incomplete_files", incomplete);
+        stats.put("last_ingested", lastIngested);
+        stats.put("chunks_by_source", perSource);
+        return stats;
+    }
+
+    private Map<String, Long> sortByCount(Map<String, Long> counts) {
+        Map<String, Long> sorted = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+        return sorted;
+    }
+}
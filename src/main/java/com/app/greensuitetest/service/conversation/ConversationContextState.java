@@ -0,0 +1,153 @@
+package com.app.greensuitetest.service.conversation;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Running totals of what has been extracted from one conversation. Each message is folded in once, so
+ * building the context for a turn costs the new messages only, not a rescan of the whole history.
+ * Collections that would otherwise grow with the conversation are bounded.
+ */
+@Getter
+public class ConversationContextState {
+
+    private static final int MAX_LISTED = 20;
+    private static final int RECENT_MESSAGES = 10;
+    private static final int MAX_HIGHLIGHTS = 5;
+    private static final int MAX_QUESTIONS = 3;
+    private static final int MAX_MOMENTS = 20;
+    private static final int MAX_RIN_TOPICS = 10;
+
+    private int messagesApplied;
+    private int userMessages;
+    private int assistantMessages;
+    private int totalWords;
+    private int questionsAsked;
+    private int meaningfulExchanges;
+    private int rinPersonalityExpressions;
+    private int tsundereScore;
+    private int dereScore;
+    private int environmentalPassion;
+    private int lastMessageHash;
+
+    @Setter
+    private String userName;
+    @Setter
+    private String companyName;
+    @Setter
+    private String userRole;
+    @Setter
+    private String pendingUserMessage;
+
+    private final Set<String> preferences = new LinkedHashSet<>();
+    private final Set<String> businessGoals = new LinkedHashSet<>();
+    private final Set<String> sustainabilityTopics = new LinkedHashSet<>();
+    private final Set<String> conversationTopics = new LinkedHashSet<>();
+    private final Set<String> questionTypes = new LinkedHashSet<>();
+    private final Set<String> rinEnvironmentalTopics = new LinkedHashSet<>();
+    private final Map<String, Integer> communicationStyle = new HashMap<>();
+    private final Map<String, Integer> domainScores = new HashMap<>();
+    private final Map<String, Integer> conceptFrequency = new HashMap<>();
+    private final Map<String, Integer> interactionPatterns = new HashMap<>();
+    private final Map<String, Integer> expertiseIndicators = new HashMap<>();
+    private final Map<String, Integer> rinInteractionPatterns = new HashMap<>();
+    private final Deque<Set<String>> recentMessageTopics = new ArrayDeque<>();
+    private final Deque<String> highlights = new ArrayDeque<>();
+    private final Deque<String> userQuestions = new ArrayDeque<>();
+    private final Deque<String> personalityMoments = new ArrayDeque<>();
+
+    public void userMessageApplied(int words, int questions, boolean meaningful, int contentHash) {
+        messagesApplied++;
+        lastMessageHash = contentHash;
+        userMessages++;
+        totalWords += words;
+        questionsAsked += questions;
+        if (meaningful) {
+            meaningfulExchanges++;
+        }
+    }
+
+    public void assistantMessageApplied(int words, int personalityExpressions, int contentHash) {
+        messagesApplied++;
+        lastMessageHash = contentHash;
+        assistantMessages++;
+        totalWords += words;
+        rinPersonalityExpressions += personalityExpressions;
+    }
+
+    /**
+     * Counts a message that carries no context (e.g. a system message) so the state stays in step with the history.
+     */
+    public void messageSkipped(int contentHash) {
+        messagesApplied++;
+        lastMessageHash = contentHash;
+    }
+
+    public void rinExpressions(int tsundere, int dere, int environmental) {
+        tsundereScore += tsundere;
+        dereScore += dere;
+        environmentalPassion += environmental;
+    }
+
+    public void increment(Map<String, Integer> counters, String key, int delta) {
+        counters.merge(key, delta, Integer::sum);
+    }
+
+    public void addPreference(String preference) {
+        addBounded(preferences, preference, MAX_LISTED);
+    }
+
+    public void addBusinessGoal(String goal) {
+        addBounded(businessGoals, goal, MAX_LISTED);
+    }
+
+    public void addRinEnvironmentalTopic(String topic) {
+        addBounded(rinEnvironmentalTopics, topic, MAX_RIN_TOPICS);
+    }
+
+    public void addRecentMessageTopics(Set<String> topics) {
+        addLast(recentMessageTopics, topics, RECENT_MESSAGES);
+    }
+
+    public void addHighlight(String highlight) {
+        addLast(highlights, highlight, MAX_HIGHLIGHTS);
+    }
+
+    public void addUserQuestion(String question) {
+        addLast(userQuestions, question, MAX_QUESTIONS);
+    }
+
+    public void addPersonalityMoment(String moment) {
+        addLast(personalityMoments, moment, MAX_MOMENTS);
+    }
+
+    public Set<String> recentFocusAreas() {
+        Set<String> recent = new LinkedHashSet<>();
+        recentMessageTopics.forEach(recent::addAll);
+        return recent;
+    }
+
+    public int messageCount() {
+        return userMessages + assistantMessages;
+    }
+
+    private static void addBounded(Set<String> values, String value, int limit) {
+        if (values.size() < limit) {
+            values.add(value);
+        }
+    }
+
+    private static <T> void addLast(Deque<T> values, T value, int limit) {
+        values.addLast(value);
+        while (values.size() > limit) {
+            values.pollFirst();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.app.greensuitetest.service.conversation;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chat history of one conversation, read from {@link ChatMemory} once at the start of a turn and
+ * shared by context building, history selection and prompt building. A finished exchange is added with
+ * {@link #append} so the snapshot stays in step with the store without another read; the store itself is
+ * written behind by the post-turn bus.
+ */
+public final class ConversationSnapshot {
+
+    private final String conversationId;
+    private final List<Message> messages;
+    private final List<Message> view;
+
+    private ConversationSnapshot(String conversationId, List<Message> messages) {
+        this.conversationId = conversationId;
+        this.messages = messages;
+        this.view = Collections.unmodifiableList(messages);
+    }
+
+    public static ConversationSnapshot load(ChatMemory chatMemory, String conversationId) {
+        return new ConversationSnapshot(conversationId, new ArrayList<>(chatMemory.get(conversationId)));
+    }
+
+    public static ConversationSnapshot empty(String conversationId) {
+        return new ConversationSnapshot(conversationId, new ArrayList<>());
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    /**
+     * Read-only view of the history; callers must not copy it just to read it.
+     */
+    public List<Message> getMessages() {
+        return view;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * Appends messages that are not in chat memory yet; writing them there is up to the caller.
+     */
+    public synchronized void append(List<Message> added) {
+        messages.addAll(added);
+    }
+}
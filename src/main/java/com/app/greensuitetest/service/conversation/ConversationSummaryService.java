@@ -0,0 +1,273 @@
+package com.app.greensuitetest.service.conversation;
+
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import com.app.greensuitetest.model.ConversationSummary;
+import com.app.greensuitetest.repository.ConversationSummaryRepository;
+import com.app.greensuitetest.service.llm.LlmRequestScheduler;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a running summary of everything older than the last few exchanges of a conversation. After a
+ * turn is saved, the messages that have aged out of the recent window are folded into the stored summary
+ * in the background; prompts then carry the summary and the messages it does not cover yet, so prefill
+ * time does not grow with the age of the conversation.
+ */
+@Slf4j
+@Service
+public class ConversationSummaryService {
+
+    private static final String SUMMARY_INSTRUCTIONS = """
+            You maintain a running summary of a conversation between a user and Rin Kazuki, a sustainability assistant.
+            Merge the new messages into the existing summary. Keep the user's name, company, role, goals and preferences,
+            the facts, figures and recommendations discussed, and any open questions. Drop greetings and small talk.
+            Write plain prose in the third person, at most %d words. Reply with the summary only.""";
+
+    private final ChatModel chatModel;
+    private final LlmRequestScheduler llmRequestScheduler;
+    private final ConversationSummaryRepository conversationSummaryRepository;
+    private final StateCache<String, Optional<ConversationSummary>> summaries;
+    // conversation id -> the summarisation pass queued or running for it
+    private final Map<String, Pass> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${app.chat.summary.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.chat.summary.recent-exchanges:3}")
+    private int recentExchanges;
+
+    @Value("${app.chat.summary.min-new-messages:4}")
+    private int minNewMessages;
+
+    @Value("${app.chat.summary.max-words:250}")
+    private int maxWords;
+
+    @Value("${app.chat.summary.queue-capacity:100}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor worker;
+
+    public ConversationSummaryService(ChatModel chatModel,
+                                      LlmRequestScheduler llmRequestScheduler,
+                                      ConversationSummaryRepository conversationSummaryRepository,
+                                      StateCacheFactory stateCacheFactory) {
+        this.chatModel = chatModel;
+        this.llmRequestScheduler = llmRequestScheduler;
+        this.conversationSummaryRepository = conversationSummaryRepository;
+        this.summaries = stateCacheFactory.create("conversation-summary");
+    }
+
+    @PostConstruct
+    public void startWorker() {
+        AtomicInteger counter = new AtomicInteger();
+        // One thread: summaries compete with chat turns for the model, so they are kept off the hot path and serial
+        worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "conversation-summary-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stopWorker() {
+        worker.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stored summary of the conversation, if one has been written yet.
+     */
+    public Optional<ConversationSummary> getSummary(String conversationId) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return summaries.computeIfAbsent(conversationId, this::load);
+    }
+
+    /**
+     * The messages a prompt carries verbatim next to {@code summary}: everything after the newest summarised
+     * message, and never fewer than the last {@code recent-exchanges} exchanges. Messages that have aged out of
+     * the recent window but are not in the summary yet (a pass folds them in only once enough have built up)
+     * are therefore still sent.
+     */
+    public List<Message> unsummarizedHistory(List<Message> history, ConversationSummary summary) {
+        int recentStart = Math.max(0, history.size() - recentExchanges * 2);
+        // If the summarised message has left the memory window, everything here is newer than the summary
+        int start = 0;
+        for (int i = history.size() - 1; i >= 0; i--) {
+            if (messageHash(history.get(i)) == summary.getLastMessageHash()) {
+                start = i + 1;
+                break;
+            }
+        }
+        return history.subList(Math.min(start, recentStart), history.size());
+    }
+
+    /**
+     * Queues a summarisation pass once enough messages have aged out of the recent window. Called after an
+     * exchange has been saved; returns immediately.
+     */
+    public void summarizeIfNeeded(ConversationSnapshot snapshot) {
+        if (!enabled) {
+            return;
+        }
+        List<Message> history = List.copyOf(snapshot.getMessages());
+        int cutoff = history.size() - recentExchanges * 2;
+        if (cutoff < minNewMessages) {
+            return;
+        }
+
+        String conversationId = snapshot.getConversationId();
+        // One pass per conversation at a time; the next saved turn picks up whatever this one missed
+        Pass pass = new Pass();
+        if (inFlight.putIfAbsent(conversationId, pass) != null) {
+            return;
+        }
+        try {
+            worker.execute(() -> {
+                try {
+                    summarize(conversationId, history, cutoff, pass);
+                } catch (Exception e) {
+                    log.warn("Could not summarise conversation '{}': {}", conversationId, e.getMessage());
+                } finally {
+                    inFlight.remove(conversationId, pass);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(conversationId, pass);
+            log.debug("Summary queue full, skipping conversation '{}' this turn", conversationId);
+        }
+    }
+
+    /**
+     * Forgets the conversation's summary. A pass already queued or running for it is fenced off, so it cannot
+     * write back a summary of the history that was just cleared.
+     */
+    public void clearSummary(String conversationId) {
+        Pass pass = inFlight.get(conversationId);
+        if (pass != null) {
+            synchronized (pass) {
+                pass.cleared = true;
+            }
+        }
+        summaries.remove(conversationId);
+        try {
+            conversationSummaryRepository.deleteById(conversationId);
+        } catch (Exception e) {
+            log.warn("Could not delete summary for conversation '{}': {}", conversationId, e.getMessage());
+        }
+    }
+
+    private void summarize(String conversationId, List<Message> history, int cutoff, Pass pass) {
+        ConversationSummary existing = conversationSummaryRepository.findById(conversationId).orElse(null);
+
+        // Start after the newest message already summarised; if it has left the memory window, everything here is new
+        int start = 0;
+        if (existing != null) {
+            for (int i = cutoff - 1; i >= 0; i--) {
+                if (messageHash(history.get(i)) == existing.getLastMessageHash()) {
+                    start = i + 1;
+                    break;
+                }
+            }
+        }
+        List<Message> fresh = history.subList(start, cutoff);
+        if (fresh.size() < minNewMessages) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        StringBuilder request = new StringBuilder();
+        request.append("Existing summary:\n")
+                .append(existing != null && existing.getSummary() != null ? existing.getSummary() : "(none)")
+                .append("\n\nNew messages:\n");
+        for (Message message : fresh) {
+            String speaker = message.getMessageType() == MessageType.USER ? "User" : "Rin";
+            request.append(speaker).append(": ").append(message.getText()).append('\n');
+        }
+
+        Prompt prompt = new Prompt(
+                List.of(new SystemMessage(SUMMARY_INSTRUCTIONS.formatted(maxWords)), new UserMessage(request.toString())),
+                ChatOptions.builder().temperature(0.2).maxTokens(maxWords * 2).build());
+        // Background priority: a summary only takes a model slot that no chat turn is waiting for
+        ChatResponse response = llmRequestScheduler.schedule(llmRequestScheduler.backgroundTicket(),
+                        () -> Mono.fromCallable(() -> chatModel.call(prompt))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .flux())
+                .blockLast();
+        String text = response != null ? response.getResult().getOutput().getText() : null;
+        if (text == null || text.isBlank()) {
+            log.debug("Empty summary returned for conversation '{}'", conversationId);
+            return;
+        }
+
+        ConversationSummary updated = ConversationSummary.builder()
+                .conversationId(conversationId)
+                .summary(text.trim())
+                .summarizedMessages((existing != null ? existing.getSummarizedMessages() : 0) + fresh.size())
+                .lastMessageHash(messageHash(history.get(cutoff - 1)))
+                .updatedAt(LocalDateTime.now())
+                .build();
+        synchronized (pass) {
+            if (pass.cleared) {
+                log.debug("Conversation '{}' was cleared while it was being summarised; discarding the summary", conversationId);
+                return;
+            }
+            conversationSummaryRepository.save(updated);
+            summaries.put(conversationId, Optional.of(updated));
+        }
+
+        log.debug("Folded {} messages into the summary of conversation '{}' in {}ms",
+                fresh.size(), conversationId, System.currentTimeMillis() - startTime);
+    }
+
+    private Optional<ConversationSummary> load(String conversationId) {
+        try {
+            return conversationSummaryRepository.findById(conversationId);
+        } catch (Exception e) {
+            log.warn("Could not load summary for conversation '{}': {}", conversationId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static int messageHash(Message message) {
+        return (message.getMessageType().name() + ":" + message.getText()).hashCode();
+    }
+
+    /**
+     * One summarisation pass. {@code cleared} is set by {@link #clearSummary} and checked under the same
+     * monitor as the save, so a clear either deletes what the pass saved or stops it from saving.
+     */
+    private static final class Pass {
+        private boolean cleared;
+    }
+}
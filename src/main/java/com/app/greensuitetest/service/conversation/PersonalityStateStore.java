@@ -0,0 +1,146 @@
+package com.app.greensuitetest.service.conversation;
+
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Rin's relationship level and last interaction per user, shared by every node through Redis.
+ * Each user is one hash ({@code level}, {@code last}); an interaction is a single Lua call that
+ * increments and clamps the level, stamps the time, refreshes the TTL and publishes an invalidation.
+ * Reads go through a short-lived near-cache that other nodes' invalidations evict, so a turn costs
+ * at most one round trip whichever node serves it.
+ */
+@Slf4j
+@Component
+public class PersonalityStateStore {
+
+    private static final String KEY_PREFIX = "rin:relationship:";
+    private static final String INVALIDATION_CHANNEL = "rin:relationship:invalidate";
+    private static final int MAX_LEVEL = 100;
+
+    private static final RedisScript<Long> RECORD_INTERACTION = new DefaultRedisScript<>("""
+            local level = redis.call('HINCRBY', KEYS[1], 'level', ARGV[1])
+            if level > tonumber(ARGV[5]) then
+                level = tonumber(ARGV[5])
+                redis.call('HSET', KEYS[1], 'level', level)
+            elseif level < 0 then
+                level = 0
+                redis.call('HSET', KEYS[1], 'level', level)
+            end
+            redis.call('HSET', KEYS[1], 'last', ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            redis.call('PUBLISH', ARGV[4], ARGV[6])
+            return level
+            """, Long.class);
+
+    public record RelationshipState(int level, LocalDateTime lastInteraction) {
+        static final RelationshipState EMPTY = new RelationshipState(0, null);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final StateCache<String, RelationshipState> nearCache;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    @Value("${app.personality.state-ttl:30d}")
+    private Duration stateTtl;
+
+    public PersonalityStateStore(StringRedisTemplate redisTemplate,
+                                 RedisMessageListenerContainer listenerContainer,
+                                 StateCacheFactory stateCacheFactory) {
+        this.redisTemplate = redisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.nearCache = stateCacheFactory.create("rin-relationship-near-cache");
+    }
+
+    @PostConstruct
+    public void subscribeToInvalidations() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            // Payload is "<node>|<userKey>"; a node's own writes are already in its near-cache
+            String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+            int separator = payload.indexOf('|');
+            if (separator > 0 && !payload.substring(0, separator).equals(nodeId)) {
+                nearCache.remove(payload.substring(separator + 1));
+            }
+        }, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    /**
+     * Applies a relationship change for this turn and returns the new, clamped level.
+     */
+    public int recordInteraction(String userKey, int delta) {
+        long now = System.currentTimeMillis();
+        try {
+            Long level = redisTemplate.execute(RECORD_INTERACTION, List.of(KEY_PREFIX + userKey),
+                    String.valueOf(delta), String.valueOf(now), String.valueOf(stateTtl.toMillis()),
+                    INVALIDATION_CHANNEL, String.valueOf(MAX_LEVEL), nodeId + "|" + userKey);
+            RelationshipState state = new RelationshipState(level != null ? level.intValue() : 0, toDateTime(now));
+            nearCache.put(userKey, state);
+            return state.level();
+        } catch (Exception e) {
+            // Keep the conversation going on this node's view until Redis is back
+            log.warn("Could not record relationship state for '{}' in Redis: {}", userKey, e.getMessage());
+            RelationshipState current = nearCache.getOrDefault(userKey, RelationshipState.EMPTY);
+            RelationshipState updated = new RelationshipState(
+                    Math.max(0, Math.min(current.level() + delta, MAX_LEVEL)), toDateTime(now));
+            nearCache.put(userKey, updated);
+            return updated.level();
+        }
+    }
+
+    public RelationshipState getRelationship(String userKey) {
+        return nearCache.computeIfAbsent(userKey, this::load);
+    }
+
+    /**
+     * Removes the state kept for the conversation itself (anonymous users are keyed by their conversation).
+     */
+    public void clearConversation(String conversationId) {
+        nearCache.remove(conversationId);
+        try {
+            redisTemplate.delete(KEY_PREFIX + conversationId);
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, nodeId + "|" + conversationId);
+        } catch (Exception e) {
+            log.warn("Could not clear relationship state for conversation '{}': {}", conversationId, e.getMessage());
+        }
+    }
+
+    private RelationshipState load(String userKey) {
+        try {
+            Map<Object, Object> hash = redisTemplate.opsForHash().entries(KEY_PREFIX + userKey);
+            if (hash.isEmpty()) {
+                return RelationshipState.EMPTY;
+            }
+            Object level = hash.get("level");
+            Object last = hash.get("last");
+            return new RelationshipState(
+                    level != null ? Integer.parseInt(level.toString()) : 0,
+                    last != null ? toDateTime(Long.parseLong(last.toString())) : null);
+        } catch (Exception e) {
+            log.warn("Could not load relationship state for '{}' from Redis: {}", userKey, e.getMessage());
+            return RelationshipState.EMPTY;
+        }
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,170 @@
+package com.app.greensuitetest.service.conversation;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Carries the writes that follow a chat turn (chat memory, context and personality tracking, the turn's credit
+ * ledger entries) off the response path. Publishing only enqueues; one worker drains the queue in batches and hands
+ * each subscriber every event of its type in the batch, so writes that can be combined are combined.
+ * <p>
+ * The queue is bounded. When it stays full for longer than the publish timeout the event is handled on the
+ * publishing thread instead, so back-pressure slows turns down rather than dropping their writes. Events still
+ * queued at shutdown are written before the bean goes away; only a crash loses them.
+ */
+@Slf4j
+@Service
+public class PostTurnEventBus {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Class<?>, Consumer<List<Object>>> subscribers = new ConcurrentHashMap<>();
+
+    @Value("${app.chat.post-turn.queue-capacity:2000}")
+    private int queueCapacity;
+
+    @Value("${app.chat.post-turn.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.chat.post-turn.flush-interval:25ms}")
+    private Duration flushInterval;
+
+    @Value("${app.chat.post-turn.publish-timeout:200ms}")
+    private Duration publishTimeout;
+
+    private BlockingQueue<Object> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    public PostTurnEventBus(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void startWorker() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Gauge.builder("rin.post-turn.queue.depth", queue, BlockingQueue::size)
+                .register(meterRegistry);
+
+        running = true;
+        worker = new Thread(this::drain, "post-turn-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stopWorker() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Whatever the worker did not get to is written here rather than lost with the queue
+        List<Object> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.info("Writing {} queued post-turn events before shutdown", remaining.size());
+            dispatch(remaining);
+        }
+    }
+
+    /**
+     * Registers the batch handler for events of {@code type}. One handler per type; it is called on the
+     * worker thread with the events in publish order.
+     */
+    @SuppressWarnings("unchecked")
+    public <E> void subscribe(Class<E> type, Consumer<List<E>> handler) {
+        if (subscribers.putIfAbsent(type, events -> handler.accept((List<E>) events)) != null) {
+            throw new IllegalStateException("A post-turn handler is already registered for " + type.getSimpleName());
+        }
+    }
+
+    /**
+     * Queues the event for the worker; returns immediately unless the queue is full.
+     */
+    public void publish(Object event) {
+        String type = event.getClass().getSimpleName();
+        boolean queued;
+        try {
+            queued = running && queue.offer(event, publishTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        Counter.builder("rin.post-turn.events")
+                .tag("type", type)
+                .tag("path", queued ? "queued" : "inline")
+                .register(meterRegistry)
+                .increment();
+        if (!queued) {
+            log.warn("Post-turn queue full or stopped, writing {} on the calling thread", type);
+            dispatch(List.of(event));
+        }
+    }
+
+    private void drain() {
+        List<Object> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Object first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Give the turns finishing around the same time a moment to join the batch
+                long deadline = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize) {
+                    Object next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown; the events taken so far are dispatched below and the rest by stopWorker
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty()) {
+                dispatch(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void dispatch(List<Object> events) {
+        Map<Class<?>, List<Object>> byType = new LinkedHashMap<>();
+        for (Object event : events) {
+            byType.computeIfAbsent(event.getClass(), type -> new ArrayList<>()).add(event);
+        }
+        byType.forEach((type, batch) -> {
+            Consumer<List<Object>> handler = subscribers.get(type);
+            if (handler == null) {
+                log.error("No post-turn handler for {}; dropping {} events", type.getSimpleName(), batch.size());
+                return;
+            }
+            try {
+                handler.accept(batch);
+            } catch (Exception e) {
+                log.error("Post-turn handler for {} failed on {} events: {}", type.getSimpleName(), batch.size(), e.getMessage(), e);
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package com.app.greensuitetest.service.ingestion;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.core.io.Resource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Two-stage ingestion pipeline:
+ * <ol>
+ *     <li>parser threads read, clean and split files in parallel and push chunks into a bounded queue</li>
+ *     <li>writer threads drain the queue into batches and write them (embedding + bulk insert) concurrently</li>
+ * </ol>
+ * The queue bound is the backpressure: when embedding falls behind, parsers block instead of piling
+ * chunks up on the heap.
+ */
+@Slf4j
+public class DocumentIngestionPipeline {
+
+    private static final Document END_OF_STREAM = new Document("__end_of_stream__");
+    private static final long POLL_TIMEOUT_MS = 250;
+
+    public enum Outcome {
+        /** New or changed chunks were emitted (possibly none, if only deletions were needed) */
+        PROCESSED,
+        /** The file is unchanged since the last run and was not parsed */
+        UNCHANGED,
+        /** No content could be extracted */
+        EMPTY
+    }
+
+    @FunctionalInterface
+    public interface ChunkProducer {
+        /**
+         * Emits the chunks of {@code resource} that need writing.
+         */
+        Outcome produce(Resource resource, Consumer<Document> sink) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface BatchWriter {
+        void write(List<Document> batch) throws Exception;
+    }
+
+    private final int parserThreads;
+    private final int writerThreads;
+    private final int batchSize;
+    private final int queueCapacity;
+
+    public DocumentIngestionPipeline(int parserThreads, int writerThreads, int batchSize, int queueCapacity) {
+        this.parserThreads = parserThreads > 0 ? parserThreads : Runtime.getRuntime().availableProcessors();
+        this.writerThreads = Math.max(1, writerThreads);
+        this.batchSize = Math.max(1, batchSize);
+        this.queueCapacity = Math.max(this.batchSize, queueCapacity);
+    }
+
+    public void run(List<Resource> resources, ChunkProducer producer, BatchWriter writer,
+                    IngestionProgress progress) throws InterruptedException {
+        BlockingQueue<Document> queue = new ArrayBlockingQueue<>(queueCapacity);
+        progress.start(resources.size(), queue::size);
+
+        ExecutorService writers = Executors.newFixedThreadPool(writerThreads, namedThreads("ingest-writer"));
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, namedThreads("ingest-parser"));
+        try {
+            for (int i = 0; i < writerThreads; i++) {
+                writers.submit(() -> drain(queue, writer, progress));
+            }
+            for (Resource resource : resources) {
+                parsers.submit(() -> parse(resource, producer, queue, progress));
+            }
+
+            parsers.shutdown();
+            while (!parsers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Waiting for parsers, {} chunks queued", queue.size());
+            }
+            for (int i = 0; i < writerThreads; i++) {
+                queue.put(END_OF_STREAM);
+            }
+            writers.shutdown();
+            while (!writers.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Waiting for writers, {} chunks queued", queue.size());
+            }
+        } finally {
+            parsers.shutdownNow();
+            writers.shutdownNow();
+        }
+    }
+
+    private void parse(Resource resource, ChunkProducer producer, BlockingQueue<Document> queue, IngestionProgress progress) {
+        String filename = String.valueOf(resource.getFilename());
+        long start = System.nanoTime();
+        AtomicInteger chunks = new AtomicInteger();
+        progress.fileStarted(filename);
+        try {
+            Outcome outcome = producer.produce(resource, chunk -> {
+                try {
+                    queue.put(chunk);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Ingestion interrupted", e);
+                }
+                chunks.incrementAndGet();
+                progress.chunkProduced();
+            });
+
+            switch (outcome) {
+                case UNCHANGED -> {
+                    log.debug("'{}' is unchanged, skipping", filename);
+                    progress.fileUnchanged(filename);
+                }
+                case EMPTY -> {
+                    log.warn("No content extracted from '{}'", filename);
+                    progress.fileSkipped(filename);
+                }
+                case PROCESSED -> {
+                    log.debug("Parsed '{}', {} new or changed chunks", filename, chunks.get());
+                    progress.fileProcessed(filename, System.nanoTime() - start);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to process document '{}': {}", filename, e.getMessage());
+            progress.fileFailed(filename, e.getMessage());
+        }
+    }
+
+    private void drain(BlockingQueue<Document> queue, BatchWriter writer, IngestionProgress progress) {
+        List<Document> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                Document next = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (next == END_OF_STREAM) {
+                    flush(batch, writer, progress);
+                    return;
+                }
+                if (next != null) {
+                    batch.add(next);
+                }
+                // Write full batches immediately, partial ones once the queue runs dry
+                if (batch.size() >= batchSize || (next == null && !batch.isEmpty())) {
+                    flush(batch, writer, progress);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(List<Document> batch, BatchWriter writer, IngestionProgress progress) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Document> toWrite = new ArrayList<>(batch);
+        batch.clear();
+        long start = System.nanoTime();
+        try {
+            writer.write(toWrite);
+            progress.batchWritten(toWrite.size(), System.nanoTime() - start);
+        } catch (Exception e) {
+            log.error("Failed to write batch of {} chunks: {}", toWrite.size(), e.getMessage());
+            progress.batchFailed(toWrite.size(), e.getMessage());
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,172 @@
+package com.app.greensuitetest.service.ingestion;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+
+/**
+ * Thread-safe progress and metrics for one ingestion run. Stages update counters concurrently;
+ * {@link #snapshot()} gives a consistent-enough view for the admin endpoint.
+ */
+public class IngestionProgress {
+
+    public enum Status { IDLE, RUNNING, COMPLETED, FAILED }
+
+    private static final int MAX_ERRORS = 50;
+
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.IDLE);
+    private final AtomicReference<LocalDateTime> startedAt = new AtomicReference<>();
+    private final AtomicReference<LocalDateTime> finishedAt = new AtomicReference<>();
+    private final AtomicInteger filesTotal = new AtomicInteger();
+    private final AtomicInteger filesProcessed = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicInteger filesUnchanged = new AtomicInteger();
+    private final AtomicLong chunksDeleted = new AtomicLong();
+    private final AtomicLong chunksProduced = new AtomicLong();
+    private final AtomicLong chunksWritten = new AtomicLong();
+    private final AtomicLong chunksFailed = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final Set<String> filesInFlight = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedDeque<String> errors = new ConcurrentLinkedDeque<>();
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    public void start(int totalFiles, IntSupplier queueDepthSupplier) {
+        status.set(Status.RUNNING);
+        startedAt.set(LocalDateTime.now());
+        finishedAt.set(null);
+        filesTotal.set(totalFiles);
+        filesProcessed.set(0);
+        filesFailed.set(0);
+        filesSkipped.set(0);
+        filesUnchanged.set(0);
+        chunksDeleted.set(0);
+        chunksProduced.set(0);
+        chunksWritten.set(0);
+        chunksFailed.set(0);
+        batchesWritten.set(0);
+        parseNanos.set(0);
+        writeNanos.set(0);
+        filesInFlight.clear();
+        errors.clear();
+        queueDepth = queueDepthSupplier;
+    }
+
+    public void finish(boolean failed) {
+        status.set(failed ? Status.FAILED : Status.COMPLETED);
+        finishedAt.set(LocalDateTime.now());
+        queueDepth = () -> 0;
+    }
+
+    public boolean isRunning() {
+        return status.get() == Status.RUNNING;
+    }
+
+    public Status getStatus() {
+        return status.get();
+    }
+
+    public void fileStarted(String file) {
+        filesInFlight.add(file);
+    }
+
+    public void fileProcessed(String file, long nanos) {
+        filesInFlight.remove(file);
+        filesProcessed.incrementAndGet();
+        parseNanos.addAndGet(nanos);
+    }
+
+    public void fileSkipped(String file) {
+        filesInFlight.remove(file);
+        filesSkipped.incrementAndGet();
+    }
+
+    public void fileUnchanged(String file) {
+        filesInFlight.remove(file);
+        filesUnchanged.incrementAndGet();
+    }
+
+    public void chunksDeleted(int chunks) {
+        chunksDeleted.addAndGet(chunks);
+    }
+
+    public void fileFailed(String file, String error) {
+        filesInFlight.remove(file);
+        filesFailed.incrementAndGet();
+        addError("Failed to process " + file + ": " + error);
+    }
+
+    public void chunkProduced() {
+        chunksProduced.incrementAndGet();
+    }
+
+    public void batchWritten(int chunks, long nanos) {
+        chunksWritten.addAndGet(chunks);
+        batchesWritten.incrementAndGet();
+        writeNanos.addAndGet(nanos);
+    }
+
+    public void batchFailed(int chunks, String error) {
+        chunksFailed.addAndGet(chunks);
+        addError("Vector store addition failed: " + error);
+    }
+
+    public void addError(String error) {
+        errors.addLast(error);
+        while (errors.size() > MAX_ERRORS) {
+            errors.pollFirst();
+        }
+    }
+
+    public boolean hasFailures() {
+        return filesFailed.get() > 0 || chunksFailed.get() > 0;
+    }
+
+    public long getChunksWritten() {
+        return chunksWritten.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>();
+        LocalDateTime start = startedAt.get();
+        LocalDateTime end = finishedAt.get();
+        snapshot.put("status", status.get().name());
+        snapshot.put("start_time", start != null ? start.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null);
+        snapshot.put("end_time", end != null ? end.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME) : null);
+        snapshot.put("total_files_found", filesTotal.get());
+        snapshot.put("successful_files", filesProcessed.get());
+        snapshot.put("failed_files", filesFailed.get());
+        snapshot.put("skipped_files", filesSkipped.get());
+        snapshot.put("unchanged_files", filesUnchanged.get());
+        snapshot.put("chunks_deleted", chunksDeleted.get());
+        snapshot.put("files_in_flight", new ArrayList<>(filesInFlight));
+        snapshot.put("chunks_produced", chunksProduced.get());
+        snapshot.put("total_chunks_created", chunksWritten.get());
+        snapshot.put("chunks_failed", chunksFailed.get());
+        snapshot.put("batches_written", batchesWritten.get());
+        snapshot.put("queue_depth", queueDepth.getAsInt());
+        snapshot.put("avg_parse_ms_per_file", filesProcessed.get() > 0 ? parseNanos.get() / 1_000_000.0 / filesProcessed.get() : 0.0);
+        snapshot.put("avg_write_ms_per_batch", batchesWritten.get() > 0 ? writeNanos.get() / 1_000_000.0 / batchesWritten.get() : 0.0);
+
+        if (start != null) {
+            LocalDateTime until = end != null ? end : LocalDateTime.now();
+            double seconds = Math.max(Duration.between(start, until).toMillis() / 1000.0, 0.001);
+            snapshot.put("elapsed_seconds", seconds);
+            snapshot.put("chunks_per_second", chunksWritten.get() / seconds);
+        }
+        snapshot.put("errors", new ArrayList<>(errors));
+        return snapshot;
+    }
+}
@@ -0,0 +1,107 @@
+package com.app.greensuitetest.service.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Single-flight for chat generations. While a generation for a prompt is running, callers with the same
+ * normalised prompt join it instead of starting their own: the chunks are replayed from the start to every
+ * joiner, so a follower sees the whole answer and gets its first token no later than the leader does.
+ * Only the leader's generation takes a scheduler slot. Each caller still does its own bookkeeping (credits,
+ * memory writes) on the chunks it receives.
+ * <p>
+ * The generation is cancelled only when every caller has gone away, and the entry is removed as soon as it
+ * terminates, so nothing is cached beyond the lifetime of the request.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatGenerationCoalescer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Flux<ChatResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Joins the in-flight generation of {@code prompt}, or starts one with {@code generation}.
+     */
+    public Flux<ChatResponse> join(Prompt prompt, Supplier<Flux<ChatResponse>> generation) {
+        String key = keyOf(prompt);
+        return Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            Flux<ChatResponse> shared = inFlight.computeIfAbsent(key, k -> {
+                started.set(true);
+                return share(k, generation);
+            });
+            Counter.builder("rin.chat.coalesced")
+                    .tag("role", started.get() ? "leader" : "follower")
+                    .register(meterRegistry)
+                    .increment();
+            if (!started.get()) {
+                log.debug("Joining in-flight generation {}", key);
+            }
+            return shared;
+        });
+    }
+
+    private Flux<ChatResponse> share(String key, Supplier<Flux<ChatResponse>> generation) {
+        AtomicReference<Flux<ChatResponse>> self = new AtomicReference<>();
+        Flux<ChatResponse> shared = Flux.defer(generation)
+                .doFinally(signal -> inFlight.remove(key, self.get()))
+                .replay()
+                .refCount();
+        self.set(shared);
+        return shared;
+    }
+
+    /**
+     * Digest of the prompt with case and runs of whitespace normalised, plus the options that change sampling.
+     */
+    private static String keyOf(Prompt prompt) {
+        StringBuilder canonical = new StringBuilder();
+        for (Message message : prompt.getInstructions()) {
+            String text = message.getText() != null ? message.getText() : "";
+            canonical.append(message.getMessageType()).append(':')
+                    .append(WHITESPACE.matcher(text.strip()).replaceAll(" ").toLowerCase(Locale.ROOT))
+                    .append('\n');
+        }
+        ChatOptions options = prompt.getOptions();
+        if (options != null) {
+            canonical.append(options.getModel()).append('|')
+                    .append(options.getTemperature()).append('|')
+                    .append(options.getTopP()).append('|')
+                    .append(options.getTopK()).append('|')
+                    .append(options.getMaxTokens()).append('|')
+                    .append(options.getFrequencyPenalty()).append('|')
+                    .append(options.getPresencePenalty()).append('|')
+                    .append(options.getStopSequences());
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(canonical.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.app.greensuitetest.service.llm;
+
+import com.app.greensuitetest.config.LlmSchedulerProperties;
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import com.app.greensuitetest.constants.SubscriptionTier;
+import com.app.greensuitetest.exception.LlmCapacityExceededException;
+import com.app.greensuitetest.model.Company;
+import com.app.greensuitetest.repository.CompanyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Gate in front of the chat model. At most {@code max-concurrent} requests run against Ollama at once; the
+ * rest wait in one queue per subscription tier, and free slots go to the tiers in proportion to their weights
+ * (smooth weighted round-robin), so a burst of free-tier traffic cannot starve paying tenants and vice versa.
+ * A company never holds more than {@code company-max-concurrent} slots, which keeps one tenant from taking
+ * every slot of its tier.
+ * <p>
+ * Requests that would wait longer than {@code max-queue-wait} are turned away before any work is done for
+ * them ({@link #admit}), with a retry hint derived from the current queue and the average time a request
+ * holds its slot. Admission reserves the caller's place in its tier and company queue, so a burst is
+ * checked against the caps as a whole rather than each request on its own; the reservation turns into the
+ * queue entry when the request is scheduled, and is given back by {@link #cancel} if the turn ends before
+ * that. A request that was admitted but still waits too long fails with the same exception.
+ * <p>
+ * Background work (conversation summaries) goes through a {@link #backgroundTicket} and only gets a slot
+ * when no chat request is waiting for one, so it never pushes the model over its parallel limit.
+ */
+@Slf4j
+@Service
+public class LlmRequestScheduler {
+
+    private final LlmSchedulerProperties properties;
+    private final CompanyRepository companyRepository;
+    private final MeterRegistry meterRegistry;
+    private final StateCache<String, SubscriptionTier> companyTiers;
+
+    private final Object lock = new Object();
+    private final Map<SubscriptionTier, Deque<Waiter>> queues = new EnumMap<>(SubscriptionTier.class);
+    private final Deque<Waiter> backgroundQueue = new ArrayDeque<>();
+    private final Map<SubscriptionTier, Integer> currentWeights = new EnumMap<>(SubscriptionTier.class);
+    private final Map<String, Integer> companyActive = new HashMap<>();
+    private final Map<SubscriptionTier, Integer> reserved = new EnumMap<>(SubscriptionTier.class);
+    // Admitted but not yet running, per company: reservations plus queued waiters
+    private final Map<String, Integer> companyQueued = new HashMap<>();
+    private int active;
+    private double averageServiceMillis;
+
+    public LlmRequestScheduler(LlmSchedulerProperties properties,
+                               CompanyRepository companyRepository,
+                               MeterRegistry meterRegistry,
+                               StateCacheFactory stateCacheFactory) {
+        this.properties = properties;
+        this.companyRepository = companyRepository;
+        this.meterRegistry = meterRegistry;
+        this.companyTiers = stateCacheFactory.create("company-tier");
+        this.averageServiceMillis = properties.getExpectedRequestTime().toMillis();
+
+        for (SubscriptionTier tier : SubscriptionTier.values()) {
+            queues.put(tier, new ArrayDeque<>());
+            currentWeights.put(tier, 0);
+            reserved.put(tier, 0);
+            Gauge.builder("rin.llm.scheduler.queue.depth", this, scheduler -> scheduler.queueDepth(tier))
+                    .tag("tier", tagOf(tier))
+                    .register(meterRegistry);
+        }
+        Gauge.builder("rin.llm.scheduler.active", this, LlmRequestScheduler::activeRequests)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admission check, done before credits are taken and retrieval runs. Throws
+     * {@link LlmCapacityExceededException} when the caller's queue is full or the expected wait is over budget;
+     * otherwise reserves a place in the queue until the ticket is scheduled or cancelled.
+     */
+    public Ticket admit(String companyId) {
+        SubscriptionTier tier = tierOf(companyId);
+        Ticket ticket = new Ticket(tier, companyId, false);
+        synchronized (lock) {
+            Duration expectedWait = expectedWait(tier);
+            String problem = capacityProblem(tier, companyId);
+            if (problem == null && expectedWait.compareTo(properties.getMaxQueueWait()) > 0) {
+                problem = "wait_budget";
+            }
+            if (problem != null) {
+                throw reject(tier, problem, expectedWait);
+            }
+            ticket.reserved = true;
+            reserved.merge(tier, 1, Integer::sum);
+            if (companyId != null) {
+                companyQueued.merge(companyId, 1, Integer::sum);
+            }
+        }
+        return ticket;
+    }
+
+    /**
+     * Ticket for work no user is waiting on; it is served at the lowest priority and never reserves a place.
+     */
+    public Ticket backgroundTicket() {
+        return new Ticket(SubscriptionTier.FREE, null, true);
+    }
+
+    /**
+     * Gives back the place reserved by {@link #admit} if the ticket was never scheduled, e.g. the turn failed
+     * or joined another generation. Safe to call more than once and after scheduling.
+     */
+    public void cancel(Ticket ticket) {
+        synchronized (lock) {
+            if (!ticket.reserved) {
+                return;
+            }
+            ticket.reserved = false;
+            reserved.merge(ticket.tier(), -1, Integer::sum);
+            decrement(companyQueued, ticket.companyId());
+        }
+    }
+
+    /**
+     * Runs {@code request} once the ticket gets a slot. The slot is held until the returned flux completes,
+     * fails or is cancelled.
+     */
+    public <T> Flux<T> schedule(Ticket ticket, Supplier<Flux<T>> request) {
+        return acquire(ticket).flatMapMany(waiter -> Flux.defer(request).doFinally(signal -> release(waiter)));
+    }
+
+    private Mono<Waiter> acquire(Ticket ticket) {
+        return Mono.<Waiter>create(sink -> {
+                    Waiter waiter = new Waiter(ticket, sink);
+                    sink.onCancel(() -> abandon(waiter));
+                    enqueue(waiter);
+                })
+                .timeout(properties.getMaxQueueWait(), Mono.defer(() -> {
+                    Duration expectedWait;
+                    synchronized (lock) {
+                        expectedWait = expectedWait(ticket.tier());
+                    }
+                    return Mono.error(reject(laneOf(ticket), "timeout", expectedWait));
+                }));
+    }
+
+    private void enqueue(Waiter waiter) {
+        Ticket ticket = waiter.ticket;
+        List<Waiter> granted;
+        synchronized (lock) {
+            if (ticket.background) {
+                backgroundQueue.addLast(waiter);
+            } else if (ticket.reserved) {
+                // The place reserved at admission becomes the queue entry; it is already in the company count
+                ticket.reserved = false;
+                reserved.merge(ticket.tier(), -1, Integer::sum);
+                queues.get(ticket.tier()).addLast(waiter);
+            } else {
+                String problem = capacityProblem(ticket.tier(), ticket.companyId());
+                if (problem != null) {
+                    waiter.sink.error(reject(ticket.tier(), problem, expectedWait(ticket.tier())));
+                    return;
+                }
+                if (ticket.companyId() != null) {
+                    companyQueued.merge(ticket.companyId(), 1, Integer::sum);
+                }
+                queues.get(ticket.tier()).addLast(waiter);
+            }
+            granted = dispatch();
+        }
+        grant(granted);
+    }
+
+    /**
+     * The subscriber went away: drop the waiter if it is still queued, or give back the slot it was granted
+     * in the meantime.
+     */
+    private void abandon(Waiter waiter) {
+        boolean queued;
+        synchronized (lock) {
+            queued = queueOf(waiter.ticket).remove(waiter);
+            if (queued) {
+                decrement(companyQueued, waiter.ticket.companyId());
+            }
+        }
+        if (!queued) {
+            release(waiter);
+        }
+    }
+
+    private void release(Waiter waiter) {
+        if (!waiter.granted || !waiter.released.compareAndSet(false, true)) {
+            return;
+        }
+        double heldMillis = (System.nanoTime() - waiter.grantedAt) / 1_000_000.0;
+        List<Waiter> granted;
+        synchronized (lock) {
+            active--;
+            decrement(companyActive, waiter.ticket.companyId());
+            averageServiceMillis = averageServiceMillis * 0.8 + heldMillis * 0.2;
+            granted = dispatch();
+        }
+        grant(granted);
+    }
+
+    /**
+     * Hands free slots to queued waiters. Called with the lock held; the waiters are completed by
+     * {@link #grant} after the lock is released, since completing one may start its request.
+     */
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        while (active < properties.getMaxConcurrent()) {
+            Waiter next = nextWaiter();
+            if (next == null) {
+                break;
+            }
+            active++;
+            String companyId = next.ticket.companyId();
+            if (companyId != null) {
+                decrement(companyQueued, companyId);
+                companyActive.merge(companyId, 1, Integer::sum);
+            }
+            next.grantedAt = System.nanoTime();
+            next.granted = true;
+            granted.add(next);
+        }
+        return granted;
+    }
+
+    private Waiter nextWaiter() {
+        // Smooth weighted round-robin over the tiers that have a waiter whose company is under its cap
+        Map<SubscriptionTier, Waiter> candidates = new EnumMap<>(SubscriptionTier.class);
+        SubscriptionTier selected = null;
+        int totalWeight = 0;
+        for (SubscriptionTier tier : SubscriptionTier.values()) {
+            Waiter candidate = firstEligible(queues.get(tier));
+            if (candidate == null) {
+                continue;
+            }
+            candidates.put(tier, candidate);
+            int weight = properties.weight(tier);
+            currentWeights.merge(tier, weight, Integer::sum);
+            totalWeight += weight;
+            if (selected == null || currentWeights.get(tier) > currentWeights.get(selected)) {
+                selected = tier;
+            }
+        }
+        if (selected == null) {
+            // Background work only takes a slot no chat request can use
+            return backgroundQueue.pollFirst();
+        }
+        currentWeights.merge(selected, -totalWeight, Integer::sum);
+        Waiter waiter = candidates.get(selected);
+        queues.get(selected).remove(waiter);
+        return waiter;
+    }
+
+    private Waiter firstEligible(Deque<Waiter> queue) {
+        Iterator<Waiter> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            String companyId = waiter.ticket.companyId();
+            // Anonymous callers have no tenant to cap; they only compete within the free tier
+            if (companyId == null || companyActive.getOrDefault(companyId, 0) < properties.getCompanyMaxConcurrent()) {
+                return waiter;
+            }
+        }
+        return null;
+    }
+
+    private void grant(List<Waiter> granted) {
+        for (Waiter waiter : granted) {
+            Timer.builder("rin.llm.scheduler.wait")
+                    .tag("tier", laneOf(waiter.ticket))
+                    .publishPercentiles(0.5, 0.95)
+                    .register(meterRegistry)
+                    .record(Duration.ofNanos(waiter.grantedAt - waiter.enqueuedAt));
+            waiter.sink.success(waiter);
+        }
+    }
+
+    /**
+     * Why a new request of {@code tier} from {@code companyId} cannot queue, or null if it can. Reserved places
+     * count as queued. Called with the lock held.
+     */
+    private String capacityProblem(SubscriptionTier tier, String companyId) {
+        if (pending(tier) >= properties.getQueueCapacity()) {
+            return "queue_full";
+        }
+        if (companyId != null && companyQueued.getOrDefault(companyId, 0) >= properties.getCompanyMaxQueued()) {
+            return "company_queue_full";
+        }
+        return null;
+    }
+
+    /**
+     * Requests of {@code tier} that will need a slot: queued waiters plus admitted tickets not yet scheduled.
+     */
+    private int pending(SubscriptionTier tier) {
+        return queues.get(tier).size() + reserved.get(tier);
+    }
+
+    /**
+     * How long a new request of {@code tier} would wait: the requests served before it, assuming every tier
+     * with a backlog keeps taking its weighted share, times the average slot time spread over the slots.
+     * Called with the lock held.
+     */
+    private Duration expectedWait(SubscriptionTier tier) {
+        int queued = 0;
+        int backloggedWeight = properties.weight(tier);
+        for (SubscriptionTier other : SubscriptionTier.values()) {
+            int pending = pending(other);
+            queued += pending;
+            if (other != tier && pending > 0) {
+                backloggedWeight += properties.weight(other);
+            }
+        }
+        if (queued == 0 && active < properties.getMaxConcurrent()) {
+            return Duration.ZERO;
+        }
+        double share = (double) properties.weight(tier) / backloggedWeight;
+        double ahead = Math.min(pending(tier) / share, queued);
+        return Duration.ofMillis((long) ((ahead + 1) * averageServiceMillis / properties.getMaxConcurrent()));
+    }
+
+    private LlmCapacityExceededException reject(SubscriptionTier tier, String reason, Duration retryAfter) {
+        return reject(tagOf(tier), reason, retryAfter);
+    }
+
+    private LlmCapacityExceededException reject(String lane, String reason, Duration retryAfter) {
+        Counter.builder("rin.llm.scheduler.rejected")
+                .tag("tier", lane)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        log.debug("Rejected {} chat request ({}), retry after {}ms", lane, reason, retryAfter.toMillis());
+        return new LlmCapacityExceededException(
+                "Queue timeout: Rin is busy with other conversations right now, please retry shortly", retryAfter);
+    }
+
+    private SubscriptionTier tierOf(String companyId) {
+        if (companyId == null) {
+            return SubscriptionTier.FREE;
+        }
+        try {
+            return companyTiers.computeIfAbsent(companyId, id -> companyRepository.findById(id)
+                    .map(Company::getTier)
+                    .orElse(SubscriptionTier.FREE));
+        } catch (Exception e) {
+            log.debug("Could not resolve tier of company {}: {}", companyId, e.getMessage());
+            return SubscriptionTier.FREE;
+        }
+    }
+
+    private int queueDepth(SubscriptionTier tier) {
+        synchronized (lock) {
+            return queues.get(tier).size();
+        }
+    }
+
+    private int activeRequests() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    private static void decrement(Map<String, Integer> counts, String companyId) {
+        if (companyId != null) {
+            counts.computeIfPresent(companyId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private Deque<Waiter> queueOf(Ticket ticket) {
+        return ticket.background ? backgroundQueue : queues.get(ticket.tier());
+    }
+
+    private static String laneOf(Ticket ticket) {
+        return ticket.background ? "background" : tagOf(ticket.tier());
+    }
+
+    private static String tagOf(SubscriptionTier tier) {
+        return tier.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Result of a successful admission check, carrying what the queues need to know about the caller.
+     */
+    public static final class Ticket {
+        private final SubscriptionTier tier;
+        private final String companyId;
+        private final boolean background;
+        // Holds a place from admission until the ticket is queued or cancelled; guarded by the scheduler lock
+        private boolean reserved;
+
+        private Ticket(SubscriptionTier tier, String companyId, boolean background) {
+            this.tier = tier;
+            this.companyId = companyId;
+            this.background = background;
+        }
+
+        public SubscriptionTier tier() {
+            return tier;
+        }
+
+        public String companyId() {
+            return companyId;
+        }
+    }
+
+    private static final class Waiter {
+        private final Ticket ticket;
+        private final MonoSink<Waiter> sink;
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long grantedAt;
+        private volatile boolean granted;
+
+        private Waiter(Ticket ticket, MonoSink<Waiter> sink) {
+            this.ticket = ticket;
+            this.sink = sink;
+        }
+    }
+}
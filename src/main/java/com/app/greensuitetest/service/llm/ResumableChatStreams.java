@@ -0,0 +1,148 @@
+package com.app.greensuitetest.service.llm;
+
+import com.app.greensuitetest.config.StateCache;
+import com.app.greensuitetest.config.StateCacheFactory;
+import com.app.greensuitetest.exception.EntityNotFoundException;
+import com.app.greensuitetest.exception.LlmCapacityExceededException;
+import com.app.greensuitetest.exception.ValidationException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns a chat token stream into Server-Sent Events that survive a dropped connection. Tokens are batched
+ * into frames on a short time or size window, so a response is a few dozen writes instead of one per token.
+ * Every frame has an id of the form {@code <streamId>:<sequence>}, and the frames of a response are kept for a
+ * few minutes: a client that reconnects with {@code Last-Event-ID} gets the frames it missed and then the rest
+ * of the live response, instead of paying for a new generation.
+ * <p>
+ * A complete response ends with a {@code done} frame. A generation that fails ends with an {@code error} frame
+ * instead, whose data carries a {@code reason} ({@code capacity} when the model was saturated, otherwise
+ * {@code failed}) and, for {@code capacity}, the {@code retryAfterSeconds} a 429 would have carried; whatever
+ * arrived before it is a truncated answer.
+ * <p>
+ * The generation is subscribed here, not by the HTTP response, so it runs to the end (and the exchange is
+ * saved to memory) even while no client is connected. Buffers are held in memory on the node that served the
+ * request, so resuming needs the same sticky routing as the original call.
+ */
+@Slf4j
+@Service
+public class ResumableChatStreams {
+
+    public static final String TOKEN_EVENT = "token";
+    public static final String DONE_EVENT = "done";
+    public static final String ERROR_EVENT = "error";
+
+    private final StateCache<String, ChatStream> streams;
+
+    @Value("${app.chat.stream.batch-window:40ms}")
+    private Duration batchWindow;
+
+    @Value("${app.chat.stream.batch-max-tokens:24}")
+    private int batchMaxTokens;
+
+    public ResumableChatStreams(StateCacheFactory stateCacheFactory) {
+        this.streams = stateCacheFactory.create("chat-stream-buffer");
+    }
+
+    /**
+     * Starts buffering {@code tokens} as a new stream owned by {@code ownerKey} and returns its events.
+     */
+    public Flux<ServerSentEvent<Map<String, String>>> start(String ownerKey, Flux<String> tokens) {
+        ChatStream stream = new ChatStream(UUID.randomUUID().toString(), ownerKey);
+        streams.put(stream.id, stream);
+
+        // The failure is held back until the batching completes; an error would discard the tokens still buffered
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        tokens.filter(token -> !token.isEmpty())
+                .onErrorResume(error -> {
+                    failure.set(error);
+                    return Flux.empty();
+                })
+                .bufferTimeout(batchMaxTokens, batchWindow)
+                .map(batch -> String.join("", batch))
+                .subscribe(stream::append, stream::fail, () -> {
+                    if (failure.get() != null) {
+                        stream.fail(failure.get());
+                    } else {
+                        stream.complete();
+                    }
+                });
+
+        return stream.events(0);
+    }
+
+    /**
+     * Events of a buffered stream after the frame {@code lastEventId}, followed by the rest of the live
+     * response if it is still being generated.
+     */
+    public Flux<ServerSentEvent<Map<String, String>>> resume(String ownerKey, String lastEventId) {
+        int separator = lastEventId.lastIndexOf(':');
+        long lastSequence;
+        try {
+            lastSequence = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new ValidationException("Malformed Last-Event-ID", "lastEventId", lastEventId);
+        }
+        ChatStream stream = separator > 0 ? streams.get(lastEventId.substring(0, separator)) : null;
+        // A stream of another conversation is reported exactly like an expired one
+        if (stream == null || !stream.ownerKey.equals(ownerKey)) {
+            throw new EntityNotFoundException("Chat stream has expired; send the message again");
+        }
+        log.debug("Resuming chat stream {} after frame {}", stream.id, lastSequence);
+        return stream.events(lastSequence);
+    }
+
+    private static final class ChatStream {
+        private final String id;
+        private final String ownerKey;
+        // Keeps every frame of the response; a response is at most a few hundred frames
+        private final Sinks.Many<Frame> frames = Sinks.many().replay().all();
+        private long sequence;
+
+        private ChatStream(String id, String ownerKey) {
+            this.id = id;
+            this.ownerKey = ownerKey;
+        }
+
+        private synchronized void append(String text) {
+            frames.tryEmitNext(new Frame(++sequence, TOKEN_EVENT, Map.of("text", text)));
+        }
+
+        private synchronized void complete() {
+            frames.tryEmitNext(new Frame(++sequence, DONE_EVENT, Map.of("text", "")));
+            frames.tryEmitComplete();
+        }
+
+        private synchronized void fail(Throwable error) {
+            log.warn("Chat stream {} failed: {}", id, error.getMessage());
+            Map<String, String> data = error instanceof LlmCapacityExceededException capacity
+                    ? Map.of("reason", "capacity", "retryAfterSeconds", String.valueOf(capacity.getRetryAfterSeconds()))
+                    : Map.of("reason", "failed");
+            frames.tryEmitNext(new Frame(++sequence, ERROR_EVENT, data));
+            frames.tryEmitComplete();
+        }
+
+        private Flux<ServerSentEvent<Map<String, String>>> events(long afterSequence) {
+            return frames.asFlux()
+                    .filter(frame -> frame.sequence() > afterSequence)
+                    .map(frame -> ServerSentEvent.<Map<String, String>>builder()
+                            .id(id + ":" + frame.sequence())
+                            .event(frame.event())
+                            // JSON-encoded so newlines in the text cannot break the event framing
+                            .data(frame.data())
+                            .build());
+        }
+    }
+
+    private record Frame(long sequence, String event, Map<String, String> data) {
+    }
+}
@@ -0,0 +1,388 @@
+package com.app.greensuitetest.service.vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact inverted index (term -> postings of chunk ordinal and term frequency) scored with Okapi BM25.
+ * Chunks are keyed by the same id used in the vector store so results can be fused by id.
+ * <p>
+ * Removals are tombstoned and compacted once they exceed a fifth of the index.
+ */
+public class Bm25Index {
+
+    private static final int SNAPSHOT_MAGIC = 0x424D3235; // "BM25"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "been", "but", "by", "can", "do", "does", "for", "from",
+            "has", "have", "how", "i", "if", "in", "into", "is", "it", "its", "me", "my", "of", "on", "or", "our",
+            "said", "so", "than", "that", "the", "their", "them", "then", "there", "these", "they", "this", "to",
+            "was", "we", "what", "when", "which", "who", "why", "will", "with", "would", "you", "your");
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> ordinalById = new HashMap<>();
+    private final List<String> ids = new ArrayList<>();
+    private int[] lengths = new int[1024];
+    private final BitSet removed = new BitSet();
+    private long totalLength;
+
+    /**
+     * Lower-cased alphanumeric tokens without stop words. Shared by indexing and querying so both
+     * sides agree on what a term is.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean alnum = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (alnum && start < 0) {
+                start = i;
+            } else if (!alnum && start >= 0) {
+                String token = lower.substring(start, i);
+                if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    public static Set<String> queryTerms(String query) {
+        return new LinkedHashSet<>(tokenize(query));
+    }
+
+    public void add(String id, String text) {
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        List<String> tokens = tokenize(text);
+        for (String token : tokens) {
+            frequencies.merge(token, 1, Integer::sum);
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            int ordinal = ids.size();
+            ids.add(id);
+            ordinalById.put(id, ordinal);
+            if (ordinal >= lengths.length) {
+                lengths = Arrays.copyOf(lengths, lengths.length * 2);
+            }
+            lengths[ordinal] = tokens.size();
+            totalLength += tokens.size();
+            frequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new Postings()).append(ordinal, tf));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            idsToRemove.forEach(this::removeInternal);
+            if (removed.cardinality() > ids.size() / 5) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            ordinalById.clear();
+            ids.clear();
+            removed.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Scores every chunk containing at least one query term. Returned hits carry the query terms they
+     * matched, so callers never need to re-tokenise chunk text.
+     */
+    public Map<String, Hit> score(Collection<String> queryTerms) {
+        lock.readLock().lock();
+        try {
+            int liveDocs = ordinalById.size();
+            if (liveDocs == 0 || queryTerms.isEmpty()) {
+                return Map.of();
+            }
+            double averageLength = (double) totalLength / liveDocs;
+            Map<Integer, Hit> byOrdinal = new HashMap<>();
+
+            for (String term : queryTerms) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null) {
+                    continue;
+                }
+                // Tombstoned postings stay in the list until compaction; idf counts only live chunks
+                int documentFrequency = termPostings.liveCount(removed);
+                if (documentFrequency == 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveDocs - documentFrequency + 0.5) / (documentFrequency + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int ordinal = termPostings.docs[i];
+                    if (removed.get(ordinal)) {
+                        continue;
+                    }
+                    int tf = termPostings.freqs[i];
+                    double norm = tf + K1 * (1 - B + B * lengths[ordinal] / averageLength);
+                    double termScore = idf * (tf * (K1 + 1)) / norm;
+                    byOrdinal.computeIfAbsent(ordinal, o -> new Hit(ids.get(o))).accumulate(term, termScore);
+                }
+            }
+
+            Map<String, Hit> hits = new HashMap<>(byOrdinal.size());
+            byOrdinal.values().forEach(hit -> hits.put(hit.getId(), hit));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinalById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void snapshot(Path file) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(ids.size());
+                for (int ordinal = 0; ordinal < ids.size(); ordinal++) {
+                    out.writeUTF(ids.get(ordinal));
+                    out.writeInt(lengths[ordinal]);
+                    out.writeBoolean(removed.get(ordinal));
+                }
+                out.writeInt(postings.size());
+                for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    Postings termPostings = entry.getValue();
+                    out.writeInt(termPostings.size);
+                    for (int i = 0; i < termPostings.size; i++) {
+                        out.writeInt(termPostings.docs[i]);
+                        out.writeInt(termPostings.freqs[i]);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the in-memory index with the snapshot at {@code file}; returns false if none exists.
+     */
+    public boolean load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return false;
+        }
+        lock.writeLock().lock();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported BM25 snapshot: " + file);
+            }
+            postings.clear();
+            ordinalById.clear();
+            ids.clear();
+            removed.clear();
+            totalLength = 0;
+
+            int documentCount = in.readInt();
+            lengths = new int[Math.max(documentCount, 1024)];
+            for (int ordinal = 0; ordinal < documentCount; ordinal++) {
+                String id = in.readUTF();
+                ids.add(id);
+                lengths[ordinal] = in.readInt();
+                if (in.readBoolean()) {
+                    removed.set(ordinal);
+                } else {
+                    ordinalById.put(id, ordinal);
+                    totalLength += lengths[ordinal];
+                }
+            }
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int size = in.readInt();
+                Postings termPostings = new Postings(size);
+                for (int i = 0; i < size; i++) {
+                    termPostings.append(in.readInt(), in.readInt());
+                }
+                postings.put(term, termPostings);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeInternal(String id) {
+        Integer ordinal = ordinalById.remove(id);
+        if (ordinal != null) {
+            removed.set(ordinal);
+            totalLength -= lengths[ordinal];
+        }
+    }
+
+    /**
+     * Drops tombstoned chunks and renumbers ordinals; called with the write lock held.
+     */
+    private void compact() {
+        int[] remap = new int[ids.size()];
+        List<String> liveIds = new ArrayList<>(ordinalById.size());
+        int[] liveLengths = new int[Math.max(ordinalById.size(), 1024)];
+        for (int ordinal = 0; ordinal < ids.size(); ordinal++) {
+            if (removed.get(ordinal)) {
+                remap[ordinal] = -1;
+            } else {
+                remap[ordinal] = liveIds.size();
+                liveLengths[liveIds.size()] = lengths[ordinal];
+                liveIds.add(ids.get(ordinal));
+            }
+        }
+
+        Map<String, Postings> compacted = new HashMap<>(postings.size());
+        postings.forEach((term, termPostings) -> {
+            Postings live = new Postings();
+            for (int i = 0; i < termPostings.size; i++) {
+                int target = remap[termPostings.docs[i]];
+                if (target >= 0) {
+                    live.append(target, termPostings.freqs[i]);
+                }
+            }
+            if (live.size > 0) {
+                compacted.put(term, live);
+            }
+        });
+
+        postings.clear();
+        postings.putAll(compacted);
+        ids.clear();
+        ids.addAll(liveIds);
+        lengths = liveLengths;
+        removed.clear();
+        ordinalById.clear();
+        for (int ordinal = 0; ordinal < ids.size(); ordinal++) {
+            ordinalById.put(ids.get(ordinal), ordinal);
+        }
+    }
+
+    private static final class Postings {
+        private int[] docs;
+        private int[] freqs;
+        private int size;
+
+        Postings() {
+            this(4);
+        }
+
+        Postings(int capacity) {
+            docs = new int[Math.max(capacity, 1)];
+            freqs = new int[Math.max(capacity, 1)];
+        }
+
+        void append(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+
+        int liveCount(BitSet removed) {
+            if (removed.isEmpty()) {
+                return size;
+            }
+            int live = 0;
+            for (int i = 0; i < size; i++) {
+                if (!removed.get(docs[i])) {
+                    live++;
+                }
+            }
+            return live;
+        }
+    }
+
+    public static final class Hit {
+        private final String id;
+        private final List<String> matchedTerms = new ArrayList<>(4);
+        private double score;
+
+        Hit(String id) {
+            this.id = id;
+        }
+
+        void accumulate(String term, double termScore) {
+            matchedTerms.add(term);
+            score += termScore;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public List<String> getMatchedTerms() {
+            return matchedTerms;
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package com.app.greensuitetest.service.vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph over unit-length vectors (cosine similarity).
+ * <p>
+ * Vectors are kept in a {@link MappedVectorStorage} file; only the adjacency lists live on the heap.
+ * The graph is persisted as a compact binary snapshot next to the vector file so a restart only has
+ * to read the links back instead of re-inserting every vector.
+ * <p>
+ * With a {@link VectorQuantizer.Mode} other than {@code NONE}, searches traverse the graph on the
+ * quantised codes held in memory and only the best {@code k * rescoreFactor} candidates are re-scored
+ * against the full-precision vectors.
+ * <p>
+ * Not thread-safe: callers serialise writers and may run concurrent searches under a read lock.
+ */
+public class HnswIndex implements Closeable {
+
+    public static final String VECTORS_FILE = "vectors.bin";
+    public static final String GRAPH_FILE = "graph.bin";
+
+    private static final int GRAPH_MAGIC = 0x484E5357; // "HNSW"
+    private static final int GRAPH_VERSION = 1;
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final MappedVectorStorage vectors;
+    private final VectorQuantizer quantizer;
+    private final int rescoreFactor;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    // links.get(node)[level] = neighbour node ids on that level
+    private final List<int[][]> links = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    private HnswIndex(Path directory, int dimensions, int m, int efConstruction, int expectedSize,
+                      VectorQuantizer.Mode quantization, int rescoreFactor) throws IOException {
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        Files.createDirectories(directory);
+        this.vectors = new MappedVectorStorage(directory.resolve(VECTORS_FILE), dimensions, expectedSize);
+        this.quantizer = new VectorQuantizer(quantization, dimensions);
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+    }
+
+    /**
+     * Starts an empty index in {@code directory}. A vector file left without a graph holds nothing that was ever
+     * snapshotted and is replaced; an existing graph snapshot is never overwritten.
+     */
+    public static HnswIndex create(Path directory, int dimensions, int m, int efConstruction,
+                                   VectorQuantizer.Mode quantization, int rescoreFactor) throws IOException {
+        if (Files.exists(directory.resolve(GRAPH_FILE))) {
+            throw new IOException("Refusing to overwrite the HNSW snapshot in " + directory);
+        }
+        Files.deleteIfExists(directory.resolve(VECTORS_FILE));
+        return new HnswIndex(directory, dimensions, m, efConstruction, 0, quantization, rescoreFactor);
+    }
+
+    /**
+     * Re-opens a persisted index, or returns {@code null} when no complete snapshot exists.
+     * Quantised codes are not persisted; they are re-derived from the vector file, which lets the
+     * quantisation mode change between restarts.
+     */
+    public static HnswIndex load(Path directory, int m, int efConstruction,
+                                 VectorQuantizer.Mode quantization, int rescoreFactor) throws IOException {
+        Path graphFile = directory.resolve(GRAPH_FILE);
+        if (!Files.exists(graphFile) || !Files.exists(directory.resolve(VECTORS_FILE))) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            if (in.readInt() != GRAPH_MAGIC || in.readInt() != GRAPH_VERSION) {
+                throw new IOException("Unsupported HNSW graph snapshot: " + graphFile);
+            }
+            int dimensions = in.readInt();
+            int size = in.readInt();
+            // A damaged header must not grow the vector file to whatever size it claims
+            if (dimensions <= 0 || size < 0 || (long) size * dimensions * Float.BYTES > Files.size(directory.resolve(VECTORS_FILE))) {
+                throw new IOException("HNSW graph snapshot " + graphFile + " does not match its vector file");
+            }
+            HnswIndex index = new HnswIndex(directory, dimensions, m, efConstruction, size, quantization, rescoreFactor);
+            try {
+                index.readGraph(in, size);
+            } catch (IOException | RuntimeException e) {
+                index.close();
+                throw e;
+            }
+            return index;
+        }
+    }
+
+    private void readGraph(DataInputStream in, int size) throws IOException {
+        entryPoint = in.readInt();
+        maxLevel = in.readInt();
+        for (int node = 0; node < size; node++) {
+            if (in.readBoolean()) {
+                deleted.set(node);
+            }
+            int levels = in.readInt();
+            int[][] nodeLinks = new int[levels][];
+            for (int level = 0; level < levels; level++) {
+                int count = in.readInt();
+                int[] neighbours = new int[count];
+                for (int i = 0; i < count; i++) {
+                    neighbours[i] = in.readInt();
+                }
+                nodeLinks[level] = neighbours;
+            }
+            links.add(nodeLinks);
+            if (quantizer.mode() != VectorQuantizer.Mode.NONE) {
+                quantizer.encode(node, vectors.read(node));
+            }
+        }
+    }
+
+    /**
+     * Writes the adjacency lists atomically and flushes the mapped vector file.
+     */
+    public void snapshot(Path directory) throws IOException {
+        vectors.force();
+        Path tmp = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(GRAPH_MAGIC);
+            out.writeInt(GRAPH_VERSION);
+            out.writeInt(dimensions);
+            out.writeInt(links.size());
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < links.size(); node++) {
+                out.writeBoolean(deleted.get(node));
+                int[][] nodeLinks = links.get(node);
+                out.writeInt(nodeLinks.length);
+                for (int[] neighbours : nodeLinks) {
+                    out.writeInt(neighbours.length);
+                    for (int neighbour : neighbours) {
+                        out.writeInt(neighbour);
+                    }
+                }
+            }
+        }
+        Files.move(tmp, directory.resolve(GRAPH_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Inserts a vector and returns its node id. The vector is normalised in place.
+     */
+    public int add(float[] vector) throws IOException {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        normalize(vector);
+
+        int node = links.size();
+        int level = randomLevel();
+        vectors.write(node, vector);
+        quantizer.encode(node, vector);
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[0];
+        }
+        links.add(nodeLinks);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        NodeScorer exact = other -> vectors.dot(other, vector);
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(exact, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(exact, current, efConstruction, l, null);
+            int[] selected = selectNeighbours(candidates, m);
+            nodeLinks[l] = selected;
+            int maxConnections = l == 0 ? maxM0 : m;
+            for (int neighbour : selected) {
+                connect(neighbour, node, l, maxConnections);
+            }
+            current = candidates.get(0).node();
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        return node;
+    }
+
+    /**
+     * Tombstones a node. It keeps routing traffic through the graph but is never returned.
+     */
+    public void markDeleted(int node) {
+        deleted.set(node);
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted.get(node);
+    }
+
+    /**
+     * Returns up to {@code k} live nodes most similar to {@code query}, best first.
+     * Nodes rejected by {@code filter} are traversed but never collected, so selective
+     * metadata filters still return a full result set instead of post-filtering a short one.
+     */
+    public List<Candidate> search(float[] query, int k, int ef, IntPredicate filter) {
+        return search(query, k, ef, filter, true);
+    }
+
+    /**
+     * Same as {@link #search(float[], int, int, IntPredicate)}; {@code useQuantization = false} forces a
+     * full-precision traversal even when codes are available (used to compare both paths).
+     */
+    public List<Candidate> search(float[] query, int k, int ef, IntPredicate filter, boolean useQuantization) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        float[] normalized = query.clone();
+        normalize(normalized);
+        IntPredicate accept = node -> !deleted.get(node) && (filter == null || filter.test(node));
+
+        if (!useQuantization || quantizer.mode() == VectorQuantizer.Mode.NONE) {
+            List<Candidate> results = traverse(other -> vectors.dot(other, normalized), Math.max(ef, k), accept);
+            return results.size() > k ? new ArrayList<>(results.subList(0, k)) : results;
+        }
+
+        // Candidate generation on codes, then exact re-scoring of the oversampled head
+        VectorQuantizer.Query codes = quantizer.prepare(normalized);
+        int oversampled = k * rescoreFactor;
+        List<Candidate> approximate = traverse(other -> quantizer.score(other, codes), Math.max(ef, oversampled), accept);
+        List<Candidate> rescored = new ArrayList<>(Math.min(approximate.size(), oversampled));
+        for (int i = 0; i < approximate.size() && i < oversampled; i++) {
+            int node = approximate.get(i).node();
+            rescored.add(new Candidate(node, vectors.dot(node, normalized)));
+        }
+        rescored.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return rescored.size() > k ? new ArrayList<>(rescored.subList(0, k)) : rescored;
+    }
+
+    /**
+     * Brute-force full-precision scan over all live nodes; the ground truth for recall measurements.
+     */
+    public List<Candidate> exactSearch(float[] query, int k) {
+        float[] normalized = query.clone();
+        normalize(normalized);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+        for (int node = 0; node < links.size(); node++) {
+            if (deleted.get(node)) {
+                continue;
+            }
+            float score = vectors.dot(node, normalized);
+            if (best.size() < k) {
+                best.add(new Candidate(node, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Candidate(node, score));
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return sorted;
+    }
+
+    public float[] vector(int node) {
+        return vectors.read(node);
+    }
+
+    public float similarity(int node, float[] normalizedQuery) {
+        return vectors.dot(node, normalizedQuery);
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    public int liveSize() {
+        return links.size() - deleted.cardinality();
+    }
+
+    public int deletedSize() {
+        return deleted.cardinality();
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public long vectorBytes() {
+        return vectors.sizeInBytes();
+    }
+
+    public long quantizedBytes() {
+        return quantizer.memoryBytes();
+    }
+
+    public VectorQuantizer.Mode quantization() {
+        return quantizer.mode();
+    }
+
+    @Override
+    public void close() throws IOException {
+        vectors.close();
+    }
+
+    public static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float inv = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inv;
+        }
+    }
+
+    private List<Candidate> traverse(NodeScorer scorer, int ef, IntPredicate accept) {
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(scorer, current, l);
+        }
+        return searchLayer(scorer, current, ef, 0, accept);
+    }
+
+    private int greedyClosest(NodeScorer scorer, int start, int level) {
+        int current = start;
+        float best = scorer.score(current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbour : neighbours(current, level)) {
+                float score = scorer.score(neighbour);
+                if (score > best) {
+                    best = score;
+                    current = neighbour;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer. With a non-null {@code accept} predicate only accepted nodes enter
+     * the result set; traversal itself is unrestricted.
+     */
+    private List<Candidate> searchLayer(NodeScorer scorer, int start, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::score));
+
+        Candidate first = new Candidate(start, scorer.score(start));
+        visited.set(start);
+        frontier.add(first);
+        if (accept == null || accept.test(start)) {
+            results.add(first);
+        }
+
+        while (!frontier.isEmpty()) {
+            Candidate closest = frontier.poll();
+            if (results.size() >= ef && closest.score() < results.peek().score()) {
+                break;
+            }
+            for (int neighbour : neighbours(closest.node(), level)) {
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = scorer.score(neighbour);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Candidate candidate = new Candidate(neighbour, score);
+                    frontier.add(candidate);
+                    if (accept == null || accept.test(neighbour)) {
+                        results.add(candidate);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        return sorted;
+    }
+
+    /**
+     * Neighbour selection heuristic from the HNSW paper: keep a candidate only if it is closer to the
+     * query than to every neighbour already kept, which preserves long-range links between clusters.
+     */
+    private int[] selectNeighbours(List<Candidate> candidates, int limit) {
+        List<Candidate> kept = new ArrayList<>(limit);
+        for (Candidate candidate : candidates) {
+            if (kept.size() >= limit) {
+                break;
+            }
+            float[] candidateVector = vectors.read(candidate.node());
+            boolean diverse = true;
+            for (Candidate existing : kept) {
+                if (vectors.dot(existing.node(), candidateVector) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                kept.add(candidate);
+            }
+        }
+        // Top up with the closest leftovers so sparse regions still get enough links
+        for (Candidate candidate : candidates) {
+            if (kept.size() >= limit) {
+                break;
+            }
+            if (!kept.contains(candidate)) {
+                kept.add(candidate);
+            }
+        }
+        return kept.stream().mapToInt(Candidate::node).toArray();
+    }
+
+    private void connect(int node, int newNeighbour, int level, int maxConnections) {
+        int[][] nodeLinks = links.get(node);
+        int[] current = nodeLinks[level];
+        int[] grown = new int[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = newNeighbour;
+
+        if (grown.length <= maxConnections) {
+            nodeLinks[level] = grown;
+            return;
+        }
+
+        float[] nodeVector = vectors.read(node);
+        List<Candidate> candidates = new ArrayList<>(grown.length);
+        for (int neighbour : grown) {
+            candidates.add(new Candidate(neighbour, vectors.dot(neighbour, nodeVector)));
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::score).reversed());
+        nodeLinks[level] = selectNeighbours(candidates, maxConnections);
+    }
+
+    private int[] neighbours(int node, int level) {
+        int[][] nodeLinks = links.get(node);
+        return level < nodeLinks.length ? nodeLinks[level] : new int[0];
+    }
+
+    private int randomLevel() {
+        double r = random.nextDouble();
+        return (int) Math.floor(-Math.log(Math.max(r, Double.MIN_VALUE)) * levelMultiplier);
+    }
+
+    public record Candidate(int node, float score) {
+    }
+
+    @FunctionalInterface
+    private interface NodeScorer {
+        float score(int node);
+    }
+}
@@ -0,0 +1,748 @@
+package com.app.greensuitetest.service.vector;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * In-process {@link VectorStore} backed by {@link HnswIndex}. Selected with
+ * {@code app.vectorstore.type=local}; retrieval then never leaves the JVM.
+ * <p>
+ * Chunk text and metadata are kept on the heap and written to {@code documents.jsonl} alongside the
+ * graph snapshot. Scores follow the Atlas cosine convention {@code (1 + cos) / 2} so existing
+ * similarity thresholds keep their meaning when switching stores.
+ * <p>
+ * Chunks are partitioned by the {@code partitionKey} metadata field (the tenant's {@code company_id}),
+ * each partition with its own graph. A search whose filter pins the partition key with {@code ==} or
+ * {@code in} only walks those partitions, so other tenants' vectors are never visited and latency does
+ * not grow with the number of tenants. Chunks without the key live in the root partition.
+ * <p>
+ * Deleted chunks stay in the graph as tombstones until a quarter of a partition is tombstoned; the next
+ * snapshot then rebuilds it from the live chunks. A partition whose snapshot cannot be read is moved to
+ * {@code quarantine/} and started empty, never overwritten.
+ */
+@Slf4j
+public class LocalHnswVectorStore implements VectorStore {
+
+    private static final String DOCUMENTS_FILE = "documents.jsonl";
+    private static final String PARTITIONS_DIRECTORY = "partitions";
+    private static final String ROOT_PARTITION = "";
+    private static final String QUARANTINE_DIRECTORY = "quarantine";
+    private static final String COMPACTION_DIRECTORY = "compaction";
+    private static final String COMPACTION_COMMITTED = "COMMITTED";
+    private static final List<String> SNAPSHOT_FILES = List.of(DOCUMENTS_FILE, HnswIndex.VECTORS_FILE, HnswIndex.GRAPH_FILE);
+    private static final double COMPACTION_RATIO = 0.25;
+
+    private final EmbeddingModel embeddingModel;
+    private final Path directory;
+    private final String partitionKey;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final VectorQuantizer.Mode quantization;
+    private final int rescoreFactor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    // chunk id -> partition currently holding it
+    private final Map<String, Partition> partitionById = new HashMap<>();
+
+    public LocalHnswVectorStore(EmbeddingModel embeddingModel, Path directory, String partitionKey, int m, int efConstruction,
+                                int efSearch, VectorQuantizer.Mode quantization, int rescoreFactor) {
+        this.embeddingModel = embeddingModel;
+        this.directory = directory;
+        this.partitionKey = partitionKey;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.quantization = quantization;
+        this.rescoreFactor = rescoreFactor;
+        loadSnapshot();
+    }
+
+    @Override
+    public void add(List<Document> batch) {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+
+        // Embed outside the lock; the Ollama call dominates and must not block searches
+        List<String> texts = batch.stream().map(Document::getText).toList();
+        List<float[]> embeddings = embeddingModel.embed(texts);
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Document document = batch.get(i);
+                float[] vector = embeddings.get(i);
+                String id = document.getId() != null ? document.getId() : UUID.randomUUID().toString();
+
+                Partition previous = partitionById.remove(id);
+                if (previous != null) {
+                    previous.remove(id);
+                }
+
+                Partition partition = partitions.computeIfAbsent(partitionOf(document.getMetadata()), this::newPartition);
+                partition.add(new StoredDocument(id, document.getText(), new LinkedHashMap<>(document.getMetadata())), vector);
+                partitionById.put(id, partition);
+            }
+            dirty.set(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write vectors to local HNSW index", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Partition partition = partitionById.remove(id);
+                if (partition != null) {
+                    partition.remove(id);
+                    dirty.set(true);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Predicate<Map<String, Object>> predicate = MetadataFilterEvaluator.toPredicate(filterExpression);
+        List<String> matching = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Partition partition : partitionsFor(filterExpression)) {
+                partition.nodeById.forEach((id, node) -> {
+                    if (predicate.test(partition.documents.get(node).metadata())) {
+                        matching.add(id);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        delete(matching);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        Filter.Expression filter = request.hasFilterExpression() ? request.getFilterExpression() : null;
+        Predicate<Map<String, Object>> predicate = filter != null ? MetadataFilterEvaluator.toPredicate(filter) : null;
+
+        lock.readLock().lock();
+        try {
+            List<Document> results = new ArrayList<>();
+            for (Partition partition : partitionsFor(filter)) {
+                if (partition.index == null) {
+                    continue;
+                }
+                List<HnswIndex.Candidate> hits = partition.index.search(query, request.getTopK(),
+                        Math.max(efSearch, request.getTopK()),
+                        predicate == null ? null : node -> predicate.test(partition.documents.get(node).metadata()));
+
+                for (HnswIndex.Candidate hit : hits) {
+                    double score = (1.0 + hit.score()) / 2.0;
+                    if (score < request.getSimilarityThreshold()) {
+                        continue;
+                    }
+                    StoredDocument stored = partition.documents.get(hit.node());
+                    Map<String, Object> metadata = new HashMap<>(stored.metadata());
+                    metadata.put("distance", 1.0 - score);
+                    results.add(Document.builder()
+                            .id(stored.id())
+                            .text(stored.text())
+                            .metadata(metadata)
+                            .score(score)
+                            .build());
+                }
+            }
+            results.sort(Comparator.comparingDouble(Document::getScore).reversed());
+            return results.size() > request.getTopK() ? new ArrayList<>(results.subList(0, request.getTopK())) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "LocalHnswVectorStore";
+    }
+
+    /**
+     * Direct lookup by chunk id, used to hydrate keyword-only hits during hybrid retrieval.
+     */
+    public List<Document> getDocuments(Collection<String> ids) {
+        lock.readLock().lock();
+        try {
+            List<Document> result = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                Partition partition = partitionById.get(id);
+                if (partition != null) {
+                    StoredDocument stored = partition.get(id);
+                    result.add(new Document(stored.id(), stored.text(), new HashMap<>(stored.metadata())));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEachDocument(Consumer<StoredDocument> consumer) {
+        lock.readLock().lock();
+        try {
+            for (Partition partition : partitions.values()) {
+                partition.nodeById.values().forEach(node -> consumer.accept(partition.documents.get(node)));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return partitionById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live chunk counts grouped by a metadata field; chunks without the field count under "unknown".
+     */
+    public Map<String, Long> countByMetadata(String key) {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> counts = new HashMap<>();
+            for (Partition partition : partitions.values()) {
+                for (Integer node : partition.nodeById.values()) {
+                    Object value = partition.documents.get(node).metadata().get(key);
+                    counts.merge(value != null ? String.valueOf(value) : "unknown", 1L, Long::sum);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets {@code key} to {@code value} on every live chunk that lacks it and returns how many changed.
+     * When {@code key} is the partition key the chunks move to that partition, reusing their stored vectors
+     * rather than embedding them again.
+     */
+    public int backfillMetadata(String key, String value) {
+        lock.writeLock().lock();
+        try {
+            int updated = 0;
+            for (Partition partition : List.copyOf(partitions.values())) {
+                for (Map.Entry<String, Integer> entry : List.copyOf(partition.nodeById.entrySet())) {
+                    int node = entry.getValue();
+                    StoredDocument stored = partition.documents.get(node);
+                    if (stored.metadata().containsKey(key)) {
+                        continue;
+                    }
+                    Map<String, Object> metadata = new LinkedHashMap<>(stored.metadata());
+                    metadata.put(key, value);
+                    StoredDocument tagged = new StoredDocument(stored.id(), stored.text(), metadata);
+                    String target = partitionOf(metadata);
+                    if (target.equals(partition.name)) {
+                        partition.documents.set(node, tagged);
+                        partition.dirty.set(true);
+                    } else {
+                        float[] vector = partition.index.vector(node);
+                        partition.remove(stored.id());
+                        Partition moved = partitions.computeIfAbsent(target, this::newPartition);
+                        moved.add(tagged, vector);
+                        partitionById.put(stored.id(), moved);
+                    }
+                    updated++;
+                }
+            }
+            if (updated > 0) {
+                dirty.set(true);
+            }
+            return updated;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move vectors in local HNSW index", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Map<String, Object> getIndexStats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            int nodes = 0;
+            int dimensions = 0;
+            long vectorBytes = 0;
+            long quantizedBytes = 0;
+            Map<String, Integer> partitionSizes = new TreeMap<>();
+            for (Partition partition : partitions.values()) {
+                partitionSizes.put(partition.name.isEmpty() ? "(none)" : partition.name, partition.nodeById.size());
+                if (partition.index != null) {
+                    nodes += partition.index.size();
+                    dimensions = partition.index.dimensions();
+                    vectorBytes += partition.index.vectorBytes();
+                    quantizedBytes += partition.index.quantizedBytes();
+                }
+            }
+            stats.put("directory", directory.toAbsolutePath().toString());
+            stats.put("partitionKey", partitionKey);
+            stats.put("partitions", partitionSizes);
+            stats.put("nodes", nodes);
+            stats.put("liveDocuments", partitionById.size());
+            stats.put("dimensions", dimensions);
+            stats.put("vectorFileBytes", vectorBytes);
+            stats.put("quantization", quantization.name());
+            stats.put("quantizedBytes", quantizedBytes);
+            stats.put("rescoreFactor", rescoreFactor);
+            stats.put("m", m);
+            stats.put("efConstruction", efConstruction);
+            stats.put("efSearch", efSearch);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recall@k of the configured search path against a brute-force scan, measured on the largest partition.
+     */
+    public Map<String, Object> benchmarkRecall(int queries, int k) {
+        lock.readLock().lock();
+        try {
+            Partition largest = partitions.values().stream()
+                    .filter(partition -> partition.index != null)
+                    .max(Comparator.comparingInt(partition -> partition.nodeById.size()))
+                    .orElse(null);
+            if (largest == null) {
+                return Map.of("error", "Local vector index is empty");
+            }
+            Map<String, Object> report = VectorIndexBenchmark.measureRecall(largest.index, queries, k, Math.max(efSearch, k));
+            report.put("partition", largest.name);
+            return report;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Persists the graphs and chunk payloads of partitions that changed since the last snapshot. Partitions
+     * with enough tombstones are rebuilt from their live chunks instead and swapped in afterwards.
+     */
+    @Scheduled(fixedDelayString = "${app.vectorstore.local.snapshot-interval-ms:30000}")
+    public void flushSnapshot() {
+        if (!dirty.compareAndSet(true, false)) {
+            return;
+        }
+
+        List<Compaction> compactions = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            int written = 0;
+            for (Partition partition : partitions.values()) {
+                if (partition.index == null || !partition.dirty.compareAndSet(true, false)) {
+                    continue;
+                }
+                try {
+                    if (partition.needsCompaction()) {
+                        compactions.add(stageCompaction(partition));
+                    } else {
+                        writeDocuments(partition.directory, partition.documents);
+                        partition.index.snapshot(partition.directory);
+                    }
+                    written++;
+                } catch (IOException e) {
+                    partition.dirty.set(true);
+                    dirty.set(true);
+                    log.error("Failed to write local HNSW snapshot to {}: {}", partition.directory, e.getMessage());
+                }
+            }
+            log.debug("Local HNSW snapshot written: {} partitions in {}ms", written, System.currentTimeMillis() - start);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        compactions.forEach(this::applyCompaction);
+    }
+
+    @PreDestroy
+    public void close() {
+        flushSnapshot();
+        lock.writeLock().lock();
+        try {
+            for (Partition partition : partitions.values()) {
+                if (partition.index != null) {
+                    partition.index.close();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close local HNSW index: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private String partitionOf(Map<String, Object> metadata) {
+        Object value = metadata.get(partitionKey);
+        return value != null ? String.valueOf(value) : ROOT_PARTITION;
+    }
+
+    /**
+     * Partitions a filter can match: only the pinned ones when the filter constrains the partition key,
+     * otherwise all of them.
+     */
+    private Collection<Partition> partitionsFor(Filter.Expression filter) {
+        Set<String> allowed = filter != null ? MetadataFilterEvaluator.allowedValues(filter, partitionKey) : null;
+        if (allowed == null) {
+            return partitions.values();
+        }
+        List<Partition> selected = new ArrayList<>(allowed.size());
+        for (String name : allowed) {
+            Partition partition = partitions.get(name);
+            if (partition != null) {
+                selected.add(partition);
+            }
+        }
+        return selected;
+    }
+
+    private Partition newPartition(String name) {
+        Path partitionDirectory = name.isEmpty()
+                ? directory
+                : directory.resolve(PARTITIONS_DIRECTORY).resolve(HexFormat.of().formatHex(name.getBytes(StandardCharsets.UTF_8)));
+        return new Partition(name, partitionDirectory);
+    }
+
+    private void loadSnapshot() {
+        long start = System.currentTimeMillis();
+        try {
+            Files.createDirectories(directory);
+            loadPartition(ROOT_PARTITION);
+
+            Path partitionsDirectory = directory.resolve(PARTITIONS_DIRECTORY);
+            if (Files.isDirectory(partitionsDirectory)) {
+                try (Stream<Path> entries = Files.list(partitionsDirectory)) {
+                    for (Path entry : entries.filter(Files::isDirectory).toList()) {
+                        String name;
+                        try {
+                            name = new String(HexFormat.of().parseHex(entry.getFileName().toString()), StandardCharsets.UTF_8);
+                        } catch (IllegalArgumentException e) {
+                            log.warn("Ignoring {}: not a local HNSW partition directory", entry);
+                            continue;
+                        }
+                        loadPartition(name);
+                    }
+                }
+            }
+            if (partitionById.isEmpty()) {
+                log.info("No local HNSW snapshot in {}, starting with an empty index", directory.toAbsolutePath());
+            } else {
+                log.info("Loaded local HNSW index with {} documents in {} partitions in {}ms",
+                        partitionById.size(), partitions.size(), System.currentTimeMillis() - start);
+            }
+        } catch (IOException e) {
+            // Starting empty would let the next add overwrite partitions that were never read
+            throw new UncheckedIOException("Failed to open local HNSW index in " + directory.toAbsolutePath(), e);
+        }
+    }
+
+    private void loadPartition(String name) throws IOException {
+        Partition partition = newPartition(name);
+        finishCompaction(partition.directory);
+        Path documentsFile = partition.directory.resolve(DOCUMENTS_FILE);
+        if (!Files.exists(documentsFile) && !Files.exists(partition.directory.resolve(HnswIndex.GRAPH_FILE))) {
+            return;
+        }
+
+        HnswIndex loaded = null;
+        try {
+            loaded = HnswIndex.load(partition.directory, m, efConstruction, quantization, rescoreFactor);
+            if (loaded == null) {
+                throw new IOException("snapshot is incomplete");
+            }
+            List<StoredDocument> storedDocuments = readDocuments(documentsFile);
+            if (storedDocuments.size() != loaded.size()) {
+                throw new IOException(storedDocuments.size() + " documents for " + loaded.size() + " nodes");
+            }
+
+            partition.index = loaded;
+            partition.documents.addAll(storedDocuments);
+            for (int node = 0; node < storedDocuments.size(); node++) {
+                if (!loaded.isDeleted(node)) {
+                    String id = storedDocuments.get(node).id();
+                    partition.nodeById.put(id, node);
+                    partitionById.put(id, partition);
+                }
+            }
+            partitions.put(name, partition);
+        } catch (IOException | RuntimeException e) {
+            if (loaded != null) {
+                try {
+                    loaded.close();
+                } catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+            quarantine(partition, e);
+        }
+    }
+
+    /**
+     * Moves an unreadable partition's snapshot out of the way so the partition can start empty without
+     * overwriting it. Its sources need re-ingesting; the files are kept for inspection.
+     */
+    private void quarantine(Partition partition, Exception cause) throws IOException {
+        String label = partition.name.isEmpty() ? "root" : partition.directory.getFileName().toString();
+        Path target = directory.resolve(QUARANTINE_DIRECTORY).resolve(label + "-" + System.currentTimeMillis());
+        Files.createDirectories(target);
+        for (String file : SNAPSHOT_FILES) {
+            Path source = partition.directory.resolve(file);
+            if (Files.exists(source)) {
+                Files.move(source, target.resolve(file));
+            }
+        }
+        log.error("Local HNSW partition '{}' could not be loaded ({}); moved its snapshot to {} and started it empty",
+                partition.name, cause.getMessage(), target);
+    }
+
+    /**
+     * Builds a copy of the partition without its tombstones in {@code compaction/}. Runs under the read lock,
+     * so searches continue; {@link #applyCompaction} swaps it in if nothing was written in the meantime.
+     */
+    private Compaction stageCompaction(Partition partition) throws IOException {
+        Path staged = partition.directory.resolve(COMPACTION_DIRECTORY);
+        deleteStaged(staged);
+        HnswIndex source = partition.index;
+        HnswIndex compacted = HnswIndex.create(staged, source.dimensions(), m, efConstruction, quantization, rescoreFactor);
+        List<StoredDocument> live = new ArrayList<>(source.liveSize());
+        try {
+            for (int node = 0; node < source.size(); node++) {
+                if (!source.isDeleted(node)) {
+                    compacted.add(source.vector(node));
+                    live.add(partition.documents.get(node));
+                }
+            }
+            writeDocuments(staged, live);
+            compacted.snapshot(staged);
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            deleteStaged(staged);
+            throw e;
+        }
+        return new Compaction(partition, partition.modifications, compacted, live);
+    }
+
+    /**
+     * Commits a staged compaction: the marker file is the commit point, after which the staged files replace
+     * the partition's snapshot (or do so on the next start, see {@link #finishCompaction}).
+     */
+    private void applyCompaction(Compaction compaction) {
+        Partition partition = compaction.partition();
+        Path staged = partition.directory.resolve(COMPACTION_DIRECTORY);
+        lock.writeLock().lock();
+        try {
+            if (partition.modifications != compaction.modifications()) {
+                // Written to while the copy was built; the next snapshot tries again
+                discardCompaction(compaction, staged);
+                return;
+            }
+            try {
+                Files.createFile(staged.resolve(COMPACTION_COMMITTED));
+            } catch (IOException e) {
+                log.error("Failed to commit compaction of local HNSW partition '{}': {}", partition.name, e.getMessage());
+                discardCompaction(compaction, staged);
+                return;
+            }
+
+            int removed = partition.documents.size() - compaction.documents().size();
+            try {
+                partition.index.close();
+            } catch (IOException e) {
+                log.warn("Failed to close compacted-away HNSW index in {}: {}", partition.directory, e.getMessage());
+            }
+            partition.index = compaction.index();
+            partition.documents.clear();
+            partition.documents.addAll(compaction.documents());
+            partition.nodeById.clear();
+            for (int node = 0; node < partition.documents.size(); node++) {
+                partition.nodeById.put(partition.documents.get(node).id(), node);
+            }
+            try {
+                finishCompaction(partition.directory);
+            } catch (IOException e) {
+                log.error("Compaction of local HNSW partition '{}' is committed but its files could not be moved yet; "
+                        + "they are moved on the next start: {}", partition.name, e.getMessage());
+            }
+            log.info("Compacted local HNSW partition '{}': dropped {} deleted chunks, {} live",
+                    partition.name, removed, partition.documents.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void discardCompaction(Compaction compaction, Path staged) {
+        try {
+            compaction.index().close();
+            deleteStaged(staged);
+        } catch (IOException e) {
+            log.warn("Failed to discard staged HNSW compaction in {}: {}", staged, e.getMessage());
+        }
+        compaction.partition().dirty.set(true);
+        dirty.set(true);
+    }
+
+    /**
+     * Rolls a committed compaction forward and removes an uncommitted one.
+     */
+    private void finishCompaction(Path partitionDirectory) throws IOException {
+        Path staged = partitionDirectory.resolve(COMPACTION_DIRECTORY);
+        if (!Files.isDirectory(staged)) {
+            return;
+        }
+        if (Files.exists(staged.resolve(COMPACTION_COMMITTED))) {
+            for (String file : SNAPSHOT_FILES) {
+                Path source = staged.resolve(file);
+                if (Files.exists(source)) {
+                    Files.move(source, partitionDirectory.resolve(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+        deleteStaged(staged);
+    }
+
+    private void deleteStaged(Path staged) throws IOException {
+        if (!Files.isDirectory(staged)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(staged)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(staged);
+    }
+
+    private void writeDocuments(Path target, List<StoredDocument> documents) throws IOException {
+        Path tmp = target.resolve(DOCUMENTS_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (StoredDocument document : documents) {
+                writer.write(objectMapper.writeValueAsString(document));
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, target.resolve(DOCUMENTS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private List<StoredDocument> readDocuments(Path file) throws IOException {
+        List<StoredDocument> result = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    result.add(objectMapper.readValue(line, new TypeReference<StoredDocument>() {}));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One tenant's graph and chunks; the position in {@code documents} is the HNSW node id.
+     * Guarded by the store's lock.
+     */
+    private final class Partition {
+        private final String name;
+        private final Path directory;
+        private final List<StoredDocument> documents = new ArrayList<>();
+        private final Map<String, Integer> nodeById = new HashMap<>();
+        private final AtomicBoolean dirty = new AtomicBoolean(false);
+        private HnswIndex index;
+        // Bumped by every add and remove so a compaction built under the read lock can tell it went stale
+        private long modifications;
+
+        private Partition(String name, Path directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        private void add(StoredDocument document, float[] vector) throws IOException {
+            if (index == null) {
+                index = HnswIndex.create(directory, vector.length, m, efConstruction, quantization, rescoreFactor);
+            }
+            int node = index.add(vector);
+            documents.add(document);
+            nodeById.put(document.id(), node);
+            modifications++;
+            dirty.set(true);
+        }
+
+        private void remove(String id) {
+            Integer node = nodeById.remove(id);
+            if (node != null) {
+                index.markDeleted(node);
+                modifications++;
+                dirty.set(true);
+            }
+        }
+
+        private StoredDocument get(String id) {
+            return documents.get(nodeById.get(id));
+        }
+
+        private boolean needsCompaction() {
+            int tombstones = index.deletedSize();
+            return tombstones > 0 && tombstones >= index.size() * COMPACTION_RATIO;
+        }
+    }
+
+    private record Compaction(Partition partition, long modifications, HnswIndex index, List<StoredDocument> documents) {
+    }
+
+    public record StoredDocument(String id, String text, Map<String, Object> metadata) {
+    }
+}
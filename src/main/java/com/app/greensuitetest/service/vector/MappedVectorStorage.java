@@ -0,0 +1,130 @@
+package com.app.greensuitetest.service.vector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-width float vector file mapped into memory. Vectors live outside the Java heap;
+ * the OS pages them in on demand, so a restart only re-maps the file instead of rebuilding it.
+ * <p>
+ * A single mapping is limited to 2 GB, so the file is mapped in segments of at most 1 GB that each hold a
+ * whole number of vectors; only the last segment is re-mapped as the file grows.
+ */
+public class MappedVectorStorage implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    private final FileChannel channel;
+    private final int dimensions;
+    private final int vectorsPerSegment;
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private long capacity;
+
+    public MappedVectorStorage(Path file, int dimensions, int minimumCapacity) throws IOException {
+        this.dimensions = dimensions;
+        this.vectorsPerSegment = (int) Math.max(1, SEGMENT_BYTES / bytesPerVector());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long existingVectors = channel.size() / bytesPerVector();
+        grow(Math.max(Math.max(existingVectors, minimumCapacity), INITIAL_CAPACITY));
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    public void write(int slot, float[] vector) throws IOException {
+        if (slot < 0) {
+            throw new IllegalArgumentException("Vector slot must not be negative: " + slot);
+        }
+        if (slot >= capacity) {
+            grow(Math.max(capacity * 2, (long) slot + 1));
+        }
+        segment(slot).put(offset(slot), vector, 0, dimensions);
+    }
+
+    public float[] read(int slot) {
+        float[] vector = new float[dimensions];
+        segment(slot).get(offset(slot), vector, 0, dimensions);
+        return vector;
+    }
+
+    /**
+     * Dot product between the stored vector and {@code query} without copying the stored vector.
+     */
+    public float dot(int slot, float[] query) {
+        FloatBuffer floats = segment(slot);
+        int offset = offset(slot);
+        float sum = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            sum += floats.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    public long sizeInBytes() {
+        return capacity * bytesPerVector();
+    }
+
+    public void force() {
+        mapped.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private FloatBuffer segment(int slot) {
+        return segments.get(slot / vectorsPerSegment);
+    }
+
+    private int offset(int slot) {
+        return (slot % vectorsPerSegment) * dimensions;
+    }
+
+    /**
+     * Maps enough segments for {@code newCapacity} vectors. Full segments are mapped once; the last, partial
+     * one is re-mapped at its new size.
+     */
+    private void grow(long newCapacity) throws IOException {
+        // Slots are ints, so there is no point mapping more vectors than one per int slot
+        newCapacity = Math.min(newCapacity, (long) Integer.MAX_VALUE + 1);
+        int segmentCount = (int) ((newCapacity + vectorsPerSegment - 1) / vectorsPerSegment);
+        for (int index = 0; index < segmentCount; index++) {
+            long vectors = Math.min(vectorsPerSegment, newCapacity - (long) index * vectorsPerSegment);
+            long bytes = vectors * bytesPerVector();
+            if (index < mapped.size()) {
+                if (mapped.get(index).capacity() >= bytes) {
+                    continue;
+                }
+                mapped.get(index).force();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    (long) index * vectorsPerSegment * bytesPerVector(), bytes);
+            buffer.order(ByteOrder.nativeOrder());
+            if (index < mapped.size()) {
+                mapped.set(index, buffer);
+                segments.set(index, buffer.asFloatBuffer());
+            } else {
+                mapped.add(buffer);
+                segments.add(buffer.asFloatBuffer());
+            }
+        }
+        capacity = newCapacity;
+    }
+
+    private long bytesPerVector() {
+        return (long) dimensions * Float.BYTES;
+    }
+}
@@ -0,0 +1,137 @@
+package com.app.greensuitetest.service.vector;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Turns a Spring AI {@link Filter.Expression} into an in-memory predicate over chunk metadata,
+ * so the local index honours the same filters (e.g. {@code source == 'x.pdf' && page >= 3}) as Atlas.
+ */
+public final class MetadataFilterEvaluator {
+
+    private MetadataFilterEvaluator() {
+    }
+
+    public static Predicate<Map<String, Object>> toPredicate(Filter.Expression expression) {
+        if (expression == null) {
+            return metadata -> true;
+        }
+        return switch (expression.type()) {
+            case AND -> toPredicate(operandExpression(expression.left()))
+                    .and(toPredicate(operandExpression(expression.right())));
+            case OR -> toPredicate(operandExpression(expression.left()))
+                    .or(toPredicate(operandExpression(expression.right())));
+            case NOT -> toPredicate(operandExpression(expression.left())).negate();
+            default -> comparison(expression);
+        };
+    }
+
+    /**
+     * The values {@code field} may take for the expression to match, or {@code null} when the expression
+     * does not pin the field (e.g. it is only constrained under an OR with another field, or by NE/NIN).
+     */
+    public static Set<String> allowedValues(Filter.Expression expression, String field) {
+        return switch (expression.type()) {
+            case AND -> {
+                Set<String> left = allowedValues(operandExpression(expression.left()), field);
+                Set<String> right = allowedValues(operandExpression(expression.right()), field);
+                if (left == null || right == null) {
+                    yield left != null ? left : right;
+                }
+                Set<String> both = new HashSet<>(left);
+                both.retainAll(right);
+                yield both;
+            }
+            case OR -> {
+                Set<String> left = allowedValues(operandExpression(expression.left()), field);
+                Set<String> right = allowedValues(operandExpression(expression.right()), field);
+                if (left == null || right == null) {
+                    yield null;
+                }
+                Set<String> either = new HashSet<>(left);
+                either.addAll(right);
+                yield either;
+            }
+            case EQ, IN -> {
+                if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)
+                        || !field.equals(stripMetadataPrefix(key.key()))) {
+                    yield null;
+                }
+                Set<String> values = new HashSet<>();
+                asCollection(value.value()).forEach(candidate -> values.add(String.valueOf(candidate)));
+                yield values;
+            }
+            default -> null;
+        };
+    }
+
+    private static Predicate<Map<String, Object>> comparison(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key key) || !(expression.right() instanceof Filter.Value value)) {
+            throw new IllegalArgumentException("Unsupported filter expression: " + expression);
+        }
+        String field = stripMetadataPrefix(key.key());
+        Object expected = value.value();
+
+        return metadata -> {
+            Object actual = metadata.get(field);
+            return switch (expression.type()) {
+                case EQ -> matches(actual, expected);
+                case NE -> !matches(actual, expected);
+                case GT -> compare(actual, expected) > 0;
+                case GTE -> compare(actual, expected) >= 0;
+                case LT -> actual != null && compare(actual, expected) < 0;
+                case LTE -> actual != null && compare(actual, expected) <= 0;
+                case IN -> asCollection(expected).stream().anyMatch(candidate -> matches(actual, candidate));
+                case NIN -> asCollection(expected).stream().noneMatch(candidate -> matches(actual, candidate));
+                default -> throw new IllegalArgumentException("Unsupported filter operator: " + expression.type());
+            };
+        };
+    }
+
+    private static Filter.Expression operandExpression(Filter.Operand operand) {
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        throw new IllegalArgumentException("Expected a nested expression but got: " + operand);
+    }
+
+    private static boolean matches(Object actual, Object expected) {
+        if (actual instanceof Collection<?> values) {
+            // List-valued metadata such as topics matches when any element matches
+            return values.stream().anyMatch(element -> matches(element, expected));
+        }
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return Double.compare(a.doubleValue(), e.doubleValue()) == 0;
+        }
+        return actual != null && expected != null && Objects.equals(actual.toString(), expected.toString());
+    }
+
+    private static int compare(Object actual, Object expected) {
+        if (actual == null) {
+            return -1;
+        }
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return Double.compare(a.doubleValue(), e.doubleValue());
+        }
+        return actual.toString().compareTo(String.valueOf(expected));
+    }
+
+    private static Collection<?> asCollection(Object value) {
+        return value instanceof Collection<?> collection ? collection : List.of(value);
+    }
+
+    private static String stripMetadataPrefix(String key) {
+        String unquoted = key.replace("'", "").replace("\"", "");
+        return unquoted.startsWith("metadata.") ? unquoted.substring("metadata.".length()) : unquoted;
+    }
+}
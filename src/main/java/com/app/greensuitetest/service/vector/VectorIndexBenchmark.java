@@ -0,0 +1,103 @@
+package com.app.greensuitetest.service.vector;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Recall@k of the HNSW search paths against a brute-force full-precision scan, measured on queries
+ * synthesised from the indexed vectors themselves (each query blends two stored chunks so it is
+ * in-distribution but never an exact duplicate).
+ */
+public final class VectorIndexBenchmark {
+
+    private VectorIndexBenchmark() {
+    }
+
+    public static Map<String, Object> measureRecall(HnswIndex index, int queryCount, int k, int ef) {
+        if (queryCount <= 0 || k <= 0) {
+            throw new IllegalArgumentException("Recall needs a positive query count and k");
+        }
+        Map<String, Object> report = new HashMap<>();
+        report.put("quantization", index.quantization().name());
+        report.put("k", k);
+        report.put("ef", ef);
+        report.put("indexedNodes", index.size());
+        report.put("vectorFileBytes", index.vectorBytes());
+        report.put("quantizedBytes", index.quantizedBytes());
+
+        if (index.liveSize() < k + 1) {
+            report.put("error", "Index holds too few vectors for a recall measurement");
+            return report;
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        int fullPrecisionHits = 0;
+        int quantizedHits = 0;
+        long exactNanos = 0;
+        long fullPrecisionNanos = 0;
+        long quantizedNanos = 0;
+
+        for (int q = 0; q < queryCount; q++) {
+            float[] query = blend(index.vector(randomLiveNode(index, random)), index.vector(randomLiveNode(index, random)));
+
+            long start = System.nanoTime();
+            Set<Integer> truth = nodes(index.exactSearch(query, k));
+            exactNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            fullPrecisionHits += overlap(truth, index.search(query, k, ef, null, false));
+            fullPrecisionNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            quantizedHits += overlap(truth, index.search(query, k, ef, null, true));
+            quantizedNanos += System.nanoTime() - start;
+        }
+
+        double expected = (double) queryCount * k;
+        report.put("queries", queryCount);
+        report.put("fullPrecisionRecall", fullPrecisionHits / expected);
+        report.put("quantizedRecall", quantizedHits / expected);
+        report.put("avgExactScanMicros", exactNanos / 1000.0 / queryCount);
+        report.put("avgFullPrecisionMicros", fullPrecisionNanos / 1000.0 / queryCount);
+        report.put("avgQuantizedMicros", quantizedNanos / 1000.0 / queryCount);
+        return report;
+    }
+
+    private static int randomLiveNode(HnswIndex index, SplittableRandom random) {
+        int node;
+        do {
+            node = random.nextInt(index.size());
+        } while (index.isDeleted(node));
+        return node;
+    }
+
+    private static float[] blend(float[] a, float[] b) {
+        float[] query = new float[a.length];
+        for (int i = 0; i < a.length; i++) {
+            query[i] = 0.75f * a[i] + 0.25f * b[i];
+        }
+        return query;
+    }
+
+    private static Set<Integer> nodes(List<HnswIndex.Candidate> candidates) {
+        Set<Integer> nodes = new HashSet<>();
+        for (HnswIndex.Candidate candidate : candidates) {
+            nodes.add(candidate.node());
+        }
+        return nodes;
+    }
+
+    private static int overlap(Set<Integer> truth, List<HnswIndex.Candidate> results) {
+        int hits = 0;
+        for (HnswIndex.Candidate candidate : results) {
+            if (truth.contains(candidate.node())) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,160 @@
+package com.app.greensuitetest.service.vector;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compact in-memory codes for unit vectors used to generate HNSW candidates cheaply.
+ * <ul>
+ *     <li>{@code INT8}: per-vector scalar quantisation, one signed byte per dimension plus a scale (~4x smaller)</li>
+ *     <li>{@code BINARY}: one sign bit per dimension, compared with popcount (~32x smaller)</li>
+ * </ul>
+ * Scores are approximations of the cosine similarity; callers re-score the best candidates with the
+ * full-precision vectors.
+ */
+public class VectorQuantizer {
+
+    public enum Mode {
+        NONE, INT8, BINARY;
+
+        public static Mode from(String value) {
+            return value == null || value.isBlank() ? NONE : Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Largest array length every JVM allocates
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final Mode mode;
+    private final int dimensions;
+    private final int wordsPerVector;
+    private byte[] int8Codes = new byte[0];
+    private float[] int8Scales = new float[0];
+    private long[] binaryCodes = new long[0];
+    private int capacity;
+
+    public VectorQuantizer(Mode mode, int dimensions) {
+        this.mode = mode;
+        this.dimensions = dimensions;
+        this.wordsPerVector = (dimensions + 63) / 64;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public void encode(int slot, float[] normalized) {
+        if (mode == Mode.NONE) {
+            return;
+        }
+        ensureCapacity(slot + 1);
+        if (mode == Mode.INT8) {
+            int8Scales[slot] = quantizeInt8(normalized, int8Codes, slot * dimensions);
+        } else {
+            quantizeBinary(normalized, binaryCodes, slot * wordsPerVector);
+        }
+    }
+
+    public Query prepare(float[] normalized) {
+        return switch (mode) {
+            case INT8 -> {
+                byte[] codes = new byte[dimensions];
+                float scale = quantizeInt8(normalized, codes, 0);
+                yield new Query(codes, scale, null);
+            }
+            case BINARY -> {
+                long[] bits = new long[wordsPerVector];
+                quantizeBinary(normalized, bits, 0);
+                yield new Query(null, 0f, bits);
+            }
+            case NONE -> throw new IllegalStateException("Quantisation is disabled");
+        };
+    }
+
+    /**
+     * Approximate cosine similarity between a stored code and a prepared query.
+     */
+    public float score(int slot, Query query) {
+        if (mode == Mode.INT8) {
+            int offset = slot * dimensions;
+            int sum = 0;
+            for (int i = 0; i < dimensions; i++) {
+                sum += int8Codes[offset + i] * query.int8()[i];
+            }
+            return sum * int8Scales[slot] * query.scale();
+        }
+
+        int offset = slot * wordsPerVector;
+        int hamming = 0;
+        for (int i = 0; i < wordsPerVector; i++) {
+            hamming += Long.bitCount(binaryCodes[offset + i] ^ query.bits()[i]);
+        }
+        return 1f - 2f * hamming / dimensions;
+    }
+
+    public long memoryBytes() {
+        return switch (mode) {
+            case INT8 -> (long) capacity * dimensions + (long) capacity * Float.BYTES;
+            case BINARY -> (long) capacity * wordsPerVector * Long.BYTES;
+            case NONE -> 0L;
+        };
+    }
+
+    /**
+     * Grows the code arrays to hold {@code required} vectors. Codes live in one array per mode, so the number of
+     * vectors is bounded by the array length divided by the code width; sizes are computed in longs so a large
+     * index fails clearly here instead of overflowing into a negative array size.
+     */
+    private void ensureCapacity(int required) {
+        if (required <= capacity) {
+            return;
+        }
+        int codeWidth = mode == Mode.INT8 ? dimensions : wordsPerVector;
+        long limit = MAX_ARRAY_LENGTH / codeWidth;
+        if (required > limit) {
+            throw new IllegalStateException("In-memory " + mode + " codes for " + dimensions
+                    + "-dimensional vectors are limited to " + limit + " vectors per index");
+        }
+        int newCapacity = (int) Math.min(Math.max(Math.max(capacity * 2L, required), INITIAL_CAPACITY), limit);
+        if (mode == Mode.INT8) {
+            int8Codes = Arrays.copyOf(int8Codes, newCapacity * dimensions);
+            int8Scales = Arrays.copyOf(int8Scales, newCapacity);
+        } else {
+            binaryCodes = Arrays.copyOf(binaryCodes, newCapacity * wordsPerVector);
+        }
+        capacity = newCapacity;
+    }
+
+    /**
+     * Writes {@code round(v / maxAbs * 127)} codes and returns the factor that maps code products back
+     * to the original dot product.
+     */
+    private float quantizeInt8(float[] vector, byte[] target, int offset) {
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        if (maxAbs == 0f) {
+            Arrays.fill(target, offset, offset + dimensions, (byte) 0);
+            return 0f;
+        }
+        float factor = 127f / maxAbs;
+        for (int i = 0; i < dimensions; i++) {
+            target[offset + i] = (byte) Math.round(vector[i] * factor);
+        }
+        return maxAbs / 127f;
+    }
+
+    private void quantizeBinary(float[] vector, long[] target, int offset) {
+        Arrays.fill(target, offset, offset + wordsPerVector, 0L);
+        for (int i = 0; i < dimensions; i++) {
+            if (vector[i] > 0f) {
+                target[offset + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+    }
+
+    public record Query(byte[] int8, float scale, long[] bits) {
+    }
+}
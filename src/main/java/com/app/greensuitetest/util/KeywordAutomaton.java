@@ -0,0 +1,286 @@
+package com.app.greensuitetest.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Precompiled Aho-Corasick matcher over named keyword categories. One {@link #scan} walks the text once,
+ * case-insensitively and without a lower-cased copy, and reports every category and keyword that occurs
+ * as a substring, so the result is the same as calling {@code text.toLowerCase().contains(keyword)} for
+ * each keyword. A keyword may belong to several categories. Instances are immutable and thread-safe.
+ */
+public final class KeywordAutomaton {
+
+    private final String[] keywords;
+    private final Map<String, int[]> categoryKeywords;
+    // Goto function per state: sorted labels and the matching target states
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // Keywords ending at each state, including those reached through fail links
+    private final int[][] outputs;
+
+    private KeywordAutomaton(String[] keywords, Map<String, int[]> categoryKeywords, List<Map<Character, Integer>> trie,
+                             List<List<Integer>> terminals) {
+        this.keywords = keywords;
+        this.categoryKeywords = categoryKeywords;
+        int states = trie.size();
+        this.labels = new char[states][];
+        this.targets = new int[states][];
+        this.fail = new int[states];
+        this.outputs = new int[states][];
+
+        for (int state = 0; state < states; state++) {
+            TreeMap<Character, Integer> sorted = new TreeMap<>(trie.get(state));
+            labels[state] = new char[sorted.size()];
+            targets[state] = new int[sorted.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : sorted.entrySet()) {
+                labels[state][i] = edge.getKey();
+                targets[state][i++] = edge.getValue();
+            }
+        }
+
+        // Breadth-first so a state's fail target is complete before its children are linked
+        List<List<Integer>> merged = new ArrayList<>(terminals);
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                while (f != 0 && next(f, c) < 0) {
+                    f = fail[f];
+                }
+                int target = next(f, c);
+                fail[child] = target >= 0 ? target : 0;
+                List<Integer> output = new ArrayList<>(merged.get(child));
+                output.addAll(merged.get(fail[child]));
+                merged.set(child, output);
+                queue.add(child);
+            }
+        }
+        for (int state = 0; state < states; state++) {
+            outputs[state] = merged.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Finds every keyword occurrence in one pass over {@code text}.
+     */
+    public Matches scan(CharSequence text) {
+        Matches matches = new Matches();
+        if (text == null) {
+            return matches;
+        }
+        int state = 0;
+        for (int position = 0; position < text.length(); position++) {
+            state = step(state, Character.toLowerCase(text.charAt(position)));
+            for (int keyword : outputs[state]) {
+                matches.record(keyword, position);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Whether any keyword occurs in {@code text}; stops at the first hit.
+     */
+    public boolean containsAny(CharSequence text) {
+        if (text == null) {
+            return false;
+        }
+        int state = 0;
+        for (int position = 0; position < text.length(); position++) {
+            state = step(state, Character.toLowerCase(text.charAt(position)));
+            if (outputs[state].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<String> keywords(String category) {
+        int[] ids = categoryIds(category);
+        List<String> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(keywords[id]);
+        }
+        return result;
+    }
+
+    private int step(int state, char c) {
+        int target = next(state, c);
+        while (target < 0 && state != 0) {
+            state = fail[state];
+            target = next(state, c);
+        }
+        return Math.max(target, 0);
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+
+    private int[] categoryIds(String category) {
+        int[] ids = categoryKeywords.get(category);
+        if (ids == null) {
+            throw new IllegalArgumentException("Unknown keyword category: " + category);
+        }
+        return ids;
+    }
+
+    /**
+     * The keywords found by one {@link #scan}.
+     */
+    public final class Matches {
+
+        private final BitSet found = new BitSet(keywords.length);
+        private int[] occurrences;
+        private int[] lastEnd;
+
+        private void record(int keyword, int end) {
+            if (occurrences == null) {
+                occurrences = new int[keywords.length];
+                lastEnd = new int[keywords.length];
+                Arrays.fill(lastEnd, -1);
+            }
+            found.set(keyword);
+            // Overlapping repeats of the same keyword count once, as with successive indexOf calls
+            if (end - keywords[keyword].length() >= lastEnd[keyword]) {
+                occurrences[keyword]++;
+                lastEnd[keyword] = end;
+            }
+        }
+
+        public boolean isEmpty() {
+            return found.isEmpty();
+        }
+
+        public boolean contains(String category) {
+            for (int id : categoryIds(category)) {
+                if (found.get(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Distinct keywords of {@code category} that occurred, in the order they were added.
+         */
+        public List<String> keywords(String category) {
+            List<String> result = new ArrayList<>();
+            for (int id : categoryIds(category)) {
+                if (found.get(id)) {
+                    result.add(keywords[id]);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Number of distinct keywords of {@code category} that occurred.
+         */
+        public int count(String category) {
+            int count = 0;
+            for (int id : categoryIds(category)) {
+                if (found.get(id)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Non-overlapping occurrences of each keyword of {@code category}, for keywords that occurred.
+         */
+        public Map<String, Integer> occurrences(String category) {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            for (int id : categoryIds(category)) {
+                if (found.get(id)) {
+                    result.put(keywords[id], occurrences[id]);
+                }
+            }
+            return result;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<String, Integer> keywordIds = new HashMap<>();
+        private final List<String> keywords = new ArrayList<>();
+        private final Map<String, List<Integer>> categories = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder add(String category, String... categoryKeywords) {
+            return add(category, Arrays.asList(categoryKeywords));
+        }
+
+        public Builder add(String category, Collection<String> categoryKeywords) {
+            List<Integer> ids = categories.computeIfAbsent(category, key -> new ArrayList<>());
+            for (String keyword : categoryKeywords) {
+                String normalized = keyword.toLowerCase(Locale.ROOT);
+                if (normalized.isEmpty()) {
+                    throw new IllegalArgumentException("Empty keyword in category " + category);
+                }
+                Integer id = keywordIds.computeIfAbsent(normalized, key -> {
+                    keywords.add(key);
+                    return keywords.size() - 1;
+                });
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                }
+            }
+            return this;
+        }
+
+        public KeywordAutomaton build() {
+            List<Map<Character, Integer>> trie = new ArrayList<>();
+            List<List<Integer>> terminals = new ArrayList<>();
+            trie.add(new HashMap<>());
+            terminals.add(new ArrayList<>());
+
+            for (int id = 0; id < keywords.size(); id++) {
+                int state = 0;
+                for (char c : keywords.get(id).toCharArray()) {
+                    Integer child = trie.get(state).get(c);
+                    if (child == null) {
+                        child = trie.size();
+                        trie.get(state).put(c, child);
+                        trie.add(new HashMap<>());
+                        terminals.add(new ArrayList<>());
+                    }
+                    state = child;
+                }
+                terminals.get(state).add(id);
+            }
+
+            Map<String, int[]> categoryKeywords = new HashMap<>();
+            categories.forEach((category, ids) ->
+                    categoryKeywords.put(category, ids.stream().mapToInt(Integer::intValue).toArray()));
+            return new KeywordAutomaton(keywords.toArray(String[]::new), Map.copyOf(categoryKeywords), trie, terminals);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.app.greensuitetest.util;
+
+/**
+ * Local estimate of how many tokens a text costs the chat model, cheap enough to run on every prompt
+ * section. It follows how BPE vocabularies split English: a word is about one token per four characters,
+ * each punctuation mark or symbol is its own token, and CJK and other non-Latin characters are a token
+ * each. It slightly over-counts rather than under-counts, so budgets stay on the safe side of num-ctx.
+ */
+public final class TokenEstimator {
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 ? Character.isLetterOrDigit(c) : Character.isLetter(c) && c < 0x2E80) {
+                wordLength++;
+                continue;
+            }
+            tokens += wordTokens(wordLength);
+            wordLength = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + wordTokens(wordLength);
+    }
+
+    /**
+     * Cuts {@code text} to roughly {@code maxTokens}, keeping the start and the end (where questions and
+     * instructions usually are) and marking the gap.
+     */
+    public static String truncate(String text, int maxTokens) {
+        if (text == null || estimate(text) <= maxTokens) {
+            return text;
+        }
+        // Characters per token of this particular text, so the cut lands close to the budget in one step
+        double charsPerToken = (double) text.length() / Math.max(estimate(text), 1);
+        int keep = Math.max((int) ((maxTokens - 5) * charsPerToken), 0);
+        int head = keep * 2 / 3;
+        int tail = keep - head;
+        return text.substring(0, head) + " ... " + text.substring(text.length() - tail);
+    }
+
+    private static int wordTokens(int length) {
+        return length == 0 ? 0 : (length + 3) / 4;
+    }
+}
@@ -0,0 +1,134 @@
+package com.app.greensuitetest.service;
+
+import ch.qos.logback.classic.Level;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-chunk cost of the streaming token path: the reflective extraction and append it replaced against
+ * {@link AIChatService#extractContent} with a presized buffer. One operation is one chunk of a 200-token
+ * stream, with debug logging off as in production.
+ * <p>
+ * Run with the GC profiler to get the allocation per chunk ({@code gc.alloc.rate.norm}):
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *      org.openjdk.jmh.Main ChatChunkBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatChunkBenchmark {
+
+    private static final int CHUNKS = 200;
+    private static final Logger log = LoggerFactory.getLogger(ChatChunkBenchmark.class);
+
+    private final List<ChatResponse> stream = new ArrayList<>(CHUNKS);
+    private ChatOptions options;
+    // Stands in for the time-to-first-token timer
+    private long firstTokens;
+
+    @Setup
+    public void setUp() {
+        ((ch.qos.logback.classic.Logger) log).setLevel(Level.INFO);
+        String[] tokens = {" Scope", " 2", " emissions", " come", " from", " purchased", " electricity", ",", " so",
+                " switching", " to", " a", " renewable", " tariff", " cuts", " them", " directly", "."};
+        for (int i = 0; i < CHUNKS; i++) {
+            stream.add(new ChatResponse(List.of(new Generation(new AssistantMessage(tokens[i % tokens.length])))));
+        }
+        options = ChatOptions.builder().maxTokens(2000).build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public String reflectiveExtraction() {
+        AtomicReference<StringBuilder> responseBuilder = new AtomicReference<>(new StringBuilder());
+        AtomicBoolean firstToken = new AtomicBoolean();
+        for (ChatResponse chatResponse : stream) {
+            String content = legacyExtractContent(chatResponse.getResult().getOutput());
+            if (!content.isEmpty() && firstToken.compareAndSet(false, true)) {
+                firstTokens++;
+            }
+            if (!content.isEmpty()) {
+                log.debug("Streaming chunk: '{}' (length: {})", content, content.length());
+            }
+            responseBuilder.get().append(content);
+        }
+        return responseBuilder.get().toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNKS)
+    public String typedExtraction() {
+        StringBuilder responseBuilder = new StringBuilder(AIChatService.responseCapacity(options));
+        boolean logChunks = log.isDebugEnabled();
+        for (ChatResponse chatResponse : stream) {
+            String content = AIChatService.extractContent(chatResponse);
+            if (!content.isEmpty() && responseBuilder.isEmpty()) {
+                firstTokens++;
+            }
+            if (logChunks && !content.isEmpty()) {
+                log.debug("Streaming chunk: '{}' (length: {})", content, content.length());
+            }
+            responseBuilder.append(content);
+        }
+        return responseBuilder.toString();
+    }
+
+    /**
+     * The extraction the streaming path used before: reflective lookups with a toString fallback.
+     */
+    private static String legacyExtractContent(Object output) {
+        if (output == null) return "";
+        try {
+            for (String methodName : Arrays.asList("getContent", "getText", "getTextContent")) {
+                try {
+                    Object content = output.getClass().getMethod(methodName).invoke(output);
+                    if (content != null) {
+                        String contentStr = content.toString();
+                        if (!contentStr.isEmpty()) {
+                            return contentStr;
+                        }
+                    }
+                } catch (Exception ignored) {}
+            }
+
+            String fallbackContent = output.toString();
+            if (fallbackContent.startsWith("AssistantMessage [") ||
+                fallbackContent.contains("messageType=ASSISTANT") ||
+                fallbackContent.contains("toolCalls=[]") ||
+                fallbackContent.contains("metadata=")) {
+                return "";
+            }
+            return fallbackContent;
+        } catch (Exception e) {
+            return "";
+        }
+    }
+}